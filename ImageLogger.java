@@ -1,30 +1,399 @@
 package pack;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.logging.*;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 /**
- * Class to keep a log of all renaming ever done.
+ * Class to keep a log of all renaming ever done. The log is a RenameJournal written by a single writer thread:
+ * renamings are put on a bounded queue and the writer appends whatever has piled up as one batch, so callers do not
+ * wait for the disk. How often the journal is forced to the disk is set in the configuration file: once per batch by
+ * default, at most once per given interval, or never, leaving it to the operating system. The history of a file is
+ * read back from the journal, so it is kept between runs, together with the renamings still waiting to be written, so
+ * reading does not wait for the writer either.
  */
 public class ImageLogger {
 
     /**
-     * Keeps log of one renaming.
+     * Greatest number of renamings waiting to be written. Callers only wait when this many are behind.
+     */
+    private static final int QUEUE_CAPACITY = 1 << 16;
+
+    /**
+     * Greatest number of renamings written as one batch.
+     */
+    private static final int MAX_BATCH = 4096;
+
+    /**
+     * Entry telling the writer to stop once what is before it is written.
+     */
+    private static final RenameJournal.Record CLOSE = new RenameJournal.Record(0, "", "", "");
+
+    /**
+     * Renamings waiting to be written.
+     */
+    private static final ArrayBlockingQueue<RenameJournal.Record> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    /**
+     * Renamings logged and not yet appended to the journal, including those the writer has taken off the queue.
+     * Guarded by the queue; the writer only removes them while holding the class, as it appends them.
+     */
+    private static final ArrayDeque<RenameJournal.Record> pending = new ArrayDeque<>();
+
+    /**
+     * Journal file.
+     */
+    private static File logFile = new File("ImageLog.journal");
+
+    /**
+     * Open journal, null until it is written or read. Guarded by the class.
+     */
+    private static RenameJournal journal;
+
+    /**
+     * Milliseconds between forcing the journal to the disk: 0 after every batch, less than 0 never.
+     */
+    private static volatile long syncMillis = 0;
+
+    /**
+     * Writer thread, null until something is logged.
+     */
+    private static Thread writer;
+
+    /**
+     * Number of renamings put on the queue, and number the writer is done with. Guarded by the queue.
+     */
+    private static long queued;
+
+    private static long written;
+
+    /**
+     * Sets the journal file and how often it is forced to the disk. Must be called before anything is logged, or
+     * after close.
+     *
+     * @param logPathname path of the journal file, next to which its index is kept
+     * @param syncMillis  milliseconds between forcing the journal to the disk as a String: 0 after every batch,
+     *                    negative never, ignored if it is not a number
+     */
+    public static void configure(String logPathname, String syncMillis) {
+        logFile = new File(logPathname);
+        if (syncMillis != null) {
+            try {
+                ImageLogger.syncMillis = Long.parseLong(syncMillis.trim());
+            } catch (NumberFormatException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Gets how often the journal is forced to the disk.
+     *
+     * @return milliseconds between forcing the journal to the disk as a String
+     */
+    public static String getConfigSyncMillis() {
+        return Long.toString(syncMillis);
+    }
+
+    /**
+     * Keeps log of one renaming. Returns as soon as it is queued.
+     *
+     * @param identity Path of the file with its original name, which its history is kept under
+     * @param name     Original Name of file
+     * @param newName  New name file is being changed to
+     * @param ext      File extension
+     */
+    public static void log(String identity, String name, String newName, String ext) {
+        enqueue(new RenameJournal.Record(System.currentTimeMillis(), identity, name + ext, newName + ext));
+    }
+
+    /**
+     * Keeps log of many renamings at once. Returns as soon as they are queued.
+     *
+     * @param renamings per renaming, the identity of the file, the original name, the new name and the file
+     *                  extension
+     */
+    public static void logAll(List<String[]> renamings) {
+        long time = System.currentTimeMillis();
+        for (String[] renaming : renamings) {
+            enqueue(new RenameJournal.Record(time, renaming[0], renaming[1] + renaming[3], renaming[2] + renaming[3]));
+        }
+    }
+
+    /**
+     * Returns every name a file has had, from the first renaming in the journal on, including its current name. The
+     * renamings not yet written are taken as they are queued, so it does not wait for the writer and can be called on
+     * the JavaFX thread.
+     *
+     * @param identity Path of the file with its original name
+     * @return names of the file with their extension, oldest first, empty if it was never renamed
+     */
+    public static ArrayList<String> getNameHistory(String identity) {
+        ArrayList<String> names = new ArrayList<>();
+        try {
+            ArrayList<RenameJournal.Record> records = new ArrayList<>();
+            synchronized (ImageLogger.class) {
+                records.addAll(getJournal().history(identity));
+                records.addAll(getPending(record -> record.identity.equals(identity)));
+            }
+            for (RenameJournal.Record record : records) {
+                if (names.isEmpty()) {
+                    names.add(record.oldName);
+                }
+                names.add(record.newName);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return names;
+    }
+
+    /**
+     * Returns the renamings of a span of time, as lines of text.
+     *
+     * @param from earliest time, in milliseconds since the epoch
+     * @param to   latest time, in milliseconds since the epoch
+     * @return one line per renaming, oldest first
+     */
+    public static ArrayList<String> getRenamingsBetween(long from, long to) {
+        return getRenamingsBetween(from, to, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the latest renamings of a span of time, as lines of text. Only the renamings returned are read, so it
+     * takes the same time however long the journal is, and those not yet written are taken as they are queued.
+     *
+     * @param from  earliest time, in milliseconds since the epoch
+     * @param to    latest time, in milliseconds since the epoch
+     * @param limit greatest number of renamings returned
+     * @return one line per renaming, up to limit of the latest ones, oldest first
+     */
+    public static ArrayList<String> getRenamingsBetween(long from, long to, int limit) {
+        ArrayList<RenameJournal.Record> records = new ArrayList<>();
+        try {
+            synchronized (ImageLogger.class) {
+                ArrayList<RenameJournal.Record> queued = getPending(record -> record.time >= from && record.time <= to);
+                if (queued.size() < limit) {
+                    records.addAll(getJournal().between(from, to, limit - queued.size()));
+                }
+                records.addAll(queued.subList(Math.max(0, queued.size() - limit), queued.size()));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        ArrayList<String> lines = new ArrayList<>(records.size());
+        ZoneId zone = ZoneId.systemDefault();
+        for (RenameJournal.Record record : records) {
+            lines.add(RenameJournal.format(record, zone));
+        }
+        return lines;
+    }
+
+    /**
+     * Helper in the reads. Returns the renamings not yet appended to the journal that match, oldest first. Must be
+     * called holding the class, so the writer does not move any to the journal until it has been read too.
+     */
+    private static ArrayList<RenameJournal.Record> getPending(Predicate<RenameJournal.Record> matches) {
+        ArrayList<RenameJournal.Record> records = new ArrayList<>();
+        synchronized (queue) {
+            for (RenameJournal.Record record : pending) {
+                if (matches.test(record)) {
+                    records.add(record);
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Writes every renaming ever logged to a text file, one line each. Waits until the writer has written every
+     * renaming logged so far, so it is not to be called on the JavaFX thread.
      *
-     * @param name    Original Name of file
-     * @param newName New name file is being changed to
-     * @param ext     File extension
-     * @throws IOException If it can't access ImageLog.log
+     * @param textFile file written
+     * @throws IOException if the journal cannot be read or the file written
+     */
+    public static void exportText(File textFile) throws IOException {
+        flush();
+        getJournal().exportText(textFile);
+    }
+
+    /**
+     * Helper returning the journal, opening it if needed.
+     */
+    private static synchronized RenameJournal getJournal() throws IOException {
+        if (journal == null) {
+            journal = new RenameJournal(logFile);
+        }
+        return journal;
+    }
+
+    /**
+     * Waits until every renaming logged so far has been written, which may take as long as writing a full queue, so it
+     * is not to be called on the JavaFX thread. Reading the history does not need it.
      */
-    public static void log(String name, String newName, String ext) throws IOException {
-        LogManager.getLogManager().reset();
-        Logger logger = Logger.getLogger("Image Name Changes");
-        logger.setLevel(Level.INFO);
-        FileHandler fileTxt = new FileHandler("ImageLog.log", true);
-        logger.addHandler(fileTxt);
-        SimpleFormatter formatterTxt = new SimpleFormatter();
-        fileTxt.setFormatter(formatterTxt);
-        logger.info("From: " + name + ext + " -> To: " + newName + ext);
-        fileTxt.close();
+    public static void flush() {
+        synchronized (queue) {
+            long target = queued;
+            boolean interrupted = false;
+            while (written < target) {
+                try {
+                    queue.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Writes every renaming logged so far, forces the journal to the disk and stops the writer thread, on exit.
+     * Logging again starts a new one.
+     */
+    public static void close() {
+        Thread stopped;
+        synchronized (queue) {
+            stopped = writer;
+            writer = null;
+        }
+        if (stopped != null) {
+            putUninterruptibly(CLOSE);
+            joinUninterruptibly(stopped);
+        }
+        synchronized (ImageLogger.class) {
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                journal = null;
+            }
+        }
+    }
+
+    /**
+     * Helper in close. Waits for a thread to end.
+     */
+    private static void joinUninterruptibly(Thread stopped) {
+        boolean interrupted = false;
+        while (stopped.isAlive()) {
+            try {
+                stopped.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Helper in log and logAll. Queues a renaming, starting the writer thread if needed.
+     */
+    private static void enqueue(RenameJournal.Record entry) {
+        synchronized (queue) {
+            if (writer == null) {
+                writer = new Thread(ImageLogger::writeEntries, "image-logger");
+                writer.setDaemon(true);
+                writer.start();
+            }
+            queued++;
+            pending.add(entry);
+        }
+        putUninterruptibly(entry);
+    }
+
+    /**
+     * Helper in enqueue and close. Puts an entry on the queue, waiting for room if the writer is far behind.
+     */
+    private static void putUninterruptibly(RenameJournal.Record entry) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(entry);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Helper in writeEntries. Appends a batch to the journal and takes it off the renamings pending at once, so a
+     * read sees every renaming either in the journal or pending, never in both or neither.
+     */
+    private static void appendPending(RenameJournal target, List<RenameJournal.Record> batch) throws IOException {
+        synchronized (ImageLogger.class) {
+            try {
+                target.append(batch);
+            } finally {
+                synchronized (queue) {
+                    for (RenameJournal.Record record : batch) {
+                        pending.remove(record);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Body of the writer thread. Takes the renamings as they come, appends each batch with one write and forces the
+     * journal to the disk as configured, until it is closed.
+     */
+    private static void writeEntries() {
+        ArrayList<RenameJournal.Record> batch = new ArrayList<>();
+        boolean unsynced = false;
+        long lastSync = System.nanoTime();
+        boolean closing = false;
+        while (!closing) {
+            RenameJournal.Record first;
+            try {
+                first = unsynced && syncMillis > 0
+                        ? queue.poll(syncMillis - (System.nanoTime() - lastSync) / 1_000_000, TimeUnit.MILLISECONDS)
+                        : queue.take();
+            } catch (InterruptedException e) {
+                // only close stops the writer
+                continue;
+            }
+            batch.clear();
+            if (first != null) {
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+            }
+            closing = batch.remove(CLOSE);
+
+            try {
+                RenameJournal target = getJournal();
+                appendPending(target, batch);
+                unsynced |= !batch.isEmpty();
+                boolean due = syncMillis == 0
+                        || (syncMillis > 0 && System.nanoTime() - lastSync >= syncMillis * 1_000_000);
+                if (unsynced && (due || closing)) {
+                    target.force();
+                    unsynced = false;
+                    lastSync = System.nanoTime();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+
+            synchronized (queue) {
+                written += batch.size();
+                queue.notifyAll();
+            }
+        }
     }
 }
@@ -0,0 +1,120 @@
+package pack;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test Class for ImageLogger.
+ */
+class ImageLoggerTest {
+    private File logFile;
+
+    /**
+     * Logs to a fresh journal before every test.
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        ImageLogger.close();
+        logFile = File.createTempFile("ImageLog", ".journal");
+        logFile.delete();
+        ImageLogger.configure(logFile.getPath(), "0");
+    }
+
+    /**
+     * Logs to the usual journal again after every test.
+     */
+    @AfterEach
+    void tearDown() {
+        ImageLogger.close();
+        ImageLogger.configure("ImageLog.journal", "0");
+        for (String suffix : new String[]{"", ".idx", ".heads"}) {
+            new File(logFile.getPath() + suffix).delete();
+        }
+    }
+
+    /**
+     * Tests to see if renamings logged one by one and in bulk are all written, in order.
+     */
+    @Test
+    void logsInOrder() throws IOException {
+        ImageLogger.log("/photos/IMG_0.jpg", "IMG_0", "IMG_0 @red", ".jpg");
+        ArrayList<String[]> renamings = new ArrayList<>();
+        for (int i = 1; i <= 10000; i++) {
+            renamings.add(new String[]{"/photos/IMG_" + i + ".png", "IMG_" + i, "IMG_" + i + " @blue", ".png"});
+        }
+        ImageLogger.logAll(renamings);
+
+        File textFile = File.createTempFile("RenameHistory", ".txt");
+        ImageLogger.exportText(textFile);
+        List<String> lines = Files.readAllLines(textFile.toPath(), StandardCharsets.UTF_8);
+        textFile.delete();
+        assertEquals(10001, lines.size());
+        assertTrue(lines.get(0).endsWith(" From: IMG_0.jpg -> To: IMG_0 @red.jpg"));
+        assertTrue(lines.get(10000).endsWith(" From: IMG_10000.png -> To: IMG_10000 @blue.png"));
+        assertEquals(10001, ImageLogger.getRenamingsBetween(0, Long.MAX_VALUE).size());
+        assertEquals(0, ImageLogger.getRenamingsBetween(Long.MAX_VALUE - 1, Long.MAX_VALUE).size());
+        List<String> latest = ImageLogger.getRenamingsBetween(0, Long.MAX_VALUE, 2);
+        assertEquals(2, latest.size());
+        assertTrue(latest.get(1).endsWith(" From: IMG_10000.png -> To: IMG_10000 @blue.png"));
+    }
+
+    /**
+     * Tests to see if renamings not yet written are read from the queue without waiting for the writer, and read once
+     * after they are written.
+     */
+    @Test
+    void readsQueuedRenamings() {
+        ImageLogger.log("/photos/IMG_0.jpg", "IMG_0", "IMG_0 @red", ".jpg");
+        ImageLogger.flush();
+        // the writer cannot append while the class is held
+        synchronized (ImageLogger.class) {
+            ImageLogger.log("/photos/IMG_1.jpg", "IMG_1", "IMG_1 @red", ".jpg");
+            ImageLogger.log("/photos/IMG_2.jpg", "IMG_2", "IMG_2 @red", ".jpg");
+            assertEquals(3, ImageLogger.getRenamingsBetween(0, Long.MAX_VALUE).size());
+            List<String> latest = ImageLogger.getRenamingsBetween(0, Long.MAX_VALUE, 2);
+            assertEquals(2, latest.size());
+            assertTrue(latest.get(0).endsWith(" From: IMG_1.jpg -> To: IMG_1 @red.jpg"));
+        }
+        synchronized (ImageLogger.class) {
+            ImageLogger.log("/photos/IMG_1.jpg", "IMG_1 @red", "IMG_1 @red @blue", ".jpg");
+            assertEquals(3, ImageLogger.getNameHistory("/photos/IMG_1.jpg").size());
+        }
+        ImageLogger.flush();
+        assertEquals(4, ImageLogger.getRenamingsBetween(0, Long.MAX_VALUE).size());
+        assertEquals(3, ImageLogger.getNameHistory("/photos/IMG_1.jpg").size());
+    }
+
+    /**
+     * Tests to see if the names of a file are kept after the journal is closed and opened again.
+     */
+    @Test
+    void historySurvivesClose() {
+        ImageLogger.configure(logFile.getPath(), "-1");
+        ImageLogger.log("/photos/IMG_1.jpg", "IMG_1", "IMG_1 @red", ".jpg");
+        ImageLogger.log("/photos/IMG_2.jpg", "IMG_2", "IMG_2 @red", ".jpg");
+        ImageLogger.log("/photos/IMG_1.jpg", "IMG_1 @red", "IMG_1 @red @blue", ".jpg");
+        ImageLogger.close();
+
+        ArrayList<String> names = new ArrayList<>();
+        names.add("IMG_1.jpg");
+        names.add("IMG_1 @red.jpg");
+        names.add("IMG_1 @red @blue.jpg");
+        assertEquals(names, ImageLogger.getNameHistory("/photos/IMG_1.jpg"));
+        assertTrue(ImageLogger.getNameHistory("/photos/IMG_3.jpg").isEmpty());
+        assertEquals("-1", ImageLogger.getConfigSyncMillis());
+
+        ImageLogger.log("/photos/IMG_1.jpg", "IMG_1 @red @blue", "IMG_1", ".jpg");
+        names.add("IMG_1.jpg");
+        assertEquals(names, ImageLogger.getNameHistory("/photos/IMG_1.jpg"));
+    }
+}
@@ -66,12 +66,22 @@ public class Main extends Application {
      */
     private static void initialize() {
         // Read the configuration file
-        String[] configParameters = {"directory", "viewMode", "tagList"};
+        String[] configParameters = {"directory", "viewMode", "tagList", "scanThreads", "sniffImageTypes",
+                "scanCacheEntries", "scanCacheMegabytes", "thumbnailMemoryMegabytes", "thumbnailDiskMegabytes",
+                "journalSyncMillis"};
         Map<String, String> settings = readConfigFile(configParameters); // Configuration settings
 
         // Configure the environment.
-        TagManager.configureTagList(settings.getOrDefault("tagList", ""));
-        ImageManager.configureDirectory(settings.getOrDefault("viewMode", "viewTree"));
+        ImageLogger.configure("ImageLog.journal", settings.get("journalSyncMillis"));
+        // the tag list of older configuration files is only read until the tag store exists
+        TagManager.configureTagStore("tags.store", settings.get("tagList"));
+        ImageManager.configureScanThreads(settings.get("scanThreads"));
+        ImageManager.configureImageTypeSniffing(settings.get("sniffImageTypes"));
+        ImageManager.configureScanCache(settings.get("scanCacheEntries"), settings.get("scanCacheMegabytes"));
+        ImageManager.configureCatalog("library.catalog");
+        ImageManager.configureThumbnails("thumbnails", settings.get("thumbnailMemoryMegabytes"),
+                settings.get("thumbnailDiskMegabytes"));
+        ImageManager.configureViewMode(settings.get("viewMode"));
         ImageManager.configureDirectory(settings.getOrDefault("directory", System.getProperty("user.home")));
     }
 
@@ -83,9 +93,18 @@ public class Main extends Application {
         Map<String, String> settings = new HashMap<>();
         settings.put("directory", ImageManager.getConfigDirectory());
         settings.put("viewMode", ImageManager.getConfigViewMode());
-        settings.put("tagList", TagManager.getConfigTagList());
-
+        settings.put("scanThreads", ImageManager.getConfigScanThreads());
+        settings.put("sniffImageTypes", ImageManager.getConfigImageTypeSniffing());
+        settings.put("scanCacheEntries", ImageManager.getConfigScanCacheEntries());
+        settings.put("scanCacheMegabytes", ImageManager.getConfigScanCacheMegabytes());
+        settings.put("thumbnailMemoryMegabytes", ImageManager.getConfigThumbnailMemoryMegabytes());
+        settings.put("thumbnailDiskMegabytes", ImageManager.getConfigThumbnailDiskMegabytes());
+        settings.put("journalSyncMillis", ImageLogger.getConfigSyncMillis());
+
+        TagManager.saveTagStore();
         writeConfigFile(settings);
+        ImageManager.saveCatalog();
+        ImageLogger.close();
     }
 
     /**
@@ -0,0 +1,606 @@
+package pack;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary journal of all renamings, with a sidecar index so the history of one file, or the renamings of a span of
+ * time, is read without going through the whole journal. Both files are only ever appended to, and read through
+ * memory maps. Renamings are recorded under the identity of their file: its directory, original name and extension,
+ * which tags do not change.
+ * <p>
+ * Layout, all numbers big-endian:
+ * <pre>
+ * journal  int magic, int version, then per renaming: int length of the rest, long time, long identity hash,
+ *          and the identity, the old name and the new name, each an int byte length and UTF-8 bytes
+ * index    int magic, int version, then per renaming: long time, long identity hash, long journal offset,
+ *          long index of the previous renaming of the same identity hash, -1 if there is none
+ * heads    int magic, int version, long number of renamings covered, int count, then per identity hash: long hash,
+ *          long index of its latest renaming
+ * </pre>
+ * The heads file is written on close; renamings indexed after it are replayed when the journal is opened. A renaming
+ * cut short by a crash is dropped, and one journaled but not indexed is indexed again.
+ */
+class RenameJournal {
+
+    private static final int MAGIC = 0x524a4e4c;
+
+    private static final int INDEX_MAGIC = 0x524a4958;
+
+    private static final int HEADS_MAGIC = 0x524a4844;
+
+    private static final int VERSION = 1;
+
+    /**
+     * Bytes of the header of the journal and of the index.
+     */
+    private static final int HEADER = 8;
+
+    /**
+     * Bytes of an index entry.
+     */
+    private static final int ENTRY = 32;
+
+    /**
+     * Bytes of the fixed part of a renaming in the journal, after its length.
+     */
+    private static final int RECORD_FIXED = 16;
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    private final File headsFile;
+
+    private final FileChannel journal;
+
+    private final FileChannel index;
+
+    private final MappedFile journalMap;
+
+    private final MappedFile indexMap;
+
+    /**
+     * Bytes of the journal holding complete renamings.
+     */
+    private long journalLength;
+
+    /**
+     * Number of renamings indexed.
+     */
+    private long entries;
+
+    /**
+     * Index of the latest renaming of each identity hash.
+     */
+    private final HashMap<Long, Long> heads = new HashMap<>();
+
+    /**
+     * A renaming: when it happened, the identity of the file, and its names before and after.
+     */
+    static class Record {
+
+        final long time;
+
+        final String identity;
+
+        final String oldName;
+
+        final String newName;
+
+        Record(long time, String identity, String oldName, String newName) {
+            this.time = time;
+            this.identity = identity;
+            this.oldName = oldName;
+            this.newName = newName;
+        }
+    }
+
+    /**
+     * Opens a journal with its index and heads files next to it, creating them if needed.
+     *
+     * @param journalFile journal file; the index and heads files have ".idx" and ".heads" appended to its name
+     * @throws IOException if the files cannot be opened or are not a rename journal
+     */
+    RenameJournal(File journalFile) throws IOException {
+        File indexFile = new File(journalFile.getPath() + ".idx");
+        headsFile = new File(journalFile.getPath() + ".heads");
+        journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        index = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            checkHeader(journal, MAGIC, journalFile);
+            checkHeader(index, INDEX_MAGIC, indexFile);
+            recover();
+        } catch (IOException e) {
+            journal.close();
+            index.close();
+            throw e;
+        }
+        journalMap = new MappedFile(journal);
+        indexMap = new MappedFile(index);
+    }
+
+    /**
+     * Helper in the constructor. Writes the header of an empty file, or checks the header of an existing one.
+     */
+    private static void checkHeader(FileChannel channel, int magic, File file) throws IOException {
+        if (channel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER).putInt(magic).putInt(VERSION);
+            header.flip();
+            channel.write(header, 0);
+            return;
+        }
+        ByteBuffer header = read(channel, 0, HEADER);
+        if (header == null || header.getInt() != magic || header.getInt() != VERSION) {
+            throw new IOException("Not a rename journal: " + file);
+        }
+    }
+
+    /**
+     * Helper in the constructor. Drops what a crash cut short, indexes renamings journaled but not indexed, and
+     * finds the latest renaming of each identity hash.
+     */
+    private void recover() throws IOException {
+        long journalSize = journal.size();
+        entries = (index.size() - HEADER) / ENTRY;
+        // index entries of renamings cut short
+        journalLength = HEADER;
+        while (entries > 0) {
+            ByteBuffer entry = read(index, HEADER + (entries - 1) * ENTRY, ENTRY);
+            long offset = entry.getLong(16);
+            ByteBuffer length = read(journal, offset, 4);
+            if (length != null && offset + 4 + length.getInt() <= journalSize) {
+                journalLength = offset + 4 + length.getInt(0);
+                break;
+            }
+            entries--;
+        }
+        index.truncate(HEADER + entries * ENTRY);
+
+        long covered = loadHeads();
+        if (covered < 0) {
+            heads.clear();
+            covered = 0;
+        }
+        for (long i = covered; i < entries; i++) {
+            heads.put(read(index, HEADER + i * ENTRY + 8, 8).getLong(), i);
+        }
+
+        // renamings journaled but not indexed
+        ArrayList<Record> unindexed = new ArrayList<>();
+        ArrayList<Long> offsets = new ArrayList<>();
+        long offset = journalLength;
+        while (true) {
+            ByteBuffer length = read(journal, offset, 4);
+            if (length == null || length.getInt() < RECORD_FIXED || offset + 4 + length.getInt(0) > journalSize) {
+                break;
+            }
+            unindexed.add(decode(read(journal, offset + 4, length.getInt(0))));
+            offsets.add(offset);
+            offset += 4 + length.getInt(0);
+        }
+        journal.truncate(offset);
+        for (int i = 0; i < unindexed.size(); i++) {
+            writeEntries(Collections.singletonList(unindexed.get(i)), offsets.get(i));
+        }
+        journalLength = offset;
+    }
+
+    /**
+     * Helper in recover. Reads the heads file.
+     *
+     * @return number of renamings the heads cover, or -1 if they cannot be used
+     */
+    private long loadHeads() {
+        if (!headsFile.isFile()) {
+            return -1;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(headsFile),
+                1 << 16))) {
+            if (in.readInt() != HEADS_MAGIC || in.readInt() != VERSION) {
+                return -1;
+            }
+            long covered = in.readLong();
+            int count = in.readInt();
+            if (covered > entries || count < 0) {
+                return -1;
+            }
+            for (int i = 0; i < count; i++) {
+                long key = in.readLong();
+                long latest = in.readLong();
+                if (latest >= covered) {
+                    return -1;
+                }
+                heads.put(key, latest);
+            }
+            return covered;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Appends renamings to the journal and the index. They are on the disk once force returns.
+     *
+     * @param records renamings, in the order they happened
+     * @throws IOException if the journal cannot be written
+     */
+    synchronized void append(List<Record> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        ArrayList<byte[]> encoded = new ArrayList<>(records.size());
+        int size = 0;
+        for (Record record : records) {
+            byte[] bytes = encode(record);
+            encoded.add(bytes);
+            size += bytes.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (byte[] bytes : encoded) {
+            buffer.put(bytes);
+        }
+        buffer.flip();
+        long offset = journalLength;
+        while (buffer.hasRemaining()) {
+            offset += journal.write(buffer, offset);
+        }
+        writeEntries(records, journalLength);
+        journalLength = offset;
+    }
+
+    /**
+     * Helper in append and recover. Indexes renamings written one after the other from an offset of the journal.
+     */
+    private void writeEntries(List<Record> records, long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(records.size() * ENTRY);
+        for (Record record : records) {
+            long key = hash(record.identity);
+            Long previous = heads.put(key, entries + buffer.position() / ENTRY);
+            buffer.putLong(record.time).putLong(key).putLong(offset).putLong(previous == null ? -1 : previous);
+            offset += encodedLength(record);
+        }
+        buffer.flip();
+        long position = HEADER + entries * ENTRY;
+        while (buffer.hasRemaining()) {
+            position += index.write(buffer, position);
+        }
+        entries += records.size();
+    }
+
+    /**
+     * Forces the journal and the index to the disk.
+     *
+     * @throws IOException if they cannot be written
+     */
+    synchronized void force() throws IOException {
+        journal.force(false);
+        index.force(false);
+    }
+
+    /**
+     * Returns the number of renamings in the journal.
+     *
+     * @return number of renamings
+     */
+    synchronized long size() {
+        return entries;
+    }
+
+    /**
+     * Returns every renaming of a file, following the index from its latest renaming back.
+     *
+     * @param identity identity of the file
+     * @return renamings of the file, oldest first
+     * @throws IOException if the journal cannot be read
+     */
+    synchronized List<Record> history(String identity) throws IOException {
+        ArrayList<Record> records = new ArrayList<>();
+        Long latest = heads.get(hash(identity));
+        for (long i = latest == null ? -1 : latest; i >= 0; i = indexMap.getLong(HEADER + i * ENTRY + 24)) {
+            Record record = readRecord(indexMap.getLong(HEADER + i * ENTRY + 16));
+            // identities with the same hash share a chain
+            if (record.identity.equals(identity)) {
+                records.add(record);
+            }
+        }
+        Collections.reverse(records);
+        return records;
+    }
+
+    /**
+     * Returns the renamings of a span of time, found by binary search on the index, which is in the order the
+     * renamings happened.
+     *
+     * @param from earliest time, in milliseconds since the epoch
+     * @param to   latest time, in milliseconds since the epoch
+     * @return renamings between the two times, oldest first
+     * @throws IOException if the journal cannot be read
+     */
+    synchronized List<Record> between(long from, long to) throws IOException {
+        return between(from, to, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the latest renamings of a span of time, found by binary search on the index, so only the renamings
+     * returned are read however long the journal is.
+     *
+     * @param from  earliest time, in milliseconds since the epoch
+     * @param to    latest time, in milliseconds since the epoch
+     * @param limit greatest number of renamings returned
+     * @return up to limit renamings between the two times, the latest ones, oldest first
+     * @throws IOException if the journal cannot be read
+     */
+    synchronized List<Record> between(long from, long to, int limit) throws IOException {
+        long first = firstAfter(from - 1);
+        long end = to == Long.MAX_VALUE ? entries : firstAfter(to);
+        first = Math.max(first, end - limit);
+        ArrayList<Record> records = new ArrayList<>((int) Math.max(0, end - first));
+        for (long i = first; i < end; i++) {
+            records.add(readRecord(indexMap.getLong(HEADER + i * ENTRY + 16)));
+        }
+        return records;
+    }
+
+    /**
+     * Helper in between. Returns the index of the first renaming later than a time, the number of renamings if there
+     * is none.
+     */
+    private long firstAfter(long time) throws IOException {
+        long low = 0;
+        long high = entries;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (indexMap.getLong(HEADER + middle * ENTRY) <= time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Writes every renaming to a text file, one line each, oldest first.
+     *
+     * @param textFile file written
+     * @throws IOException if the journal cannot be read or the file written
+     */
+    synchronized void exportText(File textFile) throws IOException {
+        ZoneId zone = ZoneId.systemDefault();
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(textFile),
+                StandardCharsets.UTF_8), 1 << 16)) {
+            long offset = HEADER;
+            for (long i = 0; i < entries; i++) {
+                int length = journalMap.getInt(offset);
+                out.write(format(readRecord(offset), zone));
+                out.write(System.lineSeparator());
+                offset += 4 + length;
+            }
+        }
+    }
+
+    /**
+     * Returns a renaming as one line of text: its time, the directory of the file, and its old and new names.
+     *
+     * @param record renaming
+     * @param zone   time zone of the time
+     * @return line of text
+     */
+    static String format(Record record, ZoneId zone) {
+        String directory = new File(record.identity).getParent();
+        return TIME_FORMAT.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(record.time), zone)) + " "
+                + (directory == null ? "" : directory + File.separator) + " From: " + record.oldName + " -> To: "
+                + record.newName;
+    }
+
+    /**
+     * Forces the journal to the disk, writes the heads file and closes the journal.
+     *
+     * @throws IOException if the files cannot be written
+     */
+    synchronized void close() throws IOException {
+        try {
+            force();
+            File temporaryFile = new File(headsFile.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temporaryFile), 1 << 16))) {
+                out.writeInt(HEADS_MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(entries);
+                out.writeInt(heads.size());
+                for (Map.Entry<Long, Long> head : heads.entrySet()) {
+                    out.writeLong(head.getKey());
+                    out.writeLong(head.getValue());
+                }
+            }
+            Files.move(temporaryFile.toPath(), headsFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            journal.close();
+            index.close();
+        }
+    }
+
+    /**
+     * Helper in history, between and exportText. Reads the renaming at an offset of the journal.
+     */
+    private Record readRecord(long offset) throws IOException {
+        int length = journalMap.getInt(offset);
+        byte[] bytes = new byte[length];
+        journalMap.get(offset + 4, bytes);
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Helper in append. Returns the bytes of a renaming in the journal, with its length first.
+     */
+    private static byte[] encode(Record record) {
+        byte[] identity = record.identity.getBytes(StandardCharsets.UTF_8);
+        byte[] oldName = record.oldName.getBytes(StandardCharsets.UTF_8);
+        byte[] newName = record.newName.getBytes(StandardCharsets.UTF_8);
+        int length = RECORD_FIXED + 12 + identity.length + oldName.length + newName.length;
+        ByteBuffer buffer = ByteBuffer.allocate(4 + length);
+        buffer.putInt(length).putLong(record.time).putLong(hash(record.identity));
+        buffer.putInt(identity.length).put(identity);
+        buffer.putInt(oldName.length).put(oldName);
+        buffer.putInt(newName.length).put(newName);
+        return buffer.array();
+    }
+
+    /**
+     * Helper in writeEntries. Returns the number of bytes of a renaming in the journal, with its length first.
+     */
+    private static int encodedLength(Record record) {
+        return 4 + RECORD_FIXED + 12 + record.identity.getBytes(StandardCharsets.UTF_8).length
+                + record.oldName.getBytes(StandardCharsets.UTF_8).length
+                + record.newName.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Helper reading a renaming from its bytes in the journal, after its length.
+     */
+    private static Record decode(ByteBuffer buffer) throws IOException {
+        try {
+            long time = buffer.getLong();
+            buffer.getLong();
+            String identity = readString(buffer);
+            String oldName = readString(buffer);
+            String newName = readString(buffer);
+            return new Record(time, identity, oldName, newName);
+        } catch (RuntimeException e) {
+            throw new IOException("Rename journal is corrupt", e);
+        }
+    }
+
+    /**
+     * Helper in decode.
+     */
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Helper returning the 64 bit hash of an identity.
+     */
+    private static long hash(String identity) {
+        // FNV-1a over the characters
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < identity.length(); i++) {
+            hash ^= identity.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Helper in recover. Reads bytes at a position of a file.
+     *
+     * @return the bytes, or null if the file ends before
+     */
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * A file read through memory maps of up to a gigabyte each, so files of any size can be mapped. The maps are
+     * made as they are needed, and made again once the file has grown past them.
+     */
+    private static class MappedFile {
+
+        private static final int SEGMENT_BITS = 30;
+
+        private static final long SEGMENT = 1L << SEGMENT_BITS;
+
+        private final FileChannel channel;
+
+        private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+        MappedFile(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        long getLong(long position) throws IOException {
+            byte[] bytes = new byte[8];
+            get(position, bytes);
+            return ByteBuffer.wrap(bytes).getLong();
+        }
+
+        int getInt(long position) throws IOException {
+            byte[] bytes = new byte[4];
+            get(position, bytes);
+            return ByteBuffer.wrap(bytes).getInt();
+        }
+
+        /**
+         * Reads bytes at a position, across maps if needed.
+         */
+        void get(long position, byte[] bytes) throws IOException {
+            int done = 0;
+            while (done < bytes.length) {
+                int segment = (int) (position >>> SEGMENT_BITS);
+                int within = (int) (position & (SEGMENT - 1));
+                int length = (int) Math.min(bytes.length - done, SEGMENT - within);
+                ByteBuffer view = segment(segment, within + length).duplicate();
+                view.position(within);
+                view.get(bytes, done, length);
+                done += length;
+                position += length;
+            }
+        }
+
+        /**
+         * Helper in get. Returns a map, made again if it does not reach far enough.
+         */
+        private MappedByteBuffer segment(int segment, int end) throws IOException {
+            if (segment >= segments.length) {
+                MappedByteBuffer[] grown = new MappedByteBuffer[segment + 1];
+                System.arraycopy(segments, 0, grown, 0, segments.length);
+                segments = grown;
+            }
+            if (segments[segment] == null || segments[segment].capacity() < end) {
+                long start = segment * SEGMENT;
+                long length = Math.min(SEGMENT, channel.size() - start);
+                if (length < end) {
+                    throw new IOException("Rename journal is cut short");
+                }
+                segments[segment] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            }
+            return segments[segment];
+        }
+    }
+}
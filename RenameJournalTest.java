@@ -0,0 +1,82 @@
+package pack;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test Class for RenameJournal.
+ */
+class RenameJournalTest {
+    private File journalFile;
+
+    /**
+     * Makes a fresh journal file name before every test.
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        journalFile = File.createTempFile("rename", ".journal");
+        journalFile.delete();
+    }
+
+    /**
+     * Deletes the journal and its index after every test.
+     */
+    @AfterEach
+    void tearDown() {
+        for (String suffix : new String[]{"", ".idx", ".heads"}) {
+            new File(journalFile.getPath() + suffix).delete();
+        }
+    }
+
+    /**
+     * Tests to see if histories and spans of time are found, and if the journal recovers from a crash that left a
+     * renaming unindexed and another cut short.
+     */
+    @Test
+    void recoversAfterCrash() throws IOException {
+        RenameJournal journal = new RenameJournal(journalFile);
+        ArrayList<RenameJournal.Record> records = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            records.add(new RenameJournal.Record(i, "/a/IMG_" + (i % 10) + ".jpg", "old" + i, "new" + i));
+        }
+        journal.append(records);
+        assertEquals(100, journal.history("/a/IMG_3.jpg").size());
+        assertEquals("new993", journal.history("/a/IMG_3.jpg").get(99).newName);
+        List<RenameJournal.Record> span = journal.between(500, 509);
+        assertEquals(10, span.size());
+        assertEquals("old500", span.get(0).oldName);
+
+        // a renaming journaled but not indexed, and half of another, without closing
+        journal.append(records.subList(0, 2));
+        journal.force();
+        File indexFile = new File(journalFile.getPath() + ".idx");
+        try (RandomAccessFile index = new RandomAccessFile(indexFile, "rw")) {
+            index.setLength(index.length() - 32 - 5);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        RenameJournal reopened = new RenameJournal(journalFile);
+        assertEquals(1001, reopened.size());
+        assertEquals(101, reopened.history("/a/IMG_0.jpg").size());
+        assertEquals(100, reopened.history("/a/IMG_1.jpg").size());
+        reopened.append(records.subList(1, 2));
+        assertEquals(101, reopened.history("/a/IMG_1.jpg").size());
+        reopened.close();
+
+        RenameJournal closed = new RenameJournal(journalFile);
+        assertEquals(1002, closed.size());
+        assertEquals(101, closed.history("/a/IMG_1.jpg").size());
+        closed.close();
+    }
+}
@@ -0,0 +1,43 @@
+package pack;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Runs the benchmarks and writes their results as JSON to benchmark-results, one file per run named by its start
+ * time, so runs can be compared over time.
+ */
+public class BenchmarkRunner {
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args regular expressions of the benchmarks to run, all benchmarks if none
+     * @throws RunnerException if a benchmark fails
+     */
+    public static void main(String[] args) throws RunnerException {
+        File results = new File("benchmark-results");
+        results.mkdirs();
+        String name = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json";
+
+        OptionsBuilder options = new OptionsBuilder();
+        if (args.length == 0) {
+            options.include("pack\\..*Benchmark");
+        }
+        for (String include : args) {
+            options.include(include);
+        }
+        Options built = options
+                .resultFormat(ResultFormatType.JSON)
+                .result(new File(results, name).getPath())
+                .build();
+        new Runner(built).run();
+    }
+}
@@ -0,0 +1,128 @@
+package pack;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic photo libraries and tag names for the benchmarks. Datasets are built from a fixed seed, so
+ * every run measures the same data.
+ */
+public class DatasetGenerator {
+
+    /**
+     * Seed of all generated datasets.
+     */
+    private static final long SEED = 42;
+
+    /**
+     * Extensions of the generated files, with one file in ten not being an image.
+     */
+    private static final String[] EXTENSIONS = {".jpg", ".JPG", ".png", ".jpeg", ".tif", ".jpg", ".png", ".jpg",
+            ".heic", ".txt"};
+
+    /**
+     * Returns a directory on a memory backed file system if there is one, so benchmarks measure the code rather than
+     * the disk.
+     *
+     * @param prefix prefix of the directory name
+     * @return a new empty directory
+     * @throws IOException if the directory cannot be created
+     */
+    public static File createScratchDirectory(String prefix) throws IOException {
+        File shm = new File("/dev/shm");
+        if (shm.isDirectory() && shm.canWrite()) {
+            return Files.createTempDirectory(shm.toPath(), prefix).toFile();
+        }
+        return Files.createTempDirectory(prefix).toFile();
+    }
+
+    /**
+     * Returns tag names made of one or two words.
+     *
+     * @param count number of tag names
+     * @return distinct tag names
+     */
+    public static List<String> tagNames(int count) {
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(i % 2 == 0 ? "tag" + i : "place" + i + "-" + (char) ('a' + i % 26));
+        }
+        return names;
+    }
+
+    /**
+     * Returns a file name carrying some of the given tags, the way Image names its files.
+     *
+     * @param random   source of the choices
+     * @param index    number of the file
+     * @param tagNames tags to choose from
+     * @param maxTags  maximum number of tags in the name
+     * @return file name without extension
+     */
+    public static String fileName(Random random, int index, List<String> tagNames, int maxTags) {
+        StringBuilder name = new StringBuilder("IMG_").append(index);
+        int tags = tagNames.isEmpty() ? 0 : random.nextInt(maxTags + 1);
+        for (int i = 0; i < tags; i++) {
+            name.append(" @").append(tagNames.get(random.nextInt(tagNames.size())));
+        }
+        return name.toString();
+    }
+
+    /**
+     * Generates a tree of empty files, spread over nested directories of at most a few hundred files each, with tags
+     * in some of the names.
+     *
+     * @param root     directory the tree is generated in
+     * @param files    number of files
+     * @param tagNames tags used in the file names
+     * @throws IOException if a file cannot be created
+     */
+    public static void generateTree(File root, int files, List<String> tagNames) throws IOException {
+        Random random = new Random(SEED);
+        int perDirectory = 250;
+        int directories = (files + perDirectory - 1) / perDirectory;
+        for (int d = 0; d < directories; d++) {
+            // two levels of nesting, like year/event folders
+            File directory = new File(root, "year" + (d / 20) + File.separator + "event" + d);
+            Files.createDirectories(directory.toPath());
+            int end = Math.min(files, (d + 1) * perDirectory);
+            for (int i = d * perDirectory; i < end; i++) {
+                String name = fileName(random, i, tagNames, 3) + EXTENSIONS[i % EXTENSIONS.length];
+                Files.createFile(new File(directory, name).toPath());
+            }
+        }
+    }
+
+    /**
+     * Deletes a generated dataset.
+     *
+     * @param root directory of the dataset
+     * @throws IOException if a file cannot be deleted
+     */
+    public static void delete(File root) throws IOException {
+        if (!root.exists()) {
+            return;
+        }
+        Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
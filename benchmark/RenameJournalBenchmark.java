@@ -0,0 +1,107 @@
+package pack;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading the history of one file from a rename journal of the given number of renamings, through the index
+ * and by going through every renaming, and reading the renamings of a short span of time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RenameJournalBenchmark {
+
+    /**
+     * Number of files the renamings are spread over.
+     */
+    private static final int FILES = 10000;
+
+    @Param({"1000000"})
+    public int renamings;
+
+    private File directory;
+
+    private RenameJournal journal;
+
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = DatasetGenerator.createScratchDirectory("journal-benchmark");
+        journal = new RenameJournal(new File(directory, "ImageLog.journal"));
+        ArrayList<RenameJournal.Record> batch = new ArrayList<>();
+        for (int i = 0; i < renamings; i++) {
+            batch.add(new RenameJournal.Record(i, identity(i % FILES), "IMG_" + i + " @old.jpg",
+                    "IMG_" + i + " @new.jpg"));
+            if (batch.size() == 4096) {
+                journal.append(batch);
+                batch.clear();
+            }
+        }
+        journal.append(batch);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        journal.close();
+        DatasetGenerator.delete(directory);
+    }
+
+    /**
+     * Follows the index from the latest renaming of a file back.
+     */
+    @Benchmark
+    public List<RenameJournal.Record> historyByIndex() throws IOException {
+        next = (next + 7919) % FILES;
+        return journal.history(identity(next));
+    }
+
+    /**
+     * Goes through every renaming and keeps those of a file.
+     */
+    @Benchmark
+    public List<RenameJournal.Record> historyByScan() throws IOException {
+        next = (next + 7919) % FILES;
+        String identity = identity(next);
+        ArrayList<RenameJournal.Record> records = new ArrayList<>();
+        for (RenameJournal.Record record : journal.between(Long.MIN_VALUE, Long.MAX_VALUE)) {
+            if (record.identity.equals(identity)) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Reads the renamings of a span of a hundred milliseconds.
+     */
+    @Benchmark
+    public List<RenameJournal.Record> between() throws IOException {
+        next = (next + 7919) % (renamings - 100);
+        return journal.between(next, next + 99);
+    }
+
+    private static String identity(int file) {
+        return "/photos/2019/IMG_" + file + ".jpg";
+    }
+}
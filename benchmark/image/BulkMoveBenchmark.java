@@ -0,0 +1,94 @@
+package pack.image;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pack.DatasetGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures moving a selection of images to another directory, on the same file system and on another one (the disk,
+ * from the memory backed file system, where there is one), against moving the files one after the other with
+ * Files.move. Each invocation is timed once, on files made again before it.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class BulkMoveBenchmark {
+
+    @Param({"500"})
+    public int images;
+
+    @Param({"262144"})
+    public int bytesPerImage;
+
+    @Param({"false", "true"})
+    public boolean otherFileSystem;
+
+    private File source;
+
+    private File target;
+
+    private ArrayList<Image> selection;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException {
+        source = DatasetGenerator.createScratchDirectory("move-benchmark");
+        target = otherFileSystem
+                ? Files.createTempDirectory("move-benchmark").toFile()
+                : DatasetGenerator.createScratchDirectory("move-benchmark");
+        byte[] content = new byte[bytesPerImage];
+        new Random(42).nextBytes(content);
+        selection = new ArrayList<>(images);
+        for (int i = 0; i < images; i++) {
+            File file = new File(source, "IMG_" + i + ".jpg");
+            Files.write(file.toPath(), content);
+            selection.add(new Image(file));
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+        NameRegistry.clear();
+        DatasetGenerator.delete(source);
+        DatasetGenerator.delete(target);
+    }
+
+    /**
+     * Moves every image as one selection.
+     */
+    @Benchmark
+    public int moveSelection() {
+        return ImageManager.moveImages(selection, target, BulkMover.Progress.NONE).getMoved();
+    }
+
+    /**
+     * Moves the files one after the other, as moving them one image at a time would.
+     */
+    @Benchmark
+    public int moveOneByOne() throws IOException {
+        for (Image image : selection) {
+            Files.move(image.getFile().toPath(), new File(target, image.getFile().getName()).toPath());
+        }
+        return selection.size();
+    }
+}
@@ -0,0 +1,55 @@
+package pack.image;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pack.DatasetGenerator;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures FileInfo.updateAllInfo, which runs after every tag change, with the given number of images shown.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileInfoBenchmark {
+
+    @Param({"1000", "100000"})
+    public int images;
+
+    /**
+     * Keeps the FileInfo shown.
+     */
+    private final ArrayList<FileInfo> shown = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        List<String> tagNames = DatasetGenerator.tagNames(100);
+        Random random = new Random(42);
+        for (int i = 0; i < images; i++) {
+            String name = DatasetGenerator.fileName(random, i, tagNames, 3) + ".jpg";
+            shown.add(new FileInfo(new Image(new File("photos", name))));
+        }
+    }
+
+    @Benchmark
+    public void updateAllInfo() {
+        FileInfo.updateAllInfo();
+    }
+}
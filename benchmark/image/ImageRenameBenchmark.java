@@ -0,0 +1,81 @@
+package pack.image;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pack.DatasetGenerator;
+import pack.tag.Tag;
+import pack.tag.TagManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures tagging and reverting an Image, each of which renames its file, in a directory on a memory backed file
+ * system where there is one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ImageRenameBenchmark {
+
+    private File directory;
+
+    private Image image;
+
+    private Tag tag;
+
+    private String originalName;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = DatasetGenerator.createScratchDirectory("rename-benchmark");
+        // neighbours the renamed file has to be checked against
+        for (int i = 0; i < 1000; i++) {
+            Files.createFile(new File(directory, "IMG_" + i + " @other.jpg").toPath());
+        }
+        File file = new File(directory, "IMG_bench.jpg");
+        Files.createFile(file.toPath());
+        image = new Image(file);
+        originalName = image.getName();
+        tag = TagManager.getTag("bench");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        DatasetGenerator.delete(directory);
+    }
+
+    /**
+     * Assigns a tag and removes it again: two renames.
+     */
+    @Benchmark
+    public String assignAndRemoveTag() {
+        image.assignTag(tag);
+        image.removeTag(tag);
+        return image.getName();
+    }
+
+    /**
+     * Assigns a tag and reverts to the original name: two renames.
+     */
+    @Benchmark
+    public String assignAndRevert() {
+        image.assignTag(tag);
+        image.revert(originalName);
+        return image.getName();
+    }
+}
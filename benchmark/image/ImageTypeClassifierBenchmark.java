@@ -0,0 +1,69 @@
+package pack.image;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.activation.MimetypesFileTypeMap;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares ImageTypeClassifier with the MimetypesFileTypeMap check ImageManager used to build for every file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ImageTypeClassifierBenchmark {
+
+    /**
+     * Mix of file names found in a typical photo folder.
+     */
+    private static final String[] NAMES = {
+            "IMG_0001.JPG", "IMG_0002 @beach @2019.jpg", "scan.tiff", "Screenshot.png", "notes.txt",
+            "DSC01234.jpeg", "clip.mov", "sticker.webp", "IMG_3000.HEIC", "archive.zip"};
+
+    private File[] files;
+
+    @Setup
+    public void setUp() {
+        files = new File[NAMES.length];
+        for (int i = 0; i < NAMES.length; i++) {
+            files[i] = new File("photos", NAMES[i]).getAbsoluteFile();
+        }
+    }
+
+    /**
+     * The check ImageManager.isImage used to do: a new MimetypesFileTypeMap per file.
+     */
+    @Benchmark
+    public void mimetypesFileTypeMap(Blackhole blackhole) {
+        for (File file : files) {
+            MimetypesFileTypeMap map = new MimetypesFileTypeMap();
+            map.addMimeTypes("image png tif jpg jpeg bmp");
+            String type = map.getContentType(file);
+            blackhole.consume(type.split("/")[0].equals("image"));
+        }
+    }
+
+    /**
+     * The precomputed extension table.
+     */
+    @Benchmark
+    public void imageTypeClassifier(Blackhole blackhole) {
+        for (File file : files) {
+            blackhole.consume(ImageTypeClassifier.isImage(file));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package pack.image;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pack.DatasetGenerator;
+import pack.tag.Tag;
+import pack.tag.TagManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures tagging an Image whose new name is already taken by thousands of numbered files, so a free number has to
+ * be found, against trying every number on the disk as renaming used to.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NameCollisionBenchmark {
+
+    @Param({"5000"})
+    public int collisions;
+
+    private File directory;
+
+    private Image image;
+
+    private Tag tag;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = DatasetGenerator.createScratchDirectory("collision-benchmark");
+        Files.createFile(new File(directory, "IMG @beach.jpg").toPath());
+        for (int i = 1; i < collisions; i++) {
+            Files.createFile(new File(directory, "IMG @beach(" + i + ").jpg").toPath());
+        }
+        File file = new File(directory, "IMG.jpg");
+        Files.createFile(file.toPath());
+        image = new Image(file);
+        tag = TagManager.getTag("beach");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        NameRegistry.clear();
+        DatasetGenerator.delete(directory);
+    }
+
+    /**
+     * Assigns a tag, whose name is taken up to the last number, and removes it again: two renames.
+     */
+    @Benchmark
+    public String assignAndRemoveTag() {
+        image.assignTag(tag);
+        image.removeTag(tag);
+        return image.getName();
+    }
+
+    /**
+     * Renames the file the way renaming used to, checking every number on the disk, and back.
+     */
+    @Benchmark
+    public boolean probeEveryName() {
+        File file = image.getFile();
+        File newFile = new File(directory, "IMG @beach.jpg");
+        for (int tries = 1; newFile.exists(); tries++) {
+            newFile = new File(directory, "IMG @beach(" + tries + ").jpg");
+        }
+        return file.renameTo(newFile) && newFile.renameTo(file);
+    }
+}
@@ -0,0 +1,59 @@
+package pack.image;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pack.DatasetGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures ImageManager loading a generated library with all images shown, which scans every directory under it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScanBenchmark {
+
+    @Param({"1000", "100000"})
+    public int files;
+
+    private File root;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = DatasetGenerator.createScratchDirectory("scan-benchmark");
+        DatasetGenerator.generateTree(root, files, DatasetGenerator.tagNames(200));
+        // measure the scan itself, not the cache of previous results
+        ImageManager.configureScanCache("0", "0");
+        ImageManager.setViewAllImages(true);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        DatasetGenerator.delete(root);
+    }
+
+    /**
+     * Loads the library, replacing the images of the previous load.
+     */
+    @Benchmark
+    public int setDirectory() {
+        ImageManager.setDirectory(root);
+        return ImageManager.getImages().size();
+    }
+}
@@ -0,0 +1,90 @@
+package pack.tag;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pack.DatasetGenerator;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures looking up tags by name, alone and while parsing file names, and completing the first letters of a tag
+ * name, with the given number of tags in the library.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TagManagerBenchmark {
+
+    @Param({"10", "1000", "50000"})
+    public int tags;
+
+    private String[] names;
+
+    private String[] fileNames;
+
+    private String[] prefixes;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        TagManager.allTags.clear();
+        List<String> tagNames = DatasetGenerator.tagNames(tags);
+        for (String name : tagNames) {
+            TagManager.createTag(name);
+        }
+        Random random = new Random(42);
+        names = new String[1024];
+        fileNames = new String[1024];
+        prefixes = new String[1024];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = tagNames.get(random.nextInt(tagNames.size()));
+            fileNames[i] = "IMG_" + i + " @" + tagNames.get(random.nextInt(tagNames.size()))
+                    + " @" + tagNames.get(random.nextInt(tagNames.size()))
+                    + " @" + tagNames.get(random.nextInt(tagNames.size())) + ".jpg";
+            String name = tagNames.get(random.nextInt(tagNames.size()));
+            prefixes[i] = name.substring(0, Math.min(4, name.length()));
+        }
+    }
+
+    /**
+     * Looks up an existing tag.
+     */
+    @Benchmark
+    public Tag getTag() {
+        next = (next + 1) & 1023;
+        return TagManager.getTag(names[next]);
+    }
+
+    /**
+     * Parses the tags of a file name with three existing tags.
+     */
+    @Benchmark
+    public List<Tag> getTagsFromFileName() {
+        next = (next + 1) & 1023;
+        return TagManager.getTagsFromFileName(fileNames[next]);
+    }
+
+    /**
+     * Completes the first four letters of an existing tag name to the eight most used tags.
+     */
+    @Benchmark
+    public List<Tag> completeTags() {
+        next = (next + 1) & 1023;
+        return TagManager.completeTags(prefixes[next], 8);
+    }
+}
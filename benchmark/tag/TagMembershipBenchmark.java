@@ -0,0 +1,100 @@
+package pack.tag;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pack.DatasetGenerator;
+import pack.image.Image;
+import pack.image.ImageManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures assigning one tag to every image of a library and deleting it again, both with the files renamed and on
+ * the image lists alone, and tagging and untagging every image as one selection. Each invocation is timed once, since deleting the tag undoes the assignment.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Thread)
+public class TagMembershipBenchmark {
+
+    @Param({"100000"})
+    public int images;
+
+    private File directory;
+
+    private Image[] library;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = DatasetGenerator.createScratchDirectory("membership-benchmark");
+        library = new Image[images];
+        for (int i = 0; i < images; i++) {
+            File file = new File(directory, "IMG_" + i + ".jpg");
+            Files.createFile(file.toPath());
+            library[i] = new Image(file);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        DatasetGenerator.delete(directory);
+    }
+
+    /**
+     * Tags every image, renaming its file, then deletes the tag, renaming every file back.
+     */
+    @Benchmark
+    public int assignAndDeleteTag() {
+        Tag tag = TagManager.getTag("bulk");
+        for (Image image : library) {
+            image.assignTag(tag);
+        }
+        int tagged = tag.getImageCount();
+        TagManager.deleteTag(tag);
+        return tagged;
+    }
+
+    /**
+     * Tags every image as one selection, renaming all the files at once, then untags them the same way.
+     */
+    @Benchmark
+    public int assignAndRemoveTagInBulk() {
+        Tag tag = TagManager.getTag("selection");
+        int renamed = ImageManager.assignTagToImages(Arrays.asList(library), tag).getRenamed();
+        ImageManager.removeTagFromImages(Arrays.asList(library), tag);
+        return renamed;
+    }
+
+    /**
+     * Adds every image to the image list of a tag, then removes them in the same order, as deleting the tag does.
+     */
+    @Benchmark
+    public int addAndRemoveImages() {
+        Tag tag = new Tag("lists");
+        for (Image image : library) {
+            tag.addImage(image);
+        }
+        int tagged = tag.getImageCount();
+        for (Image image : library) {
+            tag.removeImage(image);
+        }
+        return tagged;
+    }
+}
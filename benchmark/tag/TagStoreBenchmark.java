@@ -0,0 +1,107 @@
+package pack.tag;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pack.DatasetGenerator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures saving and loading the given number of tags with the tag store, against the tag list property of the
+ * configuration file it replaces.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TagStoreBenchmark {
+
+    @Param({"1000", "50000"})
+    public int tags;
+
+    private File directory;
+
+    private File storeFile;
+
+    private File propertiesFile;
+
+    private List<Tag> allTags;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = DatasetGenerator.createScratchDirectory("tag-store-benchmark");
+        storeFile = new File(directory, "tags.store");
+        propertiesFile = new File(directory, "config.properties");
+        TagManager.allTags.clear();
+        for (String name : DatasetGenerator.tagNames(tags)) {
+            TagManager.createTag(name);
+        }
+        allTags = new ArrayList<>(TagManager.allTags);
+        saveStore();
+        saveProperties();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        DatasetGenerator.delete(directory);
+    }
+
+    /**
+     * Writes the tag store.
+     */
+    @Benchmark
+    public void saveStore() throws IOException {
+        TagStore.save(storeFile, allTags);
+    }
+
+    /**
+     * Reads the tag store.
+     */
+    @Benchmark
+    public int loadStore() throws IOException {
+        return TagStore.load(storeFile).size();
+    }
+
+    /**
+     * Writes the tags as the tag list property.
+     */
+    @Benchmark
+    public void saveProperties() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("tagList", TagManager.getConfigTagList());
+        try (FileOutputStream out = new FileOutputStream(propertiesFile)) {
+            properties.store(out, null);
+        }
+    }
+
+    /**
+     * Reads the tag list property and splits it into names.
+     */
+    @Benchmark
+    public int loadProperties() throws IOException {
+        Properties properties = new Properties();
+        try (FileInputStream in = new FileInputStream(propertiesFile)) {
+            properties.load(in);
+        }
+        return properties.getProperty("tagList").split("@").length;
+    }
+}
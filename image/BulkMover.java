@@ -0,0 +1,392 @@
+package pack.image;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * Moves the files of many Images to another directory at once. Every new name is claimed in the NameRegistry first,
+ * on the thread the Images are changed on; the files are then moved on a pool of I/O threads, which may be done in
+ * the background; and the Images are updated together at the end, back on their own thread. Within a file system a
+ * file is renamed in one step. Across file systems it is copied by the operating system without passing through this
+ * program, forced to the disk and checked against the original, which is only deleted then. A file is never replaced:
+ * if a name was taken behind the back of the registry, the next free one is claimed and the move tried again.
+ */
+class BulkMover {
+
+    /**
+     * Number of files a single task moves.
+     */
+    private static final int FILES_PER_TASK = 16;
+
+    /**
+     * Follows the progress of a move. Called from the I/O threads.
+     */
+    interface Progress {
+
+        /**
+         * Progress that is not followed.
+         */
+        Progress NONE = (files, bytes) -> {
+        };
+
+        /**
+         * Called every time a file has been moved or could not be.
+         *
+         * @param files number of files done so far
+         * @param bytes number of bytes of the files done so far
+         */
+        void moved(int files, long bytes);
+    }
+
+    /**
+     * Moves planned, one per file.
+     */
+    private final List<Move> moves = new ArrayList<>();
+
+    /**
+     * Total size of the files to be moved, in bytes.
+     */
+    private long totalBytes;
+
+    /**
+     * Number of files and bytes done, by the I/O threads.
+     */
+    private final AtomicInteger filesDone = new AtomicInteger();
+
+    private final AtomicLong bytesDone = new AtomicLong();
+
+    /**
+     * Number of files copied across file systems.
+     */
+    private final AtomicInteger copied = new AtomicInteger();
+
+    /**
+     * Time taken by run, in nanoseconds.
+     */
+    private volatile long nanos;
+
+    /**
+     * Every file moved and every name claimed for them, so the changes they make on the disk can be told apart.
+     */
+    private final Set<File> involvedFiles = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Plans moving the files of Images to a directory, keeping their names and adding a number to those that are
+     * taken, as ImageManager.moveImage always has. Images already in the directory are left out. Must be called on
+     * the thread the Images are changed on.
+     *
+     * @param images       Images being moved
+     * @param newDirectory directory they are moved to
+     */
+    BulkMover(List<Image> images, File newDirectory) {
+        for (Image image : images) {
+            File source = image.getFile();
+            if (newDirectory.equals(source.getParentFile())) {
+                continue;
+            }
+            int indexOfTag = image.getName().indexOf("@");
+            String tagsAndExtensions = (indexOfTag > 0 ? " " + image.getName().substring(indexOfTag) : "")
+                    + image.getFileExtension();
+            String name = image.getName() + image.getFileExtension();
+            String nameWithoutTags = image.getNameWithoutTags();
+            IntFunction<String> candidate = tries -> tries == 0
+                    ? name
+                    : nameWithoutTags + " (" + tries + ")" + tagsAndExtensions;
+            File target = new File(newDirectory, NameRegistry.claim(newDirectory, candidate));
+            long bytes = source.length();
+            totalBytes += bytes;
+            involvedFiles.add(source);
+            involvedFiles.add(target);
+            moves.add(new Move(image, source, target, candidate, bytes));
+        }
+    }
+
+    /**
+     * Returns whether a file is moved by this BulkMover, under its old name or one claimed for it.
+     *
+     * @param file file changed on the disk
+     * @return True if the file is moved by this BulkMover
+     */
+    boolean involves(File file) {
+        return involvedFiles.contains(file);
+    }
+
+    /**
+     * Returns the number of files to be moved.
+     *
+     * @return number of files
+     */
+    int getFileCount() {
+        return moves.size();
+    }
+
+    /**
+     * Returns the total size of the files to be moved.
+     *
+     * @return size in bytes
+     */
+    long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Moves the files, on a pool of threads if there are many of them, and waits until they are all done. Does not
+     * change the Images, so it can run in the background.
+     *
+     * @param progress follows the files as they are done
+     */
+    void run(Progress progress) {
+        long start = System.nanoTime();
+        findOtherFileSystems();
+        int workers = Math.min(Math.max(2, DirectoryScanner.getParallelism()),
+                (moves.size() + FILES_PER_TASK - 1) / FILES_PER_TASK);
+        if (workers <= 1) {
+            run(0, moves.size(), progress);
+            nanos = System.nanoTime() - start;
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "bulk-mover");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ArrayList<Future<?>> tasks = new ArrayList<>();
+        for (int from = 0; from < moves.size(); from += FILES_PER_TASK) {
+            int first = from;
+            int end = Math.min(from + FILES_PER_TASK, moves.size());
+            tasks.add(pool.submit((Callable<Void>) () -> {
+                run(first, end, progress);
+                return null;
+            }));
+        }
+        pool.shutdown();
+
+        // every task has to be done before the Images are updated, so an interruption is only passed on after
+        boolean interrupted = false;
+        for (Future<?> task : tasks) {
+            while (true) {
+                try {
+                    task.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    e.printStackTrace();
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        nanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Records the moves in the NameRegistry and hands every Image whose file was moved over with its new file. Must
+     * be called after run, on the thread the Images are changed on.
+     *
+     * @param moved takes every Image moved and its new file
+     * @return number of files moved and failures, bytes moved and how long it took
+     */
+    MoveReport finish(BiConsumer<Image, File> moved) {
+        int movedFiles = 0;
+        long movedBytes = 0;
+        for (Move move : moves) {
+            if (move.done) {
+                NameRegistry.moved(move.source, move.target);
+                moved.accept(move.image, move.target);
+                movedFiles++;
+                movedBytes += move.bytes;
+            } else if (move.target.exists()) {
+                // the name was taken behind the back of the registry
+                NameRegistry.settle(move.target);
+            } else {
+                NameRegistry.release(move.target);
+            }
+        }
+        return new MoveReport(moves.size(), movedFiles, copied.get(), movedBytes, nanos);
+    }
+
+    /**
+     * Helper in run. Finds the moves whose file is on another file system than the directory it is moved to, looking
+     * up the file system of each directory once.
+     */
+    private void findOtherFileSystems() {
+        HashMap<File, FileStore> fileStores = new HashMap<>();
+        for (Move move : moves) {
+            FileStore sourceStore = fileStore(move.source.getParentFile(), fileStores);
+            FileStore targetStore = fileStore(move.target.getParentFile(), fileStores);
+            move.otherFileSystem = sourceStore != null && targetStore != null && !sourceStore.equals(targetStore);
+        }
+    }
+
+    /**
+     * Helper in findOtherFileSystems. Returns the file system of a directory, null if it cannot be found.
+     */
+    private static FileStore fileStore(File directory, HashMap<File, FileStore> fileStores) {
+        if (!fileStores.containsKey(directory)) {
+            FileStore store = null;
+            try {
+                store = Files.getFileStore(directory.toPath());
+            } catch (IOException | InvalidPathException e) {
+                e.printStackTrace();
+            }
+            fileStores.put(directory, store);
+        }
+        return fileStores.get(directory);
+    }
+
+    /**
+     * Helper in run. Moves the files of a range of moves.
+     */
+    private void run(int from, int to, Progress progress) {
+        for (int i = from; i < to; i++) {
+            Move move = moves.get(i);
+            move.done = move(move);
+            progress.moved(filesDone.incrementAndGet(), bytesDone.addAndGet(move.bytes));
+        }
+    }
+
+    /**
+     * Helper in run. Moves a file, renaming it within a file system and copying it across. Neither replaces a file
+     * that is there: if the name was taken behind the back of the NameRegistry, the next free one is claimed.
+     *
+     * @return True if the file was moved
+     */
+    private boolean move(Move move) {
+        while (true) {
+            try {
+                if (move.otherFileSystem) {
+                    copy(move.source.toPath(), move.target.toPath());
+                    copied.incrementAndGet();
+                } else {
+                    // without ATOMIC_MOVE, which would replace a file there on POSIX, the move fails if the name is taken
+                    Files.move(move.source.toPath(), move.target.toPath());
+                }
+                return true;
+            } catch (FileAlreadyExistsException e) {
+                nextName(move);
+            } catch (InvalidPathException e) {
+                // the name cannot be a path where file names are not Unicode, but the file can still be renamed
+                if (!move.target.exists()) {
+                    return move.source.renameTo(move.target);
+                }
+                nextName(move);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Helper in move. Keeps the name of a move as taken by another file and claims the next free one.
+     */
+    private void nextName(Move move) {
+        File directory = move.target.getParentFile();
+        NameRegistry.settle(move.target);
+        // the file there is not moved by this BulkMover, so its changes are not ignored
+        involvedFiles.remove(move.target);
+        move.target = new File(directory, NameRegistry.claim(directory, move.candidate));
+        involvedFiles.add(move.target);
+    }
+
+    /**
+     * Helper in move. Copies a file to another file system, forces the copy to the disk, checks its size and deletes
+     * the original. If anything fails, the copy is deleted again. Fails with FileAlreadyExistsException, leaving it
+     * alone, if there is a file at the target already.
+     */
+    static void copy(Path source, Path target) throws IOException {
+        boolean created = false;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+            created = true;
+            long size = in.size();
+            for (long position = 0; position < size; ) {
+                long transferred = in.transferTo(position, size - position, out);
+                if (transferred <= 0) {
+                    throw new IOException("Could not copy " + source + " past byte " + position);
+                }
+                position += transferred;
+            }
+            out.force(true);
+            if (out.size() != size || Files.size(source) != size) {
+                throw new IOException("Copy of " + source + " does not match it");
+            }
+        } catch (IOException e) {
+            // the channels are closed by now; a file that was there already is not the copy
+            if (created) {
+                Files.deleteIfExists(target);
+            }
+            throw e;
+        }
+        try {
+            Files.setLastModifiedTime(target, Files.getLastModifiedTime(source));
+            Files.delete(source);
+        } catch (IOException e) {
+            // the original stays where it was, rather than being in both places
+            Files.deleteIfExists(target);
+            throw e;
+        }
+    }
+
+    /**
+     * Planned move of the file of an Image.
+     */
+    private static class Move {
+
+        private final Image image;
+
+        private final File source;
+
+        private final IntFunction<String> candidate;
+
+        private final long bytes;
+
+        /**
+         * File the file is moved to, changed by the I/O thread if the name claimed was taken meanwhile.
+         */
+        private volatile File target;
+
+        /**
+         * Whether the file is on another file system than the directory it is moved to, found by run.
+         */
+        private volatile boolean otherFileSystem;
+
+        /**
+         * Whether the file was moved, written by the I/O thread that moved it.
+         */
+        private volatile boolean done;
+
+        Move(Image image, File source, File target, IntFunction<String> candidate, long bytes) {
+            this.image = image;
+            this.source = source;
+            this.target = target;
+            this.candidate = candidate;
+            this.bytes = bytes;
+        }
+    }
+}
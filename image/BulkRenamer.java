@@ -0,0 +1,350 @@
+package pack.image;
+
+import pack.ImageLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Renames the files of many Images at once, after their tags were changed in bulk. Every new name is worked out
+ * first, claimed in the NameRegistry so no two Images get the same name, on the thread the Images are changed on; the
+ * files are then renamed on a pool of I/O threads, which may be done in the background; and the Images are updated and
+ * all the renamings logged together at the end, back on their own thread. A file that cannot be renamed to its planned
+ * name, because it was taken meanwhile, is renamed the usual way, one try after the other, unless all the renamings
+ * have to be done or none, in which case the files already renamed are renamed back. From planning to finishing, the
+ * ImageManager ignores the changes the watcher sees to the files, so the Images are not replaced meanwhile.
+ */
+public class BulkRenamer {
+
+    /**
+     * Number of files a single task renames.
+     */
+    private static final int FILES_PER_TASK = 256;
+
+    /**
+     * Follows the progress of a renaming. Called from the I/O threads.
+     */
+    public interface Progress {
+
+        /**
+         * Progress that is not followed.
+         */
+        Progress NONE = files -> {
+        };
+
+        /**
+         * Called every time a file has been renamed or could not be.
+         *
+         * @param files number of files done so far
+         */
+        void renamed(int files);
+    }
+
+    /**
+     * Renamings planned, one per file.
+     */
+    private final List<Renaming> renamings;
+
+    /**
+     * Images whose tags have changed.
+     */
+    private final List<Image> images;
+
+    /**
+     * Every file renamed and every name planned for them, so the changes they make on the disk can be told apart.
+     */
+    private final Set<File> involvedFiles = new HashSet<>();
+
+    /**
+     * Gives an Image back the tags it had if all the renamings have to be done or none, null otherwise.
+     */
+    private final Consumer<Image> undo;
+
+    /**
+     * Per renaming, True if the file was renamed by run and keeps its new name.
+     */
+    private boolean[] kept;
+
+    /**
+     * Number of files that could not be renamed and, if all have to be or none, of files renamed back by run.
+     */
+    private int failed;
+
+    private int rolledBack;
+
+    /**
+     * Time taken by run, in nanoseconds.
+     */
+    private long nanos;
+
+    /**
+     * Plans renaming the files of Images to the names their tags give them. Images whose file already has that name
+     * are left out. A file that cannot be renamed to its planned name is renamed the usual way when finishing. Must be
+     * called on the thread the Images are changed on.
+     *
+     * @param images Images whose tags have changed
+     */
+    BulkRenamer(List<Image> images) {
+        this(images, null);
+    }
+
+    /**
+     * Plans renaming the files of Images to the names their tags give them, or none of them. If any file cannot be
+     * renamed, the files already renamed are renamed back and every Image is given back its old tags. Must be called
+     * on the thread the Images are changed on.
+     *
+     * @param images Images whose tags have changed
+     * @param undo   gives an Image back the tags it had, for the Images whose file keeps its old name
+     */
+    BulkRenamer(List<Image> images, Consumer<Image> undo) {
+        this.images = images;
+        this.undo = undo;
+        renamings = plan(images);
+        kept = new boolean[renamings.size()];
+        failed = renamings.size();
+        for (Renaming renaming : renamings) {
+            involvedFiles.add(renaming.source);
+            involvedFiles.add(renaming.target);
+        }
+        ImageManager.renamePlanned(this);
+    }
+
+    /**
+     * Returns the number of files to be renamed.
+     *
+     * @return number of files
+     */
+    public int getFileCount() {
+        return renamings.size();
+    }
+
+    /**
+     * Returns whether a file is renamed by this BulkRenamer, under its old name or the one planned for it.
+     *
+     * @param file file changed on the disk
+     * @return True if the file is renamed by this BulkRenamer
+     */
+    boolean involves(File file) {
+        return involvedFiles.contains(file);
+    }
+
+    /**
+     * Renames the files, on a pool of threads if there are many of them, and waits until they are all done. If all
+     * the renamings have to be done or none and any failed, the files renamed are renamed back. Does not change the
+     * Images, so it can run in the background.
+     *
+     * @param progress follows the files as they are done
+     */
+    public void run(Progress progress) {
+        long start = System.nanoTime();
+        boolean[] moved = move(renamings, progress);
+        failed = 0;
+        for (boolean renamed : moved) {
+            if (!renamed) {
+                failed++;
+            }
+        }
+
+        kept = moved;
+        if (undo != null && failed > 0) {
+            ArrayList<Renaming> backward = new ArrayList<>();
+            ArrayList<Integer> backwardIndex = new ArrayList<>();
+            for (int i = 0; i < renamings.size(); i++) {
+                if (moved[i]) {
+                    Renaming renaming = renamings.get(i);
+                    backward.add(new Renaming(renaming.image, renaming.image.getName(), renaming.target,
+                            renaming.source));
+                    backwardIndex.add(i);
+                }
+            }
+            boolean[] movedBack = move(backward, Progress.NONE);
+            kept = moved.clone();
+            for (int i = 0; i < backward.size(); i++) {
+                if (movedBack[i]) {
+                    kept[backwardIndex.get(i)] = false;
+                    rolledBack++;
+                }
+            }
+        }
+        nanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Hands every Image whose file was renamed its new file and logs the renamings. The other Images are given back
+     * their old tags if all the renamings had to be done or none, or else their file is renamed the usual way, and
+     * reported as out of sync with its Image if that fails too. Must be called after run, on the thread the Images are
+     * changed on.
+     *
+     * @return number of files renamed and failures, files out of sync, and how long it took
+     */
+    public RenameReport finish() {
+        // a file that could not be renamed back keeps its new name, and its Image the new tags
+        IdentityHashMap<Image, Boolean> renamedImages = new IdentityHashMap<>();
+        ArrayList<String[]> logged = new ArrayList<>();
+        ArrayList<File> outOfSync = new ArrayList<>();
+        int renamedTheUsualWay = 0;
+        for (int i = 0; i < renamings.size(); i++) {
+            Renaming renaming = renamings.get(i);
+            Image image = renaming.image;
+            if (kept[i]) {
+                NameRegistry.moved(renaming.source, renaming.target);
+                logged.add(new String[]{image.getIdentity(), image.getName(), renaming.newName,
+                        image.getFileExtension()});
+                image.renamed(renaming.target, renaming.newName);
+                renamedImages.put(image, Boolean.TRUE);
+            } else {
+                NameRegistry.release(renaming.target);
+                if (undo == null) {
+                    // the tags replaced cannot be given back, so the file is reported instead
+                    if (image.getFile().exists() && image.rename()) {
+                        renamedTheUsualWay++;
+                    } else {
+                        outOfSync.add(image.getFile());
+                    }
+                }
+            }
+        }
+        if (undo != null && failed > 0) {
+            for (Image image : images) {
+                if (!renamedImages.containsKey(image)) {
+                    undo.accept(image);
+                }
+            }
+        }
+        ImageLogger.logAll(logged);
+        // changes seen from now on find the Images with their new files already
+        ImageManager.renameFinished(this);
+        int renamed = logged.size() + renamedTheUsualWay;
+        return new RenameReport(renamings.size(), renamed, undo == null ? renamings.size() - renamed : failed,
+                rolledBack, outOfSync, nanos);
+    }
+
+    /**
+     * Helper in the constructor. Works out the new file of every Image that has to be renamed, adding a number to
+     * names that are taken, as Image.rename does. The new names are claimed until the files are renamed.
+     */
+    private static List<Renaming> plan(List<Image> images) {
+        ArrayList<Renaming> renamings = new ArrayList<>();
+        for (Image image : images) {
+            String generatedName = image.generateName();
+            if (generatedName.equals(image.getName())) {
+                continue;
+            }
+            File directory = image.getFile().getParentFile();
+            String extension = image.getFileExtension();
+            String fileName = NameRegistry.claim(directory,
+                    tries -> (tries == 0 ? generatedName : generatedName + "(" + tries + ")") + extension);
+            String newName = fileName.substring(0, fileName.length() - extension.length());
+            renamings.add(new Renaming(image, newName, image.getFile(),
+                    new File(directory, newName + image.getFileExtension())));
+        }
+        return renamings;
+    }
+
+    /**
+     * Helper in run. Renames the files, on a pool of threads if there are many of them.
+     *
+     * @return per renaming, True if the file was renamed
+     */
+    private static boolean[] move(List<Renaming> renamings, Progress progress) {
+        boolean[] moved = new boolean[renamings.size()];
+        AtomicInteger filesDone = new AtomicInteger();
+        int workers = Math.min(Math.max(2, DirectoryScanner.getParallelism()),
+                (renamings.size() + FILES_PER_TASK - 1) / FILES_PER_TASK);
+        if (workers <= 1) {
+            move(renamings, 0, renamings.size(), moved, filesDone, progress);
+            return moved;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "bulk-renamer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ArrayList<Future<?>> tasks = new ArrayList<>();
+        for (int from = 0; from < renamings.size(); from += FILES_PER_TASK) {
+            int start = from;
+            int end = Math.min(from + FILES_PER_TASK, renamings.size());
+            tasks.add(pool.submit((Callable<Void>) () -> {
+                move(renamings, start, end, moved, filesDone, progress);
+                return null;
+            }));
+        }
+        pool.shutdown();
+
+        // every task has to be done before the Images are updated, so an interruption is only passed on after
+        boolean interrupted = false;
+        for (Future<?> task : tasks) {
+            while (true) {
+                try {
+                    task.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    e.printStackTrace();
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return moved;
+    }
+
+    /**
+     * Helper in move. Renames the files of a range of renamings, never replacing a file.
+     */
+    private static void move(List<Renaming> renamings, int from, int to, boolean[] moved, AtomicInteger filesDone,
+                             Progress progress) {
+        for (int i = from; i < to; i++) {
+            Renaming renaming = renamings.get(i);
+            try {
+                Files.move(renaming.source.toPath(), renaming.target.toPath());
+                moved[i] = true;
+            } catch (InvalidPathException e) {
+                // the name cannot be a path where file names are not Unicode, but the file can still be renamed
+                moved[i] = !renaming.target.exists() && renaming.source.renameTo(renaming.target);
+            } catch (IOException e) {
+                moved[i] = false;
+            }
+            progress.renamed(filesDone.incrementAndGet());
+        }
+    }
+
+    /**
+     * New name and file planned for the file of an Image.
+     */
+    private static class Renaming {
+
+        private final Image image;
+
+        private final String newName;
+
+        private final File source;
+
+        private final File target;
+
+        Renaming(Image image, String newName, File source, File target) {
+            this.image = image;
+            this.newName = newName;
+            this.source = source;
+            this.target = target;
+        }
+    }
+}
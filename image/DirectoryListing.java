@@ -0,0 +1,37 @@
+package pack.image;
+
+import java.io.File;
+import java.util.ArrayList;
+
+/**
+ * What a scan found in one directory: its subdirectories and images in listing order, and the modification time of
+ * the directory when it was listed.
+ */
+class DirectoryListing {
+
+    /**
+     * Directory listed.
+     */
+    final File directory;
+
+    /**
+     * Modification time of the directory when it was listed.
+     */
+    final long lastModified;
+
+    /**
+     * Subdirectories (as File) and images (as Image) of the directory, in listing order.
+     */
+    final ArrayList<Object> children = new ArrayList<>();
+
+    /**
+     * Constructs an empty DirectoryListing.
+     *
+     * @param directory    directory listed
+     * @param lastModified modification time of the directory when it was listed
+     */
+    DirectoryListing(File directory, long lastModified) {
+        this.directory = directory;
+        this.lastModified = lastModified;
+    }
+}
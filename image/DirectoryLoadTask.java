@@ -0,0 +1,98 @@
+package pack.image;
+
+import javafx.concurrent.Task;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Background task scanning a directory. Images are queued as soon as they are built, so the UI can show them while
+ * the scan is still running; the ordered result is the value of the task. Progress is the share of the directories
+ * found so far that have been listed. The Images are only put in their tags once the result is accepted, so a
+ * cancelled scan, or one whose result is dropped, leaves nothing to take out again.
+ */
+class DirectoryLoadTask extends Task<DirectoryScanner.ScanResult> implements DirectoryScanner.ScanMonitor {
+
+    /**
+     * Directory being scanned.
+     */
+    private final File directory;
+
+    /**
+     * Whether all images in and under the directory are scanned.
+     */
+    private final boolean recursive;
+
+    /**
+     * Watcher registering the directory, waited for before scanning it, or null.
+     */
+    private final DirectoryWatcher watcher;
+
+    /**
+     * Images built and not yet taken by the UI.
+     */
+    private final ConcurrentLinkedQueue<Image> builtImages = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Number of directories listed.
+     */
+    private final AtomicInteger listedDirectories = new AtomicInteger();
+
+    /**
+     * Number of directories found, including the scanned directory itself.
+     */
+    private final AtomicInteger foundDirectories = new AtomicInteger(1);
+
+    /**
+     * Constructs a DirectoryLoadTask. Must be called on the JavaFX thread, after ImageManager.beginScan when the
+     * current directory is scanned.
+     *
+     * @param directory directory being scanned
+     * @param recursive True to scan all images in and under the directory
+     */
+    DirectoryLoadTask(File directory, boolean recursive) {
+        this.directory = directory;
+        this.recursive = recursive;
+        watcher = ImageManager.getWatcher(directory);
+    }
+
+    @Override
+    protected DirectoryScanner.ScanResult call() {
+        // every change made from the start of the scan on is seen by the watcher and applied after it
+        if (watcher != null) {
+            watcher.awaitRegistered();
+        }
+        return ImageManager.scan(directory, recursive, this);
+    }
+
+    @Override
+    public void directoryListed(int subdirectories) {
+        int found = foundDirectories.addAndGet(subdirectories);
+        updateProgress(listedDirectories.incrementAndGet(), found);
+    }
+
+    @Override
+    public void imagesBuilt(List<Image> images) {
+        builtImages.addAll(images);
+    }
+
+    /**
+     * Takes the next image built and not yet taken.
+     *
+     * @return an Image, or null if none is waiting
+     */
+    Image pollBuiltImage() {
+        return builtImages.poll();
+    }
+
+    /**
+     * Returns the directory being scanned.
+     *
+     * @return directory being scanned
+     */
+    File getDirectory() {
+        return directory;
+    }
+}
@@ -0,0 +1,437 @@
+package pack.image;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Scans directories for images on a ForkJoinPool. Subdirectories and large runs of files are split into separate
+ * tasks, but results are always joined back in the order of the (name sorted) directory listing, so a parallel scan
+ * produces exactly the same lists as a sequential one. Directories that have not changed since they were recorded
+ * in the library catalog are taken from the catalog without listing them. The Images built are not put in the image
+ * lists of their tags; that is left to whoever accepts the result, on the thread the Images are changed on.
+ */
+class DirectoryScanner {
+
+    /**
+     * Number of consecutive files a single task builds Images for before splitting the work.
+     */
+    private static final int FILES_PER_TASK = 256;
+
+    /**
+     * Number of worker threads used for scanning.
+     */
+    private static int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Pool the scanning tasks run on, created on first use.
+     */
+    private static ForkJoinPool pool;
+
+    /**
+     * Sets the number of worker threads used for scanning. Values below 1 are ignored.
+     *
+     * @param workers number of worker threads
+     */
+    static synchronized void setParallelism(int workers) {
+        if (workers < 1 || workers == parallelism) {
+            return;
+        }
+        parallelism = workers;
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    /**
+     * Returns the number of worker threads used for scanning.
+     *
+     * @return number of worker threads
+     */
+    static synchronized int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Returns the pool scanning tasks run on, creating it if needed.
+     *
+     * @return the scanning pool
+     */
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        return pool;
+    }
+
+    /**
+     * Scans a directory.
+     *
+     * @param directory directory being scanned
+     * @param recursive True: collect the images of all descendant directories
+     *                  False: collect the images and the subdirectories of this directory only
+     * @return images and subdirectories found, in listing order
+     */
+    static ScanResult scan(File directory, boolean recursive) {
+        return scan(directory, recursive, null);
+    }
+
+    /**
+     * Scans a directory, taking the content of directories that have not changed since they were cataloged from the
+     * catalog instead of the disk.
+     *
+     * @param directory directory being scanned
+     * @param recursive True: collect the images of all descendant directories
+     *                  False: collect the images and the subdirectories of this directory only
+     * @param catalog   catalog of a previous run, may be null
+     * @return images and subdirectories found, in listing order
+     */
+    static ScanResult scan(File directory, boolean recursive, LibraryCatalog catalog) {
+        return scan(directory, recursive, catalog, ScanMonitor.NONE);
+    }
+
+    /**
+     * Scans a directory like scan(File, boolean, LibraryCatalog), reporting progress to a monitor and stopping early
+     * if the monitor cancels the scan. A cancelled scan returns what has been found so far.
+     *
+     * @param directory directory being scanned
+     * @param recursive True: collect the images of all descendant directories
+     *                  False: collect the images and the subdirectories of this directory only
+     * @param catalog   catalog of a previous run, may be null
+     * @param monitor   monitor of the scan, called from the scanning threads
+     * @return images and subdirectories found, in listing order
+     */
+    static ScanResult scan(File directory, boolean recursive, LibraryCatalog catalog, ScanMonitor monitor) {
+        return getPool().invoke(new DirectoryTask(directory, recursive, catalog, monitor));
+    }
+
+    /**
+     * Follows the progress of a scan. Its methods are called from the scanning threads.
+     */
+    interface ScanMonitor {
+
+        /**
+         * Monitor of a scan that is never cancelled and whose progress is not followed.
+         */
+        ScanMonitor NONE = new ScanMonitor() {
+        };
+
+        /**
+         * Returns whether the scan should stop.
+         *
+         * @return True to stop scanning
+         */
+        default boolean isCancelled() {
+            return false;
+        }
+
+        /**
+         * Called once every directory has been listed.
+         *
+         * @param subdirectories number of subdirectories about to be scanned because of this directory
+         */
+        default void directoryListed(int subdirectories) {
+        }
+
+        /**
+         * Called every time a run of Images has been built, in no particular order.
+         *
+         * @param images Images just built
+         */
+        default void imagesBuilt(List<Image> images) {
+        }
+    }
+
+    /**
+     * Images and subdirectories found by a scan.
+     */
+    static class ScanResult {
+
+        /**
+         * Images found, in listing order.
+         */
+        final ArrayList<Image> images = new ArrayList<>();
+
+        /**
+         * Subdirectories found, in listing order. Always empty for a recursive scan.
+         */
+        final ArrayList<File> subDirectories = new ArrayList<>();
+
+        /**
+         * Listing of every directory scanned, parents before their children.
+         */
+        final ArrayList<DirectoryListing> listings = new ArrayList<>();
+    }
+
+    /**
+     * Task scanning one directory. Runs of image files are handed to ImageTasks and subdirectories to their own
+     * DirectoryTasks, all forked at once and joined in listing order.
+     */
+    private static class DirectoryTask extends RecursiveTask<ScanResult> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final File directory;
+
+        private final boolean recursive;
+
+        private final LibraryCatalog catalog;
+
+        private final ScanMonitor monitor;
+
+        DirectoryTask(File directory, boolean recursive, LibraryCatalog catalog, ScanMonitor monitor) {
+            this.directory = directory;
+            this.recursive = recursive;
+            this.catalog = catalog;
+            this.monitor = monitor;
+        }
+
+        @Override
+        protected ScanResult compute() {
+            ScanResult result = new ScanResult();
+            if (monitor.isCancelled()) {
+                return result;
+            }
+            DirectoryListing listing = new DirectoryListing(directory, directory.lastModified());
+            result.listings.add(listing);
+
+            // Subdirectories as File and image tasks, in listing order
+            List<Object> parts = new ArrayList<>();
+            LibraryCatalog.Entry entry = catalog == null ? null : catalog.lookup(directory);
+            if (entry != null && entry.lastModified == listing.lastModified) {
+                splitCataloged(entry, parts);
+            } else {
+                splitListed(entry, parts);
+            }
+
+            // Run the tasks, then merge the results in listing order
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            int subdirectories = 0;
+            for (Object part : parts) {
+                if (part instanceof ForkJoinTask) {
+                    tasks.add((ForkJoinTask<?>) part);
+                }
+                if (part instanceof DirectoryTask) {
+                    subdirectories++;
+                }
+            }
+            monitor.directoryListed(subdirectories);
+            invokeAll(tasks);
+            for (Object part : parts) {
+                if (part instanceof File) {
+                    result.subDirectories.add((File) part);
+                    listing.children.add(part);
+                } else if (part instanceof DirectoryTask) {
+                    ScanResult subResult = ((DirectoryTask) part).join();
+                    listing.children.add(((DirectoryTask) part).directory);
+                    result.images.addAll(subResult.images);
+                    result.listings.addAll(subResult.listings);
+                } else {
+                    List<Image> images = ((ImageTask) part).join();
+                    listing.children.addAll(images);
+                    result.images.addAll(images);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Helper in compute. Splits the content of a directory that has not changed since it was cataloged.
+         *
+         * @param entry catalog record of the directory
+         * @param parts tasks and subdirectories, in listing order
+         */
+        private void splitCataloged(LibraryCatalog.Entry entry, List<Object> parts) {
+            List<LibraryCatalog.ImageRecord> run = new ArrayList<>();
+            for (Object child : entry.children) {
+                if (child instanceof String) {
+                    if (!run.isEmpty()) {
+                        parts.add(new ImageTask(directory, catalog, run.toArray(new LibraryCatalog.ImageRecord[0]), monitor));
+                        run.clear();
+                    }
+                    addDirectory(new File(directory, (String) child), parts);
+                } else {
+                    run.add((LibraryCatalog.ImageRecord) child);
+                }
+            }
+            if (!run.isEmpty()) {
+                parts.add(new ImageTask(directory, catalog, run.toArray(new LibraryCatalog.ImageRecord[0]), monitor));
+            }
+        }
+
+        /**
+         * Helper in compute. Lists a directory and splits its content. One attribute read per entry tells both
+         * whether it is a directory and its modification time. The names listed are kept for renaming.
+         *
+         * @param entry outdated catalog record of the directory, may be null
+         * @param parts tasks and subdirectories, in listing order
+         */
+        private void splitListed(LibraryCatalog.Entry entry, List<Object> parts) {
+            File[] files = directory.listFiles();
+            if (files == null) {
+                return;
+            }
+            NameRegistry.register(directory, files);
+            Arrays.sort(files);
+
+            List<File> run = new ArrayList<>();
+            List<Long> runModified = new ArrayList<>();
+            for (File file : files) {
+                if (file.isHidden()) {
+                    continue;
+                }
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                } catch (IOException e) {
+                    continue;
+                }
+                if (attributes.isDirectory()) {
+                    if (!run.isEmpty()) {
+                        parts.add(new ImageTask(run.toArray(new File[0]), toArray(runModified), entry, monitor));
+                        run.clear();
+                        runModified.clear();
+                    }
+                    addDirectory(file, parts);
+                } else {
+                    run.add(file);
+                    runModified.add(attributes.lastModifiedTime().toMillis());
+                }
+            }
+            if (!run.isEmpty()) {
+                parts.add(new ImageTask(run.toArray(new File[0]), toArray(runModified), entry, monitor));
+            }
+        }
+
+        /**
+         * Helper adding a subdirectory: scanned by its own task if recursive, as is otherwise.
+         */
+        private void addDirectory(File subdirectory, List<Object> parts) {
+            if (recursive) {
+                parts.add(new DirectoryTask(subdirectory, true, catalog, monitor));
+            } else {
+                parts.add(subdirectory);
+            }
+        }
+
+        private static long[] toArray(List<Long> values) {
+            long[] array = new long[values.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = values.get(i);
+            }
+            return array;
+        }
+    }
+
+    /**
+     * Task building Images for a run of files, splitting itself in halves when the run is long. Images come either
+     * from files on disk, or from the records of a directory that has not changed since it was cataloged.
+     */
+    private static class ImageTask extends RecursiveTask<List<Image>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final File directory;
+
+        private final File[] files;
+
+        private final long[] lastModified;
+
+        private final LibraryCatalog catalog;
+
+        private final LibraryCatalog.Entry outdatedEntry;
+
+        private final LibraryCatalog.ImageRecord[] records;
+
+        private final ScanMonitor monitor;
+
+        private final int from;
+
+        private final int to;
+
+        /**
+         * Constructs a task building Images from files on disk.
+         *
+         * @param files         files, not all of them images
+         * @param lastModified  modification time of every file
+         * @param outdatedEntry outdated catalog record of their directory to take renaming lists from, may be null
+         * @param monitor       monitor of the scan
+         */
+        ImageTask(File[] files, long[] lastModified, LibraryCatalog.Entry outdatedEntry, ScanMonitor monitor) {
+            this(null, files, lastModified, null, outdatedEntry, null, monitor, 0, files.length);
+        }
+
+        /**
+         * Constructs a task building Images from catalog records.
+         *
+         * @param directory directory of the images
+         * @param catalog   catalog of the records
+         * @param records   records of the images
+         * @param monitor   monitor of the scan
+         */
+        ImageTask(File directory, LibraryCatalog catalog, LibraryCatalog.ImageRecord[] records, ScanMonitor monitor) {
+            this(directory, null, null, catalog, null, records, monitor, 0, records.length);
+        }
+
+        private ImageTask(File directory, File[] files, long[] lastModified, LibraryCatalog catalog,
+                          LibraryCatalog.Entry outdatedEntry, LibraryCatalog.ImageRecord[] records,
+                          ScanMonitor monitor, int from, int to) {
+            this.directory = directory;
+            this.files = files;
+            this.lastModified = lastModified;
+            this.catalog = catalog;
+            this.outdatedEntry = outdatedEntry;
+            this.records = records;
+            this.monitor = monitor;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Image> compute() {
+            if (to - from > FILES_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                ImageTask first = new ImageTask(directory, files, lastModified, catalog, outdatedEntry, records,
+                        monitor, from, middle);
+                ImageTask second = new ImageTask(directory, files, lastModified, catalog, outdatedEntry, records,
+                        monitor, middle, to);
+                second.fork();
+                // the halves have been handed to the monitor already, so merge them into a new list
+                List<Image> images = new ArrayList<>(to - from);
+                images.addAll(first.compute());
+                images.addAll(second.join());
+                return images;
+            }
+            List<Image> images = new ArrayList<>(to - from);
+            if (monitor.isCancelled()) {
+                return images;
+            }
+            for (int i = from; i < to; i++) {
+                if (records != null) {
+                    images.add(catalog.toImage(directory, records[i]));
+                } else if (ImageTypeClassifier.isImage(files[i])) {
+                    Image image = new Image(files[i], false);
+                    image.setLastModified(lastModified[i]);
+                    // Keep the renaming history of images already known from the catalog
+                    if (outdatedEntry != null) {
+                        LibraryCatalog.ImageRecord record = outdatedEntry.images.get(files[i].getName());
+                        if (record != null) {
+                            image.restoreRenamingList(record.renamingList);
+                        }
+                    }
+                    images.add(image);
+                }
+            }
+            monitor.imagesBuilt(images);
+            return images;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package pack.image;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches a directory, and optionally all its descendant directories, for files being created, deleted or renamed.
+ * Events arriving close together are coalesced into one batch, which is handed to ImageManager on the given
+ * executor. A watcher may be started while its directory is being scanned, holding its batches until the result of
+ * the scan is in place, so the changes made during the scan are not lost.
+ */
+class DirectoryWatcher {
+
+    /**
+     * How long the directory has to be quiet, in milliseconds, before a batch of events is applied.
+     */
+    private static final long COALESCE_MILLIS = 250;
+
+    /**
+     * Longest time, in milliseconds, a batch keeps collecting events when the directory is never quiet.
+     */
+    private static final long MAX_BATCH_MILLIS = 1000;
+
+    /**
+     * Directory being watched.
+     */
+    private final Path root;
+
+    /**
+     * Whether descendant directories are watched too.
+     */
+    private final boolean recursive;
+
+    /**
+     * Executor the batches are applied on.
+     */
+    private final Executor executor;
+
+    /**
+     * Runs after a batch has been applied.
+     */
+    private final Runnable onChange;
+
+    /**
+     * Watch service of this watcher.
+     */
+    private WatchService watchService;
+
+    /**
+     * Released once the directories are registered, or registering them has failed.
+     */
+    private final CountDownLatch registered = new CountDownLatch(1);
+
+    /**
+     * Whether batches are held until release is called. Guarded by this watcher.
+     */
+    private boolean holding;
+
+    /**
+     * Changes held, latest change of every path in the order they happened, and whether events have been lost
+     * meanwhile. Guarded by this watcher.
+     */
+    private Map<Path, WatchEvent.Kind<?>> heldChanges = new LinkedHashMap<>();
+
+    private boolean heldRescan;
+
+    /**
+     * Constructs a DirectoryWatcher. Nothing is watched until it is started.
+     *
+     * @param directory directory being watched
+     * @param recursive True to watch all descendant directories too
+     * @param executor  executor the changes are applied on
+     * @param onChange  runs on the executor after changes have been applied
+     */
+    DirectoryWatcher(File directory, boolean recursive, Executor executor, Runnable onChange) {
+        this.root = directory.toPath().toAbsolutePath();
+        this.recursive = recursive;
+        this.executor = executor;
+        this.onChange = onChange;
+    }
+
+    /**
+     * Starts watching on a background thread.
+     *
+     * @param hold True to hold the batches until release is called
+     */
+    void start(boolean hold) {
+        holding = hold;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            e.printStackTrace();
+            registered.countDown();
+            return;
+        }
+        Thread thread = new Thread(this::watch, "directory-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Waits until the directories are registered, so every change made from then on is seen. A scan started after it
+     * returns misses nothing. Returns early, keeping the interrupt, if the waiting thread is interrupted.
+     */
+    void awaitRegistered() {
+        try {
+            registered.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Hands the batches held so far over to ImageManager as one, and every batch from then on as it comes. Must be
+     * called on the executor, once the result of scanning the directory is in place.
+     */
+    void release() {
+        // handed over while holding this watcher, so no later batch gets ahead of them
+        synchronized (this) {
+            if (!holding) {
+                return;
+            }
+            holding = false;
+            if (!heldChanges.isEmpty() || heldRescan) {
+                apply(heldChanges, heldRescan);
+            }
+            heldChanges = null;
+        }
+    }
+
+    /**
+     * Stops watching. Batches not yet applied are dropped.
+     */
+    void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Body of the watching thread: registers the directories, then collects events and hands them over in batches.
+     */
+    private void watch() {
+        try {
+            try {
+                register(root);
+            } finally {
+                registered.countDown();
+            }
+            while (true) {
+                // Wait for the first event, then keep collecting until the directory has been quiet for a while, or
+                // the batch has waited long enough
+                Map<Path, WatchEvent.Kind<?>> changes = new LinkedHashMap<>();
+                boolean overflow = collect(watchService.take(), changes);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_BATCH_MILLIS);
+                WatchKey key;
+                long left;
+                while ((left = deadline - System.nanoTime()) > 0 && (key = watchService.poll(
+                        Math.min(TimeUnit.MILLISECONDS.toNanos(COALESCE_MILLIS), left), TimeUnit.NANOSECONDS)) != null) {
+                    overflow |= collect(key, changes);
+                }
+                synchronized (this) {
+                    if (holding) {
+                        for (Map.Entry<Path, WatchEvent.Kind<?>> change : changes.entrySet()) {
+                            heldChanges.remove(change.getKey());
+                            heldChanges.put(change.getKey(), change.getValue());
+                        }
+                        heldRescan |= overflow;
+                        continue;
+                    }
+                }
+                apply(changes, overflow);
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // watching has been stopped
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Helper in watch and release. Hands a batch over to ImageManager on the executor.
+     */
+    private void apply(Map<Path, WatchEvent.Kind<?>> changes, boolean rescan) {
+        executor.execute(() -> {
+            if (ImageManager.applyChanges(this, changes, rescan)) {
+                onChange.run();
+            }
+        });
+    }
+
+    /**
+     * Helper in watch. Adds the events of a key to the pending changes, keeping only the latest event of each path.
+     * New directories are registered right away when watching recursively.
+     *
+     * @param key     key signalled by the watch service
+     * @param changes pending changes
+     * @return True if events have been lost and the directory has to be rescanned
+     */
+    private boolean collect(WatchKey key, Map<Path, WatchEvent.Kind<?>> changes) throws IOException {
+        boolean overflow = false;
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            changes.remove(path);
+            changes.put(path, event.kind());
+            if (recursive && event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                register(path);
+            }
+        }
+        key.reset();
+        return overflow;
+    }
+
+    /**
+     * Registers a directory, and all its descendant directories when watching recursively.
+     *
+     * @param directory directory being registered
+     */
+    private void register(Path directory) throws IOException {
+        if (!recursive) {
+            directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE);
+            return;
+        }
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(root) && Files.isHidden(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
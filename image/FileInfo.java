@@ -7,6 +7,8 @@ import pack.tag.Tag;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 
 /**
  * Medium class to wrap information of a file into a TreeTableView and also modify Image wrapped dynamically.
@@ -39,9 +41,9 @@ public class FileInfo {
     private Image image;
 
     /**
-     * The ArrayList of all Fileinfo.
+     * All FileInfo of images that are shown, so they can be updated and released in constant time.
      */
-    private static ArrayList<FileInfo> allImageInfo = new ArrayList<>();
+    private static LinkedHashSet<FileInfo> allImageInfo = new LinkedHashSet<>();
 
     /**
      * Constructs FileInfo from File.
@@ -84,13 +86,20 @@ public class FileInfo {
         }
     }
 
+    /**
+     * Stops updating this FileInfo, once its item has been taken out of the TreeTableView.
+     */
+    void release() {
+        allImageInfo.remove(this);
+    }
+
     /**
      * Turns tags into a string.
      *
      * @param tagList List of tags being turned into a string
      * @return Tags as string
      */
-    private String tagsToString(ArrayList<Tag> tagList) {
+    private String tagsToString(List<Tag> tagList) {
         ArrayList<String> list = new ArrayList<>();
         for (Tag tag : tagList) {
             list.add(tag.getName());
@@ -1,18 +1,35 @@
 package pack.image;
 
 import pack.ImageLogger;
+import pack.tag.OrderedIdentitySet;
 import pack.tag.Tag;
 import pack.tag.TagManager;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Class for managing a single Image and its properties, also Serializable.
  */
 public class Image implements java.io.Serializable {
 
+    /**
+     * Id of the next Image constructed.
+     */
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * Integer id of this Image, unique while the program runs. Images built by one scan get consecutive ids, so the
+     * bitmaps of tag queries stay dense.
+     */
+    private final int id = nextId.getAndIncrement();
+
     /**
      * List of all names this Image has had.
      */
@@ -33,15 +50,20 @@ public class Image implements java.io.Serializable {
      */
     private File file;
 
+    /**
+     * Modification time of the file, 0 until it is known.
+     */
+    private long lastModified;
+
     /**
      * The file extension of this Image.
      */
     private String fileExtension;
 
     /**
-     * All the tags assigned to this Image.
+     * All the tags assigned to this Image, in the order they appear in its name.
      */
-    private ArrayList<Tag> assignedTags = new ArrayList<>();
+    private OrderedIdentitySet<Tag> assignedTags = new OrderedIdentitySet<>();
 
     /**
      * Construct Image from a preexisting File.
@@ -49,10 +71,26 @@ public class Image implements java.io.Serializable {
      * @param imageFile File this Image is constructed from
      */
     public Image(File imageFile) {
+        this(imageFile, true);
+    }
+
+    /**
+     * Construct Image from a preexisting File, leaving it out of the image lists of its tags if it is built with many
+     * others, which are then attached together by attachAll.
+     *
+     * @param imageFile File this Image is constructed from
+     * @param attach    True to add it to the image lists of its tags right away
+     */
+    Image(File imageFile, boolean attach) {
         String filename = imageFile.getName();
         int indexOfFileExtension = filename.lastIndexOf(".");
         int indexOfTags = filename.indexOf(" @");
 
+        // Images found by their content may have no file extension
+        if (indexOfFileExtension < 0) {
+            indexOfFileExtension = filename.length();
+        }
+
         this.file = imageFile.getAbsoluteFile();
         this.fileExtension = filename.substring(indexOfFileExtension);
         this.name = filename.substring(0, indexOfFileExtension);    // Get its file name excluding the file extension
@@ -60,15 +98,94 @@ public class Image implements java.io.Serializable {
         // If the image file already has tags, save its original file name without the tags and assign the tags.
         if (indexOfTags > -1) {
             this.originalFilename = filename.substring(0, indexOfTags);
-            this.assignedTags = TagManager.getTagsFromFileName(filename);
-            for (Tag tag : assignedTags) {
-                tag.addImage(this);
-            }
+            this.assignedTags = new OrderedIdentitySet<>(TagManager.getTagsFromFileName(filename));
         } else { // Otherwise, its original file name is same as its current name
             this.originalFilename = this.name;
         }
 
         this.renamingList.add(this.name);
+        if (attach) {
+            attachToTags();
+        }
+    }
+
+    /**
+     * Construct Image from a preexisting File whose name has already been parsed, such as an Image from the library
+     * catalog. It is left out of the image lists of its tags, to be attached with the others of its scan by attachAll.
+     *
+     * @param imageFile        File this Image is constructed from
+     * @param lastModified     modification time of the file
+     * @param originalFilename file name without the tags
+     * @param tags             tags in the file name
+     * @param renamingList     all names this Image has had, including its current one
+     */
+    Image(File imageFile, long lastModified, String originalFilename, ArrayList<Tag> tags,
+          ArrayList<String> renamingList) {
+        String filename = imageFile.getName();
+        int indexOfFileExtension = filename.lastIndexOf(".");
+        if (indexOfFileExtension < 0) {
+            indexOfFileExtension = filename.length();
+        }
+
+        this.file = imageFile.getAbsoluteFile();
+        this.lastModified = lastModified;
+        this.fileExtension = filename.substring(indexOfFileExtension);
+        this.name = filename.substring(0, indexOfFileExtension);
+        this.originalFilename = originalFilename;
+        this.assignedTags = new OrderedIdentitySet<>(tags);
+        restoreRenamingList(renamingList);
+    }
+
+    /**
+     * Replaces the renaming list by the names this Image had in a previous run, keeping its current name.
+     *
+     * @param pastNames names this Image has had, in order
+     */
+    void restoreRenamingList(ArrayList<String> pastNames) {
+        ArrayList<String> names = new ArrayList<>(pastNames);
+        if (!names.contains(this.name)) {
+            names.add(this.name);
+        }
+        this.renamingList = names;
+    }
+
+    /**
+     * Returns the integer id of this Image.
+     *
+     * @return id of this Image
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the modification time of the file of this Image.
+     *
+     * @return modification time in milliseconds since the epoch
+     */
+    long getLastModified() {
+        if (lastModified == 0) {
+            lastModified = file.lastModified();
+        }
+        return lastModified;
+    }
+
+    /**
+     * Sets the modification time of the file of this Image, when it is known from a scan.
+     *
+     * @param lastModified modification time in milliseconds since the epoch
+     */
+    void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Returns the path of the file of this Image with its original name, which its renamings are logged under.
+     *
+     * @return path of the file without the tags
+     */
+    String getIdentity() {
+        return new File(file.getParentFile(), originalFilename + fileExtension).getPath();
     }
 
     /**
@@ -117,80 +234,166 @@ public class Image implements java.io.Serializable {
     }
 
     /**
-     * Adds a Tag to this Image.
+     * Adds a Tag to this Image. If the file cannot be renamed, the Image keeps the tags it had.
      *
      * @param tag Tag to be added
      */
     public void assignTag(Tag tag) {
+        OrderedIdentitySet<Tag> oldTags = new OrderedIdentitySet<>(assignedTags);
         //If the tag already exists, do not add duplicates
-        if (assignedTags.contains(tag)) {
+        if (!assignedTags.add(tag)) {
             return;
         }
-        assignedTags.add(tag);
         tag.addImage(this);
-        this.rename();
+        TagManager.tagAssigned(this, tag);
+        if (!this.rename()) {
+            setAssignedTags(oldTags);
+        }
     }
 
     /**
-     * Removes a Tag from this Image.
+     * Removes a Tag from this Image. If the file cannot be renamed, the Image keeps the tags it had.
      *
      * @param tag Tag to be removed
      */
     public void removeTag(Tag tag) {
-        if (this.assignedTags.contains(tag)) {
-            this.assignedTags.remove(tag);
+        OrderedIdentitySet<Tag> oldTags = new OrderedIdentitySet<>(assignedTags);
+        if (this.assignedTags.remove(tag)) {
             tag.removeImage(this);
-            this.rename();
+            TagManager.tagRemoved(this, tag);
+            if (!this.rename()) {
+                setAssignedTags(oldTags);
+            }
+        }
+    }
+
+    /**
+     * Adds this Image back to the image lists of its tags, when it is loaded again.
+     */
+    void attachToTags() {
+        for (Tag tag : assignedTags) {
+            tag.addImage(this);
         }
+        TagManager.loadImage(this);
     }
 
     /**
-     * Returns an ArrayList of all tags currently assigned to this Image.
+     * Adds many Images to the image lists of their tags at once, when they are loaded together. Each tag is updated
+     * once for all of its Images, and the Images are marked as loaded together.
+     *
+     * @param attached Images being loaded
+     */
+    static void attachAll(List<Image> attached) {
+        IdentityHashMap<Tag, ArrayList<Image>> imagesByTag = new IdentityHashMap<>();
+        for (Image image : attached) {
+            for (Tag tag : image.assignedTags) {
+                imagesByTag.computeIfAbsent(tag, key -> new ArrayList<>()).add(image);
+            }
+        }
+        for (Map.Entry<Tag, ArrayList<Image>> entry : imagesByTag.entrySet()) {
+            entry.getKey().addImages(entry.getValue());
+        }
+        TagManager.loadImages(attached);
+    }
+
+    /**
+     * Removes this Image from the image lists of its tags, when it is no longer loaded. Its own tags are kept.
+     */
+    void detachFromTags() {
+        for (Tag tag : assignedTags) {
+            tag.removeImage(this);
+        }
+        TagManager.unloadImage(this);
+    }
+
+    /**
+     * Removes many Images from the image lists of their tags at once, when they are no longer loaded. Each tag is
+     * updated once for all of its Images. Their own tags are kept.
+     *
+     * @param detached Images no longer loaded
+     */
+    static void detachAll(Collection<Image> detached) {
+        IdentityHashMap<Tag, ArrayList<Image>> imagesByTag = new IdentityHashMap<>();
+        for (Image image : detached) {
+            for (Tag tag : image.assignedTags) {
+                imagesByTag.computeIfAbsent(tag, key -> new ArrayList<>()).add(image);
+            }
+            TagManager.unloadImage(image);
+        }
+        for (Map.Entry<Tag, ArrayList<Image>> entry : imagesByTag.entrySet()) {
+            entry.getKey().removeImages(entry.getValue());
+        }
+    }
+
+    /**
+     * Returns a list of all tags currently assigned to this Image.
      *
      * @return Tags assigned to this Image
      */
-    public ArrayList<Tag> getAssignedTags() {
+    public List<Tag> getAssignedTags() {
         return assignedTags;
     }
 
     /**
      * Renames Image to take into account the new tags. Doesn't have any parameters because it builds the name based off
-     * the original filename and all the tags currently associated to this Image.
+     * the original filename and all the tags currently associated to this Image. If the name is taken, a number is
+     * added; the names of the directory are looked up in the NameRegistry rather than on the disk. The file is only
+     * changed once the renaming is done, and left as it was if it cannot be renamed.
+     *
+     * @return True if the file has the name the tags give it, False if it could not be renamed
      */
-    private void rename() {
+    boolean rename() {
         // Make name this file will have
-        StringBuilder generatedName = new StringBuilder(originalFilename);
-        for (Tag tag : assignedTags) {
-            generatedName.append(" @").append(tag.getName());
-        }
-
-        // Rename the file
-        String file_dir_pathname = file.getParentFile().getPath() + File.separator;
-        String newName = "";
-        // if the renaming isn't successful, add a number and try again
-        int tries = 0;
-        boolean renaming_is_successful = false;
-        while (!renaming_is_successful) {
-            String suffix = "";
-            if (tries > 0) {
-                suffix = "(" + Integer.toString(tries) + ")";
-            }
-            newName = generatedName.toString() + suffix;
-            File newly_named_File = new File(file_dir_pathname + newName + this.fileExtension);
-            if (!newly_named_File.exists()) {
-                renaming_is_successful = file.renameTo(newly_named_File);
-                file = newly_named_File;
-            }
-            tries++;
+        String generatedName = generateName();
+        if (generatedName.equals(name)) {
+            return true;
+        }
+
+        // Rename the file, adding a number to names that are taken
+        File newFile = NameRegistry.move(file, file.getParentFile(),
+                tries -> (tries == 0 ? generatedName : generatedName + "(" + tries + ")") + fileExtension);
+        if (newFile == null) {
+            return false;
         }
+        String newName = newFile.getName().substring(0, newFile.getName().length() - fileExtension.length());
+        file = newFile;
 
         // Keep log of change
-        try {
-            ImageLogger.log(name, newName, fileExtension);
-        } catch (IOException e) {
-            e.printStackTrace();
+        ImageLogger.log(getIdentity(), name, newName, fileExtension);
+
+        setName(newName);
+        return true;
+    }
+
+    /**
+     * Returns the name this Image should have, built from the original filename and the tags assigned to it, without
+     * the file extension.
+     *
+     * @return generated name
+     */
+    String generateName() {
+        StringBuilder generatedName = new StringBuilder(originalFilename);
+        for (Tag tag : assignedTags) {
+            generatedName.append(" @").append(TagManager.toFileName(tag.getName()));
         }
+        return generatedName.toString();
+    }
 
+    /**
+     * Records the file of this Image after it was renamed by someone else, such as a bulk renaming.
+     *
+     * @param newFile file after the renaming
+     * @param newName name of the file without the extension
+     */
+    void renamed(File newFile, String newName) {
+        file = newFile;
+        setName(newName);
+    }
+
+    /**
+     * Helper in rename and renamed. Sets the current name, adding it to the renaming list if it is new.
+     */
+    private void setName(String newName) {
         // if name previously existed, don't add to renamingList
         name = newName;
         for (String pastName : renamingList) {
@@ -201,6 +404,69 @@ public class Image implements java.io.Serializable {
         this.renamingList.add(name);
     }
 
+    /**
+     * Replaces some tags of this Image by others, keeping their place among its tags, without renaming the file. Tags
+     * whose replacement is null are removed, and a replacement the Image already has is not added twice.
+     *
+     * @param replacements replacement of every tag being replaced, or null
+     * @return True if any of the tags of this Image was replaced
+     */
+    boolean replaceTags(Map<Tag, Tag> replacements) {
+        OrderedIdentitySet<Tag> newTags = new OrderedIdentitySet<>();
+        boolean replaced = false;
+        for (Tag tag : assignedTags) {
+            if (replacements.containsKey(tag)) {
+                replaced = true;
+                Tag replacement = replacements.get(tag);
+                if (replacement != null) {
+                    newTags.add(replacement);
+                }
+            } else {
+                newTags.add(tag);
+            }
+        }
+        if (replaced) {
+            setAssignedTags(newTags);
+        }
+        return replaced;
+    }
+
+    /**
+     * Makes the tags of this Image the given ones, in their order, without renaming the file.
+     *
+     * @param tags tags this Image is to have
+     * @return True if the tags of this Image changed
+     */
+    boolean setTags(List<Tag> tags) {
+        OrderedIdentitySet<Tag> newTags = new OrderedIdentitySet<>(tags);
+        if (newTags.equals(assignedTags)) {
+            return false;
+        }
+        setAssignedTags(newTags);
+        return true;
+    }
+
+    /**
+     * Helper in revert, replaceTags and setTags. Makes the tags of this Image the given ones, updating the image lists of
+     * the tags that are removed and added.
+     */
+    private void setAssignedTags(OrderedIdentitySet<Tag> newTags) {
+        for (Tag tag : new ArrayList<>(assignedTags)) {
+            if (!newTags.contains(tag)) {
+                assignedTags.remove(tag);
+                tag.removeImage(this);
+                TagManager.tagRemoved(this, tag);
+            }
+        }
+        for (Tag tag : newTags) {
+            if (assignedTags.add(tag)) {
+                tag.addImage(this);
+                TagManager.tagAssigned(this, tag);
+            }
+        }
+        assignedTags = newTags;
+    }
+
     /**
      * Returns all the names this Image has ever had, including its original name, but excluding multiple uses of the
      * same name.
@@ -211,6 +477,24 @@ public class Image implements java.io.Serializable {
         return renamingList;
     }
 
+    /**
+     * Returns all the names this Image has had, from the rename journal, which keeps them between runs, and from
+     * this run. They all become names this Image can be reverted to.
+     *
+     * @return This Image's list of all name changes, oldest first
+     */
+    public ArrayList<String> getNameHistory() {
+        LinkedHashSet<String> names = new LinkedHashSet<>();
+        for (String pastName : ImageLogger.getNameHistory(getIdentity())) {
+            if (pastName.endsWith(fileExtension)) {
+                names.add(pastName.substring(0, pastName.length() - fileExtension.length()));
+            }
+        }
+        names.addAll(renamingList);
+        restoreRenamingList(new ArrayList<>(names));
+        return renamingList;
+    }
+
     /**
      * Reverts the name of this Image to a previous name from the renaming list.
      *
@@ -222,23 +506,17 @@ public class Image implements java.io.Serializable {
             return;
         }
 
+        OrderedIdentitySet<Tag> currentTags = new OrderedIdentitySet<>(assignedTags);
         String[] oldTags = oldName.substring(this.originalFilename.length()).split(" @");
-        ArrayList<Tag> newTags = new ArrayList<>();
+        OrderedIdentitySet<Tag> newTags = new OrderedIdentitySet<>();
 
         // Ensures tags get updated without making new ones
         for (int i = 1; i < oldTags.length; i++) {
-            Tag tag = TagManager.getTag(oldTags[i]);
-            newTags.add(tag);
-            if (!assignedTags.contains(tag)) {
-                tag.getImages().add(this);
-            }
+            newTags.add(TagManager.getTag(TagManager.fromFileName(oldTags[i])));
         }
-        for (Tag tag : assignedTags) {
-            if (!newTags.contains(tag)) {
-                tag.getImages().remove(this);
-            }
+        setAssignedTags(newTags);
+        if (!this.rename()) {
+            setAssignedTags(currentTags);
         }
-        assignedTags = newTags;
-        this.rename();
     }
 }
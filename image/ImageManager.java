@@ -1,11 +1,26 @@
 package pack.image;
 
+import pack.tag.OrderedIdentitySet;
 import pack.tag.Tag;
 import pack.tag.TagManager;
 
-import javax.activation.MimetypesFileTypeMap;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
 
 /**
  * Class for managing Images.
@@ -34,9 +49,65 @@ public class ImageManager {
      */
     private static boolean viewAllImages = false;
 
+    /**
+     * Whether the images and directories of the current directory are shown as a grid of thumbnails.
+     */
+    private static boolean viewGrid = false;
+
+    /**
+     * Watches the current directory for changes, null if changes are not watched.
+     */
+    private static DirectoryWatcher watcher;
+
+    /**
+     * Whether the directory is being scanned, so its watcher holds the changes it sees until finishScan.
+     */
+    private static boolean scanning;
+
+    /**
+     * Executor changes to the current directory are applied on, null if changes are not watched.
+     */
+    private static Executor watchExecutor;
+
+    /**
+     * Runs after changes to the current directory have been applied.
+     */
+    private static Runnable watchListener;
 
     /**
-     * Sets ImageManager with configuration file.
+     * Scans a directory in the background for the watcher, null if changes are not watched.
+     */
+    private static Consumer<File> watchScanner;
+
+    /**
+     * Catalog file of the library, null if no catalog is kept.
+     */
+    private static File catalogFile;
+
+    /**
+     * Catalog read at startup, null if there was none.
+     */
+    private static LibraryCatalog catalog;
+
+    /**
+     * Listings of the directories found by the last scan.
+     */
+    private static ArrayList<DirectoryListing> listings = new ArrayList<>();
+
+    /**
+     * Moves planned and not yet finished. The watcher ignores changes to their files, which would otherwise replace
+     * the Images being moved by new ones before they are handed their new files.
+     */
+    private static ArrayList<BulkMover> movers = new ArrayList<>();
+
+    /**
+     * Renamings planned and not yet finished, whose files the watcher ignores likewise.
+     */
+    private static ArrayList<BulkRenamer> renamers = new ArrayList<>();
+
+
+    /**
+     * Sets ImageManager with configuration file. The directory is scanned when the UI loads it.
      *
      * @param directoryPathname Path currently being used by this ImageManager
      */
@@ -44,10 +115,9 @@ public class ImageManager {
         if (directoryPathname != null) {
             File newDir = new File(directoryPathname);
             if (newDir.isDirectory()) {
-                directory = newDir;
+                directory = newDir.getAbsoluteFile();
             }
         }
-        setDirectory(directory);
     }
 
     /**
@@ -59,6 +129,87 @@ public class ImageManager {
         return getDirectory().getPath();
     }
 
+    /**
+     * Opens the library catalog, so directories that have not changed since the last run are not scanned again. Must
+     * be called before the directory is configured.
+     *
+     * @param catalogPathname path of the catalog file
+     */
+    public static void configureCatalog(String catalogPathname) {
+        catalogFile = new File(catalogPathname);
+        catalog = LibraryCatalog.open(catalogFile);
+    }
+
+    /**
+     * Saves the directories of the last scan, and the current state of their images, to the library catalog.
+     */
+    public static void saveCatalog() {
+        if (catalogFile == null || directory == null) {
+            return;
+        }
+        try {
+            LibraryCatalog.save(catalogFile, catalog, listings, directory, viewAllImages, images);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Sets the number of threads used to scan directories.
+     *
+     * @param scanThreads number of threads as a String, ignored if it is not a positive number
+     */
+    public static void configureScanThreads(String scanThreads) {
+        if (scanThreads != null) {
+            try {
+                DirectoryScanner.setParallelism(Integer.parseInt(scanThreads.trim()));
+            } catch (NumberFormatException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of threads used to scan directories.
+     *
+     * @return number of scanning threads as a String
+     */
+    public static String getConfigScanThreads() {
+        return Integer.toString(DirectoryScanner.getParallelism());
+    }
+
+    /**
+     * Sets whether files without an image file extension are checked by their content.
+     *
+     * @param sniffImageTypes "true" to check the first bytes of files without an image file extension
+     */
+    public static void configureImageTypeSniffing(String sniffImageTypes) {
+        if (sniffImageTypes != null) {
+            ImageTypeClassifier.setSniffing(Boolean.parseBoolean(sniffImageTypes.trim()));
+        }
+    }
+
+    /**
+     * Gets whether files without an image file extension are checked by their content.
+     *
+     * @return "true" if file contents are checked, "false" otherwise
+     */
+    public static String getConfigImageTypeSniffing() {
+        return Boolean.toString(ImageTypeClassifier.isSniffing());
+    }
+
+    /**
+     * Sets the view mode from the configuration file, without scanning. Must be called before the directory is
+     * configured.
+     *
+     * @param viewMode "viewAll" to show all images, "viewGrid" to show thumbnails, anything else to show images in
+     *                 tree structure
+     */
+    public static void configureViewMode(String viewMode) {
+        viewAllImages = "viewAll".equals(viewMode);
+        viewGrid = "viewGrid".equals(viewMode);
+    }
+
     /**
      * Get the view mode.
      *
@@ -68,12 +219,15 @@ public class ImageManager {
         if (viewAllImages) {
             return "viewAll";
         }
+        if (viewGrid) {
+            return "viewGrid";
+        }
         return "viewTree";
     }
 
 
     /**
-     * Sets the view mode depending on the user input.
+     * Sets the view mode depending on the user input. The directory has to be loaded again for it to take effect.
      *
      * @param showAllImages the user input
      *                      True - show all images
@@ -81,7 +235,38 @@ public class ImageManager {
      */
     static void setViewAllImages(boolean showAllImages) {
         viewAllImages = showAllImages;
-        setDirectory(directory);
+        viewGrid = false;
+    }
+
+    /**
+     * Returns whether all images in and under the directory are shown.
+     *
+     * @return True if all images are shown, False if images are shown in tree structure
+     */
+    static boolean isViewAllImages() {
+        return viewAllImages;
+    }
+
+    /**
+     * Sets whether the images and directories of the current directory are shown as a grid of thumbnails. The grid
+     * shows the current directory only, like the tree structure.
+     *
+     * @param showGrid True to show a grid of thumbnails
+     */
+    static void setViewGrid(boolean showGrid) {
+        viewGrid = showGrid;
+        if (showGrid) {
+            viewAllImages = false;
+        }
+    }
+
+    /**
+     * Returns whether the images and directories of the current directory are shown as a grid of thumbnails.
+     *
+     * @return True if thumbnails are shown
+     */
+    static boolean isViewGrid() {
+        return viewGrid;
     }
 
     /**
@@ -90,75 +275,418 @@ public class ImageManager {
      * @param file New directory to be set to
      */
     static void setDirectory(File file) {
+        if (beginScan(file)) {
+            if (watcher != null) {
+                watcher.awaitRegistered();
+            }
+            finishScan(scan(directory, viewAllImages, DirectoryScanner.ScanMonitor.NONE));
+        }
+    }
+
+    /**
+     * First step of setting the directory: resets this ImageManager and sets the new directory. The directory is then
+     * scanned, possibly on another thread, and the result handed to finishScan. It is watched from now on, so changes
+     * made during the scan are applied after it; the scan waits for the watcher to be registered first.
+     *
+     * @param file New directory to be set to
+     * @return True if the directory is valid and has to be scanned
+     */
+    static boolean beginScan(File file) {
         if (file != null && file.isDirectory()) {
-            // reset this ImageManager
+            // keep what is shown in the cache, then reset this ImageManager
+            cacheContent();
             resetContent();
             TagManager.resetImagesFromTags();
-            // update the images
-            directory = file;
-            updateImageManager(directory);
-        } else {
-            directory = null;
+            directory = file.getAbsoluteFile();
+            if (isParentOfRoot()) {
+                viewAllImages = false;
+            }
+            // changes seen during the scan are held until it is done
+            scanning = true;
+            restartWatcher();
+            return true;
         }
+        directory = null;
+        return false;
     }
 
     /**
-     * Resets the list of images and directories.
+     * Returns the cached result of scanning the directory set by beginScan, to be handed to finishScan instead of
+     * scanning the directory again.
+     *
+     * @return the cached result, or null if the directory has to be scanned
      */
-    private static void resetContent() {
-        subDirectories.clear();
-        images.clear();
+    static DirectoryScanner.ScanResult cachedScan() {
+        return ScanCache.take(directory, viewAllImages);
     }
 
     /**
-     * Returns the directory that is currently in use by this ImageManager.
+     * Returns the watcher of a directory being scanned, which the scan has to wait for, so no change made during the
+     * scan is missed.
      *
-     * @return directory currently in use as a file
+     * @param scannedDirectory directory being scanned
+     * @return the watcher registering the directory, null if it is not the current directory or is not watched
      */
-    static File getDirectory() {
-        return directory;
+    static DirectoryWatcher getWatcher(File scannedDirectory) {
+        return watcher != null && scannedDirectory.equals(directory) ? watcher : null;
     }
 
     /**
-     * Returns all sub directories below the current directory.
+     * Helper in beginScan. Puts the images and subdirectories currently shown in the cache of scan results.
+     */
+    private static void cacheContent() {
+        if (directory == null || listings.isEmpty()) {
+            return;
+        }
+        DirectoryScanner.ScanResult result = new DirectoryScanner.ScanResult();
+        result.images.addAll(images);
+        result.subDirectories.addAll(subDirectories);
+        result.listings.addAll(listings);
+        ScanCache.put(directory, viewAllImages, result, watcher != null);
+    }
+
+    /**
+     * Sets the limits of the cache of scan results.
      *
-     * @return ArrayList of the subdirectories below the current root directory
+     * @param entries   maximum number of cached directories as a String
+     * @param megabytes maximum memory used by the cache, in megabytes, as a String
      */
-    static ArrayList<File> getSubDirectories() {
-        return subDirectories;
+    public static void configureScanCache(String entries, String megabytes) {
+        try {
+            ScanCache.configure(entries == null ? -1 : Integer.parseInt(entries.trim()),
+                    megabytes == null ? -1 : Integer.parseInt(megabytes.trim()));
+        } catch (NumberFormatException e) {
+            e.printStackTrace();
+        }
     }
 
     /**
-     * Updates this ImageManager by the given directory.
-     * If the view mode is set to show all images in and under the directory, it runs recursively to add all images
-     * in an under the directory (including the subdirectories).
+     * Gets the maximum number of cached directories.
      *
-     * @param directory Directory that this ImageManager is being updating to
+     * @return maximum number of cached directories as a String
      */
-    private static void updateImageManager(File directory) {
-        // check directory is not null
-        if (directory == null || !directory.isDirectory()) {
-            return;
+    public static String getConfigScanCacheEntries() {
+        return Integer.toString(ScanCache.getMaxEntries());
+    }
+
+    /**
+     * Gets the maximum memory used by the cache of scan results.
+     *
+     * @return maximum memory in megabytes as a String
+     */
+    public static String getConfigScanCacheMegabytes() {
+        return Integer.toString(ScanCache.getMaxMegabytes());
+    }
+
+    /**
+     * Sets where thumbnails are stored and how much memory and disk space they may use.
+     *
+     * @param thumbnailPathname directory of the stored thumbnails
+     * @param memoryMegabytes   maximum memory used by cached thumbnails, in megabytes, as a String
+     * @param diskMegabytes     maximum disk space used by stored thumbnails, in megabytes, as a String
+     */
+    public static void configureThumbnails(String thumbnailPathname, String memoryMegabytes, String diskMegabytes) {
+        try {
+            ThumbnailService.configure(new File(thumbnailPathname),
+                    memoryMegabytes == null ? -1 : Integer.parseInt(memoryMegabytes.trim()),
+                    diskMegabytes == null ? -1 : Integer.parseInt(diskMegabytes.trim()));
+        } catch (NumberFormatException e) {
+            e.printStackTrace();
         }
-        if (isParentOfRoot()) {
-            ImageManager.viewAllImages = false;
+    }
+
+    /**
+     * Gets the maximum memory used by cached thumbnails.
+     *
+     * @return maximum memory in megabytes as a String
+     */
+    public static String getConfigThumbnailMemoryMegabytes() {
+        return Integer.toString(ThumbnailService.getMaxMemoryMegabytes());
+    }
+
+    /**
+     * Gets the maximum disk space used by stored thumbnails.
+     *
+     * @return maximum disk space in megabytes as a String
+     */
+    public static String getConfigThumbnailDiskMegabytes() {
+        return Integer.toString(ThumbnailService.getMaxDiskMegabytes());
+    }
+
+    /**
+     * Scans a directory. Does not change this ImageManager, so it can run on any thread.
+     * If the view mode is set to show all images in and under the directory, it scans all images in and under the
+     * directory (including the subdirectories) in parallel.
+     *
+     * @param directory Directory being scanned
+     * @param recursive True to scan all images in and under the directory
+     * @param monitor   monitor of the scan
+     * @return images and subdirectories found
+     */
+    static DirectoryScanner.ScanResult scan(File directory, boolean recursive,
+                                            DirectoryScanner.ScanMonitor monitor) {
+        return DirectoryScanner.scan(directory, recursive, catalog, monitor);
+    }
+
+    /**
+     * Last step of setting the directory: updates this ImageManager with the result of scanning it, and puts its
+     * images in the image lists of their tags, all at once. The changes the watcher has seen meanwhile are applied
+     * next.
+     *
+     * @param result result of scanning the directory set by beginScan
+     */
+    static void finishScan(DirectoryScanner.ScanResult result) {
+        subDirectories.addAll(result.subDirectories);
+        images.addAll(result.images);
+        Image.attachAll(result.images);
+        listings.addAll(result.listings);
+        scanning = false;
+        if (watcher != null) {
+            watcher.release();
         }
+    }
 
-        for (File file : directory.listFiles()) {
-            if (file.isHidden()) {
+    /**
+     * Keeps this ImageManager up to date with the files on disk: creations, deletions and renames in the current
+     * directory (and in all its descendants when showing all images) are applied as they happen, without rescanning.
+     *
+     * Scanning is never done on the executor: a directory created under the current one while showing all images,
+     * or the current one when changes have been lost, is handed to onScan to be scanned in the background. The
+     * images of a created directory are then handed to addScannedImages; the current directory is loaded again.
+     *
+     * @param executor executor the changes are applied on, usually the UI thread
+     * @param onChange runs on the executor after changes have been applied
+     * @param onScan   runs on the executor with every directory that has to be scanned
+     */
+    static void watchDirectory(Executor executor, Runnable onChange, Consumer<File> onScan) {
+        watchExecutor = executor;
+        watchListener = onChange;
+        watchScanner = onScan;
+        restartWatcher();
+    }
+
+    /**
+     * Stops keeping this ImageManager up to date with the files on disk.
+     */
+    static void stopWatching() {
+        watchExecutor = null;
+        watchListener = null;
+        watchScanner = null;
+        restartWatcher();
+    }
+
+    /**
+     * Stops watching the previous directory and, if changes are watched, starts watching the current one.
+     */
+    private static void restartWatcher() {
+        if (watcher != null) {
+            watcher.stop();
+            watcher = null;
+        }
+        if (watchExecutor != null && directory != null) {
+            watcher = new DirectoryWatcher(directory, viewAllImages && !isParentOfRoot(), watchExecutor,
+                    watchListener);
+            watcher.start(scanning);
+        }
+    }
+
+    /**
+     * Applies a batch of changes seen by a DirectoryWatcher to the images and subdirectories. Created and deleted
+     * files only add or remove their own Image, a renamed file is a deletion followed by a creation. Renames done by
+     * this program are ignored since their Image already has the new file, and so are changes to files being moved or
+     * renamed in the background.
+     *
+     * @param source  watcher that saw the changes
+     * @param changes latest change of every path, in the order they happened
+     * @param rescan  True if changes have been lost and the directory has to be scanned again
+     * @return True if anything changed
+     */
+    static boolean applyChanges(DirectoryWatcher source, Map<Path, WatchEvent.Kind<?>> changes, boolean rescan) {
+        // Ignore batches of a directory that is no longer shown
+        if (source != watcher) {
+            return false;
+        }
+        if (rescan) {
+            // what is shown is outdated, so it is neither cached nor watched until it has been loaded again
+            listings.clear();
+            watcher.stop();
+            watcher = null;
+            watchScanner.accept(directory);
+            return false;
+        }
+
+        HashMap<File, Image> loadedImages = new HashMap<>();
+        for (Image image : images) {
+            loadedImages.put(image.getFile(), image);
+        }
+        HashSet<Image> removedImages = new HashSet<>();
+        HashSet<File> removedPaths = new HashSet<>();
+        HashSet<File> changedDirectories = new HashSet<>();
+        boolean changed = false;
+
+        for (Map.Entry<Path, WatchEvent.Kind<?>> change : changes.entrySet()) {
+            File file = change.getKey().toFile();
+            changedDirectories.add(file.getParentFile());
+            if (isBeingChanged(file)) {
                 continue;
             }
-            if (file.isDirectory()) {
-                if (viewAllImages) {
-                    updateImageManager(file);
-                } else {
-                    subDirectories.add(file);
+            if (change.getValue() == ENTRY_DELETE) {
+                NameRegistry.forget(file);
+                Image image = loadedImages.remove(file);
+                if (image != null) {
+                    removedImages.add(image);
+                } else if (subDirectories.remove(file)) {
+                    changed = true;
+                } else if (viewAllImages) {
+                    // may have been a directory with images under it
+                    removedPaths.add(file);
+                }
+            } else if (change.getValue() == ENTRY_CREATE && file.exists() && !file.isHidden()) {
+                NameRegistry.register(file);
+                if (file.isDirectory()) {
+                    if (viewAllImages) {
+                        // its images are added once scanned
+                        watchScanner.accept(file);
+                    } else if (!subDirectories.contains(file)) {
+                        subDirectories.add(file);
+                        changed = true;
+                    }
+                } else if (!loadedImages.containsKey(file) && ImageTypeClassifier.isImage(file)) {
+                    Image image = new Image(file);
+                    loadedImages.put(file, image);
+                    images.add(image);
+                    changed = true;
+                }
+            }
+        }
+
+        // Cached results of these directories are outdated
+        ScanCache.invalidate(changedDirectories);
+
+        // A deleted directory takes all the images under it along
+        if (!removedPaths.isEmpty()) {
+            for (Image image : images) {
+                for (File parent = image.getFile().getParentFile(); parent != null && !parent.equals(directory);
+                     parent = parent.getParentFile()) {
+                    if (removedPaths.contains(parent)) {
+                        removedImages.add(image);
+                        break;
+                    }
                 }
-            } else if (isImage(file)) {
-                Image image = new Image(file);
+            }
+        }
+        if (!removedImages.isEmpty()) {
+            images.removeIf(removedImages::contains);
+            for (Image image : removedImages) {
+                image.detachFromTags();
+            }
+        }
+        return changed || !removedImages.isEmpty();
+    }
+
+    /**
+     * Helper in applyChanges. Returns whether a file is being moved or renamed by a move or renaming not yet finished.
+     */
+    private static boolean isBeingChanged(File file) {
+        for (BulkMover mover : movers) {
+            if (mover.involves(file)) {
+                return true;
+            }
+        }
+        for (BulkRenamer renamer : renamers) {
+            if (renamer.involves(file)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Has the watcher ignore the files of a renaming from when it is planned.
+     *
+     * @param renamer renaming planned
+     */
+    static void renamePlanned(BulkRenamer renamer) {
+        renamers.add(renamer);
+    }
+
+    /**
+     * Has the watcher see the files of a renaming again once it is finished.
+     *
+     * @param renamer renaming finished
+     */
+    static void renameFinished(BulkRenamer renamer) {
+        renamers.remove(renamer);
+    }
+
+    /**
+     * Adds the images found by scanning a directory created under the current one, leaving out those already shown.
+     * The images are dropped if the current directory is no longer watched showing all images under it.
+     *
+     * @param scannedDirectory directory handed to onScan by watchDirectory
+     * @param result           result of scanning it recursively
+     * @return True if any image was added
+     */
+    static boolean addScannedImages(File scannedDirectory, DirectoryScanner.ScanResult result) {
+        ArrayList<Image> added = new ArrayList<>();
+        boolean shown = watcher != null && viewAllImages && isUnderDirectory(scannedDirectory);
+        HashSet<File> loadedFiles = new HashSet<>();
+        if (shown) {
+            for (Image image : images) {
+                loadedFiles.add(image.getFile());
+            }
+        }
+        boolean changed = false;
+        for (Image image : result.images) {
+            if (shown && loadedFiles.add(image.getFile()) && image.getFile().exists()) {
                 images.add(image);
+                added.add(image);
+                changed = true;
+            }
+        }
+        // only the images shown are put in their tags
+        Image.attachAll(added);
+        return changed;
+    }
+
+    /**
+     * Helper in addScannedImages. Returns True if a file is under the current directory.
+     */
+    private static boolean isUnderDirectory(File file) {
+        for (File parent = file.getParentFile(); parent != null; parent = parent.getParentFile()) {
+            if (parent.equals(directory)) {
+                return true;
             }
         }
+        return false;
+    }
+
+    /**
+     * Resets the list of images and directories.
+     */
+    private static void resetContent() {
+        subDirectories.clear();
+        images.clear();
+        listings.clear();
+        NameRegistry.clear();
+    }
+
+    /**
+     * Returns the directory that is currently in use by this ImageManager.
+     *
+     * @return directory currently in use as a file
+     */
+    static File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns all sub directories below the current directory.
+     *
+     * @return ArrayList of the subdirectories below the current root directory
+     */
+    static ArrayList<File> getSubDirectories() {
+        return subDirectories;
     }
 
     /**
@@ -180,69 +708,72 @@ public class ImageManager {
     }
 
     /**
-     * Helper in updateImageManager. Checks if this file is an Image. Note that it use a predefined class
-     * in javax because the method in Files has some problem.
+     * Moves an Image to target place. If the new directory has a file with the same name, a number is added to the
+     * moved file name.
      *
-     * @param file File being checked
+     * @param image        Image being moved
+     * @param newDirectory Directory Image is being moved to
      */
-    private static boolean isImage(File file) {
-        MimetypesFileTypeMap map = new MimetypesFileTypeMap();
-        map.addMimeTypes("image png tif jpg jpeg bmp");
-        String type = map.getContentType(file);
-        return type.split("/")[0].equals("image");
+    static void moveImage(Image image, File newDirectory) {
+        moveImages(Collections.singletonList(image), newDirectory, BulkMover.Progress.NONE);
     }
 
-
     /**
-     * Moves an Image to target place.
+     * Moves many Images to target place at once, renaming their files within a file system and copying them across
+     * file systems, on a pool of threads. The images and the image lists of tags are updated once for all of them.
      *
-     * @param image        Image being moved
-     * @param newDirectory Directory Image is being moved to
+     * @param movedImages  Images being moved
+     * @param newDirectory Directory the Images are being moved to
+     * @param progress     follows the files as they are moved, called from the moving threads
+     * @return number of files moved and failures, bytes moved and how long it took
      */
-    static void moveImage(Image image, File newDirectory) {
-        String newDirectoryPath = newDirectory.getPath() + File.separator;
+    static MoveReport moveImages(List<Image> movedImages, File newDirectory, BulkMover.Progress progress) {
+        BulkMover mover = planMove(movedImages, newDirectory);
+        mover.run(progress);
+        return finishMove(mover, newDirectory);
+    }
 
-        // If the image is moved to the same directory, do not move the image
-        if (newDirectoryPath.equals(directory.getPath())) {
-            return;
-        }
+    /**
+     * Plans moving Images to target place, claiming the new names of their files. Until the move is finished, the
+     * watcher ignores changes to the files, so the files may be moved in the background meanwhile.
+     *
+     * @param movedImages  Images being moved
+     * @param newDirectory Directory the Images are being moved to
+     * @return mover to run, then to be handed to finishMove
+     */
+    static BulkMover planMove(List<Image> movedImages, File newDirectory) {
+        BulkMover mover = new BulkMover(movedImages, newDirectory);
+        movers.add(mover);
+        return mover;
+    }
 
-        //Otherwise, move the image
-        String tagsAndExtensions = image.getFileExtension();
-        int indexOfTag = image.getName().indexOf("@");
-        if (indexOfTag > 0) {
-            tagsAndExtensions = image.getName().substring(indexOfTag) + tagsAndExtensions;
-        }
-        File newFile = new File(newDirectoryPath + image.getName() + tagsAndExtensions);
-        //Check if the new location already has a file with the same name
-        //  If the new directory has a file with the same name, modify the moved file name by adding numbers
-        int tries = 0;
-        while (newFile.exists()) {
-            tries += 1;
-            String newFileNameWithoutTags = image.getNameWithoutTags() + " (" + tries + ") " + tagsAndExtensions;
-            newFile = new File(newDirectoryPath + newFileNameWithoutTags);
-        }
-
-        //Move the file
-        if (image.getFile().renameTo(newFile)) {
-            boolean isStillInDirectory = false;
-            // If the view mode is to show all images in the directory and the subdirectories, check if the image should
-            // still be shown because it moved to its descendant directory.
-            if (viewAllImages) {
-                isStillInDirectory = newDirectoryPath.startsWith(directory.getPath());
-            }
-            // If it is still in the same directory, update the file to the moved file.
-            if (isStillInDirectory) {
-                image.setFile(newFile);
-            } else {
-                // Otherwise, remove the image from the program system.
-                images.remove(image);
-                for (Tag tag : image.getAssignedTags()) {
-                    tag.removeImage(image);
-                }
+    /**
+     * Last step of moving Images planned by planMove once their files have been moved: Images that are no longer in the directory
+     * shown are removed from this ImageManager and from the image lists of their tags, all at once.
+     *
+     * @param mover        mover that has moved the files
+     * @param newDirectory Directory the Images were moved to
+     * @return number of files moved and failures, bytes moved and how long it took
+     */
+    static MoveReport finishMove(BulkMover mover, File newDirectory) {
+        // If the view mode is to show all images in the directory and the subdirectories, the images are still shown
+        // if they moved to a descendant directory.
+        boolean isStillInDirectory = viewAllImages
+                && (newDirectory.getPath() + File.separator).startsWith(directory.getPath());
+        Set<Image> removedImages = Collections.newSetFromMap(new IdentityHashMap<>());
+        MoveReport report = mover.finish((image, newFile) -> {
+            image.setFile(newFile);
+            if (!isStillInDirectory) {
+                removedImages.add(image);
             }
+        });
+        if (!removedImages.isEmpty()) {
+            images.removeIf(removedImages::contains);
+            Image.detachAll(removedImages);
         }
-
+        // changes seen from now on find the Images with their new files already
+        movers.remove(mover);
+        return report;
     }
 
     /**
@@ -269,10 +800,122 @@ public class ImageManager {
      * @param tag the deleted tag to be removed
      */
     public static void removeTagFromAllImages(Tag tag) {
-        // A shallow copy of the image ArrayList is prepared since this list is modified during the loop.
-        ArrayList<Image> assignedImages = (ArrayList<Image>) tag.getImages().clone();
+        replaceTags(Collections.singletonMap(tag, null));
+    }
+
+    /**
+     * Replaces tags by others on all images, renaming all their files at once. Tags replaced by null are removed, as
+     * when tags are deleted.
+     *
+     * @param replacements replacement of every tag being replaced, or null
+     * @return number of files renamed
+     */
+    public static int replaceTags(Map<Tag, Tag> replacements) {
+        BulkRenamer renamer = planReplaceTags(replacements);
+        renamer.run(BulkRenamer.Progress.NONE);
+        return renamer.finish().getRenamed();
+    }
+
+    /**
+     * First step of replacing tags by others on all images: changes the tags of the images and plans renaming their
+     * files, which are renamed by running the BulkRenamer returned, possibly in the background, then finishing it.
+     * Tags replaced by null are removed, as when tags are deleted.
+     *
+     * @param replacements replacement of every tag being replaced, or null
+     * @return renamer of the files of the images whose tags changed
+     */
+    public static BulkRenamer planReplaceTags(Map<Tag, Tag> replacements) {
+        // Cached images may still have the replaced tags
+        ScanCache.clear();
+        OrderedIdentitySet<Image> assignedImages = new OrderedIdentitySet<>();
+        for (Tag tag : replacements.keySet()) {
+            assignedImages.addAll(tag.getImages());
+        }
+        ArrayList<Image> changedImages = new ArrayList<>(assignedImages.size());
         for (Image image : assignedImages) {
-            image.removeTag(tag);
+            if (image.replaceTags(replacements)) {
+                changedImages.add(image);
+            }
+        }
+        return new BulkRenamer(changedImages);
+    }
+
+    /**
+     * Adds a tag to many images, renaming all their files at once. Either every file is renamed or, if any cannot be,
+     * none is and the images keep their tags.
+     *
+     * @param selectedImages images the tag is added to
+     * @param tag            tag to be added
+     * @return number of files renamed and failures, and how long it took
+     */
+    public static RenameReport assignTagToImages(List<Image> selectedImages, Tag tag) {
+        BulkRenamer renamer = planAssignTagToImages(selectedImages, tag);
+        renamer.run(BulkRenamer.Progress.NONE);
+        return renamer.finish();
+    }
+
+    /**
+     * Removes a tag from many images, renaming all their files at once. Either every file is renamed or, if any
+     * cannot be, none is and the images keep their tags.
+     *
+     * @param selectedImages images the tag is removed from
+     * @param tag            tag to be removed
+     * @return number of files renamed and failures, and how long it took
+     */
+    public static RenameReport removeTagFromImages(List<Image> selectedImages, Tag tag) {
+        BulkRenamer renamer = planRemoveTagFromImages(selectedImages, tag);
+        renamer.run(BulkRenamer.Progress.NONE);
+        return renamer.finish();
+    }
+
+    /**
+     * First step of adding a tag to many images: adds the tag and plans renaming their files, which are renamed by
+     * running the BulkRenamer returned, possibly in the background, then finishing it. Either every file is renamed
+     * or, if any cannot be, none is and the images are given back their tags when finishing.
+     *
+     * @param selectedImages images the tag is added to
+     * @param tag            tag to be added
+     * @return renamer of the files of the images whose tags changed
+     */
+    static BulkRenamer planAssignTagToImages(List<Image> selectedImages, Tag tag) {
+        return planChangeTags(selectedImages, tags -> {
+            if (!tags.contains(tag)) {
+                tags.add(tag);
+            }
+        });
+    }
+
+    /**
+     * First step of removing a tag from many images: removes the tag and plans renaming their files, which are
+     * renamed by running the BulkRenamer returned, possibly in the background, then finishing it. Either every file
+     * is renamed or, if any cannot be, none is and the images are given back their tags when finishing.
+     *
+     * @param selectedImages images the tag is removed from
+     * @param tag            tag to be removed
+     * @return renamer of the files of the images whose tags changed
+     */
+    static BulkRenamer planRemoveTagFromImages(List<Image> selectedImages, Tag tag) {
+        return planChangeTags(selectedImages, tags -> tags.remove(tag));
+    }
+
+    /**
+     * Helper in planAssignTagToImages and planRemoveTagFromImages. Changes the tags of every image, then plans
+     * renaming their files, giving the images their old tags back if the renaming is undone.
+     */
+    private static BulkRenamer planChangeTags(List<Image> selectedImages, Consumer<List<Tag>> change) {
+        IdentityHashMap<Image, List<Tag>> oldTags = new IdentityHashMap<>();
+        ArrayList<Image> changedImages = new ArrayList<>();
+        for (Image image : selectedImages) {
+            if (oldTags.containsKey(image)) {
+                continue;
+            }
+            ArrayList<Tag> tags = new ArrayList<>(image.getAssignedTags());
+            oldTags.put(image, new ArrayList<>(tags));
+            change.accept(tags);
+            if (image.setTags(tags)) {
+                changedImages.add(image);
+            }
         }
+        return new BulkRenamer(changedImages, image -> image.setTags(oldTags.get(image)));
     }
 }
@@ -0,0 +1,230 @@
+package pack.image;
+
+import pack.tag.Tag;
+import pack.tag.TagManager;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test Class for ImageManager.
+ */
+class ImageManagerTest {
+
+    /**
+     * Directory the test images are made in.
+     */
+    @TempDir
+    File directory;
+
+    /**
+     * Tests to see if a tag is added to and removed from many images at once, renaming all their files.
+     */
+    @Test
+    void tagSelectedImages() throws IOException {
+        ArrayList<Image> selected = makeImages(3);
+        Tag tag = TagManager.getTag("beach");
+
+        RenameReport report = ImageManager.assignTagToImages(selected, tag);
+        assertTrue(report.isComplete());
+        assertEquals(3, report.getRenamed());
+        for (int i = 0; i < selected.size(); i++) {
+            Image image = selected.get(i);
+            assertEquals("photo" + i + " @beach", image.getName());
+            assertTrue(image.getFile().exists());
+            assertTrue(tag.getImages().contains(image));
+        }
+
+        report = ImageManager.removeTagFromImages(selected, tag);
+        assertTrue(report.isComplete());
+        assertEquals(3, report.getRenamed());
+        assertEquals("photo0", selected.get(0).getName());
+        assertTrue(tag.getImages().isEmpty());
+    }
+
+    /**
+     * Tests to see if the files already renamed are renamed back, and the tags left as they were, when one file cannot
+     * be renamed.
+     */
+    @Test
+    void rollsBackOnFailure() throws IOException {
+        ArrayList<Image> selected = makeImages(3);
+        Tag tag = TagManager.getTag("beach");
+        assertTrue(selected.get(1).getFile().delete());
+
+        RenameReport report = ImageManager.assignTagToImages(selected, tag);
+        assertFalse(report.isComplete());
+        assertEquals(1, report.getFailed());
+        assertEquals(2, report.getRolledBack());
+        assertEquals(0, report.getRenamed());
+        for (Image image : selected) {
+            assertTrue(image.getAssignedTags().isEmpty());
+            assertFalse(image.getName().contains("@"));
+        }
+        assertTrue(new File(directory, "photo0.jpg").exists());
+        assertTrue(new File(directory, "photo2.jpg").exists());
+        assertTrue(tag.getImages().isEmpty());
+    }
+
+    /**
+     * Tests to see if a file that cannot be renamed when a tag is replaced on all images is reported as out of sync
+     * with its image, since the tag replaced cannot be given back.
+     */
+    @Test
+    void reportsFilesOutOfSync() throws IOException {
+        ArrayList<Image> selected = makeImages(2);
+        Tag tag = TagManager.getTag("pier");
+        Tag replacement = TagManager.getTag("jetty");
+        assertTrue(ImageManager.assignTagToImages(selected, tag).isComplete());
+
+        BulkRenamer renamer = ImageManager.planReplaceTags(Collections.singletonMap(tag, replacement));
+        File missing = selected.get(1).getFile();
+        assertTrue(missing.delete());
+        renamer.run(BulkRenamer.Progress.NONE);
+        RenameReport report = renamer.finish();
+        assertEquals(1, report.getRenamed());
+        assertEquals(1, report.getFailed());
+        assertEquals(Collections.singletonList(missing), report.getOutOfSync());
+        assertEquals("photo0 @jetty", selected.get(0).getName());
+    }
+
+    /**
+     * Tests to see if the changes the watcher sees while files are tagged in the background leave the images shown
+     * alone, so finishing hands the same images their new files.
+     */
+    @Test
+    void watcherIgnoresRenamedFiles() throws IOException {
+        ArrayList<Image> selected = makeImages(2);
+        Tag tag = TagManager.getTag("harbour");
+        ArrayList<Image> shown = ImageManager.getImages();
+        shown.addAll(selected);
+        try {
+            BulkRenamer renamer = ImageManager.planAssignTagToImages(selected, tag);
+            renamer.run(BulkRenamer.Progress.NONE);
+            LinkedHashMap<Path, WatchEvent.Kind<?>> changes = new LinkedHashMap<>();
+            for (int i = 0; i < selected.size(); i++) {
+                changes.put(new File(directory, "photo" + i + ".jpg").toPath(), ENTRY_DELETE);
+                changes.put(new File(directory, "photo" + i + " @harbour.jpg").toPath(), ENTRY_CREATE);
+            }
+            assertFalse(ImageManager.applyChanges(null, changes, false));
+            assertEquals(selected, shown.subList(shown.size() - 2, shown.size()));
+
+            RenameReport report = renamer.finish();
+            assertTrue(report.isComplete());
+            for (Image image : selected) {
+                assertTrue(image.getName().endsWith(" @harbour"));
+                assertTrue(image.getFile().exists());
+                assertTrue(tag.getImages().contains(image));
+            }
+            assertEquals(2, tag.getImages().size());
+        } finally {
+            shown.removeAll(selected);
+        }
+    }
+
+    /**
+     * Tests to see if scanning leaves the images found out of their tags, so a scan that is cancelled or whose result
+     * is dropped leaves nothing behind.
+     */
+    @Test
+    void scanDoesNotAttach() throws IOException {
+        assertTrue(new File(directory, "IMG_1 @dune.jpg").createNewFile());
+        Tag tag = TagManager.getTag("dune");
+
+        DirectoryScanner.ScanResult result = ImageManager.scan(directory, false, DirectoryScanner.ScanMonitor.NONE);
+        assertEquals(1, result.images.size());
+        assertEquals(1, result.images.get(0).getAssignedTags().size());
+        assertTrue(tag.getImages().isEmpty());
+    }
+
+    /**
+     * Tests to see if many images are moved at once, numbering a name taken in the new directory, and if progress
+     * follows every file.
+     */
+    @Test
+    void moveImages() throws IOException {
+        ArrayList<Image> selected = makeImages(3);
+        File newDirectory = new File(directory, "archive");
+        assertTrue(newDirectory.mkdir());
+        assertTrue(new File(newDirectory, "photo1.jpg").createNewFile());
+        AtomicInteger progress = new AtomicInteger();
+
+        MoveReport report = ImageManager.moveImages(selected, newDirectory, (files, bytes) -> progress.set(files));
+        assertEquals(3, report.getMoved());
+        assertEquals(0, report.getFailed());
+        assertEquals(3, progress.get());
+        assertEquals(new File(newDirectory, "photo0.jpg"), selected.get(0).getFile());
+        assertEquals(new File(newDirectory, "photo1 (1).jpg"), selected.get(1).getFile());
+        for (Image image : selected) {
+            assertTrue(image.getFile().exists());
+        }
+        assertFalse(new File(directory, "photo0.jpg").exists());
+    }
+
+    /**
+     * Tests to see if a file given the name planned for a moved image meanwhile is kept, and the image moved to the
+     * next free name instead.
+     */
+    @Test
+    void moveNeverReplaces() throws IOException {
+        ArrayList<Image> selected = makeImages(1);
+        File newDirectory = new File(directory, "archive");
+        assertTrue(newDirectory.mkdir());
+
+        BulkMover mover = ImageManager.planMove(selected, newDirectory);
+        File taken = new File(newDirectory, "photo0.jpg");
+        Files.write(taken.toPath(), new byte[]{1, 2, 3});
+        mover.run(BulkMover.Progress.NONE);
+        MoveReport report = ImageManager.finishMove(mover, newDirectory);
+        assertEquals(1, report.getMoved());
+        assertEquals(new File(newDirectory, "photo0 (1).jpg"), selected.get(0).getFile());
+        assertTrue(selected.get(0).getFile().exists());
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(taken.toPath()));
+    }
+
+    /**
+     * Tests to see if a file copied to another file system keeps its content and time, and the original is deleted.
+     */
+    @Test
+    void copyAcrossFileSystems() throws IOException {
+        File source = new File(directory, "photo.jpg");
+        byte[] content = new byte[100_000];
+        new Random(1).nextBytes(content);
+        Files.write(source.toPath(), content);
+        assertTrue(source.setLastModified(1_000_000_000_000L));
+        File target = new File(directory, "copy.jpg");
+
+        BulkMover.copy(source.toPath(), target.toPath());
+        assertFalse(source.exists());
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        assertEquals(1_000_000_000_000L, target.lastModified());
+    }
+
+    /**
+     * Helper making images with files named photo0.jpg, photo1.jpg and so on.
+     */
+    private ArrayList<Image> makeImages(int count) throws IOException {
+        ArrayList<Image> images = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            File file = new File(directory, "photo" + i + ".jpg");
+            assertTrue(file.createNewFile());
+            images.add(new Image(file));
+        }
+        return images;
+    }
+}
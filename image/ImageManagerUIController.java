@@ -1,9 +1,16 @@
 package pack.image;
 
+import javafx.animation.AnimationTimer;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.Label;
 import javafx.scene.control.*;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.TextField;
@@ -12,22 +19,41 @@ import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.Text;
 import javafx.stage.DirectoryChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
+import pack.ImageLogger;
 import pack.Main;
+import pack.tag.Tag;
+import pack.tag.TagManager;
+import pack.tag.TagQuery;
 
-import java.awt.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Controller for ImageManagerUI.fxml.
  */
 public class ImageManagerUIController {
 
+    /**
+     * Icon of a directory, decoded once and shared by all cells and tiles.
+     */
+    static final javafx.scene.image.Image FOLDER_ICON = new javafx.scene.image.Image(
+            ImageManagerUIController.class.getResourceAsStream(
+                    ".." + File.separator + "UIelements" + File.separator + "directory.png"));
+
     /**
      * Moves Images.
      */
@@ -46,6 +72,18 @@ public class ImageManagerUIController {
     @FXML
     MenuItem tagHistory;
 
+    /**
+     * Adds a tag to the selected images.
+     */
+    @FXML
+    MenuItem tagSelected;
+
+    /**
+     * Removes a tag from the selected images.
+     */
+    @FXML
+    MenuItem untagSelected;
+
     /**
      * The picture displayed.
      */
@@ -70,12 +108,29 @@ public class ImageManagerUIController {
     @FXML
     TextField directoryTextField;
 
+    /**
+     * The TextField for tag queries filtering the images shown.
+     */
+    @FXML
+    TextField searchField;
+
     /**
      * The TreeTable to display files, refer to TreeTableView class.
      */
     @FXML
     TreeTableView<FileInfo> treeTableView;
 
+    /**
+     * The pane showing either the TreeTableView or the grid of thumbnails.
+     */
+    @FXML
+    StackPane viewPane;
+
+    /**
+     * The grid of thumbnails, shown instead of the TreeTableView in the grid view mode.
+     */
+    private ThumbnailGrid thumbnailGrid;
+
     /**
      * The first column display the directories and images.
      */
@@ -124,21 +179,115 @@ public class ImageManagerUIController {
     @FXML
     MenuItem renameLog;
 
+    /**
+     * Shows the progress of loading the current directory.
+     */
+    @FXML
+    ProgressIndicator loadingIndicator;
+
+    /**
+     * Number of loaded images added to the TreeTableView per pulse while a directory is loading.
+     */
+    private static final int IMAGES_PER_PULSE = 2000;
+
+    /**
+     * Greatest number of renamings shown in the rename history.
+     */
+    private static final int HISTORY_LIMIT = 10000;
+
+    /**
+     * Spans of time the rename history can show, in milliseconds, the last one for all time.
+     */
+    private static final long[] HISTORY_SPANS = {
+            TimeUnit.DAYS.toMillis(1), TimeUnit.DAYS.toMillis(7), TimeUnit.DAYS.toMillis(30),
+            TimeUnit.DAYS.toMillis(365), Long.MAX_VALUE};
+
     /**
      * The root of the TreeTableView.
      */
     private TreeItem<FileInfo> rootItem;
 
+    /**
+     * TreeItems of the images shown, so they are not built again every time the TreeTableView is updated.
+     */
+    private HashMap<Image, TreeItem<FileInfo>> imageItems = new HashMap<>();
+
+    /**
+     * TreeItems of the subdirectories shown, so expanded subdirectories stay expanded when the TreeTableView is
+     * updated.
+     */
+    private HashMap<File, LazyDirectoryTreeItem> directoryItems = new HashMap<>();
+
+    /**
+     * Image shown in the preview, null if none has been previewed.
+     */
+    private Image previewedImage;
+
+    /**
+     * Full resolution image of the previewed image, decoding in the background.
+     */
+    private javafx.scene.image.Image previewFullImage;
+
+    /**
+     * Request for the thumbnail of the previewed image, null if there is none pending.
+     */
+    private ThumbnailService.Request previewRequest;
+
+    /**
+     * How long typing has to pause, in milliseconds, before the query typed is run.
+     */
+    private static final int SEARCH_DELAY_MILLIS = 200;
+
+    /**
+     * Runs the query typed once typing pauses.
+     */
+    private final PauseTransition searchPause = new PauseTransition(Duration.millis(SEARCH_DELAY_MILLIS));
+
+    /**
+     * Task running the latest query, null if no query is running.
+     */
+    private Task<HashSet<Image>> searchTask;
+
+    /**
+     * Images matching the query typed, null if no query is typed and all images are shown.
+     */
+    private HashSet<Image> searchResults;
+
+    /**
+     * Task loading the current directory, null if no directory is loading.
+     */
+    private DirectoryLoadTask loadTask;
+
+    /**
+     * Adds the images loaded so far to the TreeTableView once per pulse.
+     */
+    private final AnimationTimer loadTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            showLoadedImages();
+        }
+    };
+
     /**
      * Initializes the tables of the UI.
      */
     @FXML
     private void initialize() {
         // modify TreeTableView
-        updateTree();
+        setUpTree();
+        thumbnailGrid = new ThumbnailGrid(this::selectFileInfo, this::openFileInfo, imageMenu);
+        viewPane.getChildren().add(thumbnailGrid);
+        showViewMode();
 
-        // modify TextField
-        updateTextField();
+        // filter the images by the tag query typed
+        searchPause.setOnFinished(event -> runSearch());
+        searchField.textProperty().addListener((observable, oldText, text) -> searchPause.playFromStart());
+
+        // keep the TreeTableView up to date with changes on disk
+        ImageManager.watchDirectory(Platform::runLater, this::refreshContent, this::scanInBackground);
+
+        // load the directory
+        loadDirectory(ImageManager.getDirectory());
     }
 
     /**
@@ -147,8 +296,9 @@ public class ImageManagerUIController {
      */
     @FXML
     private void handleViewModeInShowAllImages() {
-            ImageManager.setViewAllImages(true);
-            updateTree();
+        ImageManager.setViewAllImages(true);
+        showViewMode();
+        loadDirectory(ImageManager.getDirectory());
     }
 
     /**
@@ -158,7 +308,29 @@ public class ImageManagerUIController {
     @FXML
     private void handleViewModeInTreeStructure() {
         ImageManager.setViewAllImages(false);
-        updateTree();
+        showViewMode();
+        loadDirectory(ImageManager.getDirectory());
+    }
+
+    /**
+     * EventHandler: when the user clicks the option, change the view mode to show images and sub
+     * directories as a grid of thumbnails.
+     */
+    @FXML
+    private void handleViewModeInGrid() {
+        ImageManager.setViewGrid(true);
+        showViewMode();
+        loadDirectory(ImageManager.getDirectory());
+    }
+
+    /**
+     * Helper showing either the TreeTableView or the grid of thumbnails, depending on the view mode.
+     */
+    private void showViewMode() {
+        boolean grid = ImageManager.isViewGrid();
+        thumbnailGrid.setVisible(grid);
+        treeTableView.setVisible(!grid);
+        updateGrid();
     }
 
     /**
@@ -179,10 +351,10 @@ public class ImageManagerUIController {
      */
     @FXML
     private void handleBackButton() {
-        String parentPathname = ImageManager.getDirectory().getParent();
-        ImageManager.setDirectory(new File(parentPathname));
-        directoryTextField.setText(parentPathname);
-        updateTree();
+        File parent = ImageManager.getDirectory().getParentFile();
+        if (parent != null) {
+            loadDirectory(parent);
+        }
     }
 
     /**
@@ -196,9 +368,7 @@ public class ImageManagerUIController {
         directoryChooser.setInitialDirectory(ImageManager.getDirectory());
         File newDirectory = directoryChooser.showDialog(Popup);
         if (newDirectory != null) {
-            ImageManager.setDirectory(newDirectory);
-            updateTree();
-            updateTextField();
+            loadDirectory(newDirectory);
         }
     }
 
@@ -241,33 +411,214 @@ public class ImageManagerUIController {
     }
 
     /**
-     * EventHandler: when rename log in log menu is pressed.
-     *
-     * @throws IOException if it can't access ImageLog.log
+     * EventHandler: when tagSelected in the edit menu is pressed. Adds the tag typed to every selected image.
      */
     @FXML
-    private void handleRenameHistory() throws IOException {
-        File logFile = new File("ImageLog.log");
-        if (logFile.exists()) {
-            Desktop.getDesktop().open(logFile);
+    private void handleTagSelectedImages() {
+        ArrayList<pack.image.Image> selectedImages = getSelectedImages();
+        if (selectedImages.isEmpty()) {
+            return;
+        }
+        TextInputDialog dialog = new TextInputDialog();
+        dialog.setTitle("Tag images");
+        dialog.setHeaderText("Add a tag to " + selectedImages.size() + " images");
+        dialog.setContentText("Tag:");
+        Optional<String> tagName = dialog.showAndWait();
+        if (!tagName.isPresent() || tagName.get().trim().isEmpty()) {
+            return;
         }
+        renameInBackground(ImageManager.planAssignTagToImages(selectedImages, TagManager.getTag(tagName.get().trim())),
+                "Tagging images");
+    }
+
+    /**
+     * EventHandler: when untagSelected in the edit menu is pressed. Removes the tag chosen from every selected image.
+     */
+    @FXML
+    private void handleUntagSelectedImages() {
+        ArrayList<pack.image.Image> selectedImages = getSelectedImages();
+        LinkedHashMap<String, Tag> assignedTags = new LinkedHashMap<>();
+        for (pack.image.Image image : selectedImages) {
+            for (Tag tag : image.getAssignedTags()) {
+                assignedTags.putIfAbsent(tag.getName(), tag);
+            }
+        }
+        if (assignedTags.isEmpty()) {
+            return;
+        }
+        ArrayList<String> names = new ArrayList<>(assignedTags.keySet());
+        ChoiceDialog<String> dialog = new ChoiceDialog<>(names.get(0), names);
+        dialog.setTitle("Untag images");
+        dialog.setHeaderText("Remove a tag from " + selectedImages.size() + " images");
+        dialog.setContentText("Tag:");
+        Optional<String> tagName = dialog.showAndWait();
+        if (!tagName.isPresent()) {
+            return;
+        }
+        renameInBackground(ImageManager.planRemoveTagFromImages(selectedImages, assignedTags.get(tagName.get())),
+                "Untagging images");
+    }
+
+    /**
+     * Helper in handleTagSelectedImages, handleUntagSelectedImages and handleMoveImage. Returns the images selected
+     * in the TreeTableView, directories left out.
+     */
+    private ArrayList<pack.image.Image> getSelectedImages() {
+        ArrayList<pack.image.Image> selectedImages = new ArrayList<>();
+        for (TreeItem<FileInfo> item : treeTableView.getSelectionModel().getSelectedItems()) {
+            if (item != null && item.getValue().isImage()) {
+                selectedImages.add(item.getValue().getImage());
+            }
+        }
+        return selectedImages;
+    }
+
+    /**
+     * Helper in handleTagSelectedImages and handleUntagSelectedImages. Renames the files of the images whose tags
+     * changed in the background, showing how far it got, then how it went.
+     */
+    private void renameInBackground(BulkRenamer renamer, String title) {
+        Task<Void> task = new Task<Void>() {
+            @Override
+            protected Void call() {
+                renamer.run(files -> {
+                    updateProgress(files, renamer.getFileCount());
+                    updateMessage("Renamed " + files + " of " + renamer.getFileCount() + " images");
+                });
+                return null;
+            }
+        };
+        ProgressWindow progressWindow = new ProgressWindow(title, task);
+        task.setOnSucceeded(event -> {
+            progressWindow.close();
+            showReport(renamer.finish());
+        });
+        task.setOnFailed(event -> {
+            progressWindow.close();
+            task.getException().printStackTrace();
+            showReport(renamer.finish());
+        });
+        progressWindow.start("image-renamer");
+    }
+
+    /**
+     * Helper in renameInBackground. Shows the new names and tags, then how the renaming went.
+     */
+    private void showReport(RenameReport report) {
+        FileInfo.updateAllInfo();
+        Alert alert = new Alert(report.isComplete() ? Alert.AlertType.INFORMATION : Alert.AlertType.WARNING,
+                report.toString());
+        alert.setHeaderText(report.isComplete() ? "Images tagged" : "Images left as they were");
+        alert.showAndWait();
+    }
+
+    /**
+     * EventHandler: when rename log in log menu is pressed. Shows the latest renamings of a span of time chosen, read
+     * from the index of the rename journal in the background, so only what is shown is read however long the journal
+     * is.
+     */
+    @FXML
+    private void handleRenameHistory() {
+        ListView<String> renamings = new ListView<>();
+        renamings.setPrefSize(700, 400);
+        Label status = new Label();
+        ChoiceBox<String> span = new ChoiceBox<>();
+        span.getItems().addAll("Last day", "Last week", "Last month", "Last year", "All time");
+        span.getSelectionModel().selectedIndexProperty().addListener((observable, oldIndex, index) ->
+                showRenamings(HISTORY_SPANS[index.intValue()], renamings, status));
+        HBox top = new HBox(10, span, status);
+        top.setAlignment(Pos.CENTER_LEFT);
+        VBox root = new VBox(10, top, renamings);
+        root.setPadding(new Insets(10));
+        Stage Popup = new Stage();
+        Popup.setTitle("Rename History");
+        Popup.setScene(new Scene(root));
+        span.getSelectionModel().select(0);
+        Popup.show();
+    }
+
+    /**
+     * Helper in handleRenameHistory. Reads the latest renamings of a span of time in the background and shows them.
+     */
+    private void showRenamings(long spanMillis, ListView<String> renamings, Label status) {
+        long now = System.currentTimeMillis();
+        long from = spanMillis == Long.MAX_VALUE ? 0 : now - spanMillis;
+        Task<ArrayList<String>> task = new Task<ArrayList<String>>() {
+            @Override
+            protected ArrayList<String> call() {
+                return ImageLogger.getRenamingsBetween(from, Long.MAX_VALUE, HISTORY_LIMIT);
+            }
+        };
+        status.setText("Reading...");
+        task.setOnSucceeded(event -> {
+            ArrayList<String> lines = task.getValue();
+            // latest first
+            Collections.reverse(lines);
+            renamings.getItems().setAll(lines);
+            status.setText(lines.size() < HISTORY_LIMIT ? lines.size() + " renamings"
+                    : "Latest " + HISTORY_LIMIT + " renamings");
+        });
+        task.setOnFailed(event -> {
+            task.getException().printStackTrace();
+            status.setText("Could not read the rename history");
+        });
+        Thread thread = new Thread(task, "history-reader");
+        thread.setDaemon(true);
+        thread.start();
     }
 
     /**
-     * EventHandler: when the moveImageC in imageMenu is pressed.
+     * EventHandler: when the moveImageC in imageMenu is pressed. Moves the selected images in the background, showing
+     * how far it got, then how fast it went.
      */
     @FXML
     private void handleMoveImage() {
-        pack.image.Image selectedImage = Main.currentImageInfo.getImage();
+        ArrayList<pack.image.Image> selectedImages = getSelectedImages();
+        if (selectedImages.isEmpty()) {
+            if (Main.currentImageInfo == null) {
+                return;
+            }
+            selectedImages.add(Main.currentImageInfo.getImage());
+        }
         Stage Popup = new Stage();
         DirectoryChooser directoryChooser = new DirectoryChooser();
-        directoryChooser.setInitialDirectory(selectedImage.getFile().getParentFile());
+        directoryChooser.setInitialDirectory(selectedImages.get(0).getFile().getParentFile());
         File newDirectory = directoryChooser.showDialog(Popup);
-        if (newDirectory != null) {
-            ImageManager.moveImage(selectedImage, newDirectory);
-            Main.currentImageInfo.updateFileInfo();
-            updateTree();
+        if (newDirectory == null) {
+            return;
         }
+
+        BulkMover mover = ImageManager.planMove(selectedImages, newDirectory);
+        Task<Void> task = new Task<Void>() {
+            @Override
+            protected Void call() {
+                mover.run((files, bytes) -> {
+                    updateProgress(bytes, Math.max(1, mover.getTotalBytes()));
+                    updateMessage("Moved " + files + " of " + mover.getFileCount() + " images");
+                });
+                return null;
+            }
+        };
+        // modal, so no other directory is shown and no Image changed until the move is finished
+        ProgressWindow progressWindow = new ProgressWindow("Moving images", task);
+        task.setOnSucceeded(event -> {
+            progressWindow.close();
+            MoveReport report = ImageManager.finishMove(mover, newDirectory);
+            FileInfo.updateAllInfo();
+            updateTree();
+            Alert alert = new Alert(report.getFailed() == 0 ? Alert.AlertType.INFORMATION : Alert.AlertType.WARNING,
+                    report.toString());
+            alert.setHeaderText("Images moved");
+            alert.showAndWait();
+        });
+        task.setOnFailed(event -> {
+            progressWindow.close();
+            task.getException().printStackTrace();
+            ImageManager.finishMove(mover, newDirectory);
+            FileInfo.updateAllInfo();
+            updateTree();
+        });
+        progressWindow.start("image-mover");
     }
 
 
@@ -279,11 +630,183 @@ public class ImageManagerUIController {
     }
 
     /**
-     * Update the TreeTableView of current directory.
+     * Loads a directory in the background. The images found are added to the TreeTableView while loading, and the
+     * loading of the previous directory, if any, is cancelled.
+     *
+     * @param newDirectory directory being loaded
      */
-    private void updateTree() {
-        // get root
-        rootItem = getTree(rootItem);
+    private void loadDirectory(File newDirectory) {
+        cancelLoading();
+        if (!ImageManager.beginScan(newDirectory)) {
+            return;
+        }
+        updateTextField();
+
+        // a recently shown directory that has not changed is taken from the cache
+        DirectoryScanner.ScanResult cached = ImageManager.cachedScan();
+        if (cached != null) {
+            ImageManager.finishScan(cached);
+            refreshContent();
+            return;
+        }
+        updateTree();
+
+        DirectoryLoadTask task = new DirectoryLoadTask(ImageManager.getDirectory(), ImageManager.isViewAllImages());
+        task.setOnSucceeded(event -> {
+            if (loadTask == task) {
+                stopLoading();
+                ImageManager.finishScan(task.getValue());
+                refreshContent();
+            }
+        });
+        task.setOnFailed(event -> {
+            if (loadTask == task) {
+                stopLoading();
+                task.getException().printStackTrace();
+            }
+        });
+        loadTask = task;
+        loadingIndicator.progressProperty().bind(task.progressProperty());
+        loadingIndicator.setVisible(true);
+        loadTimer.start();
+
+        Thread thread = new Thread(task, "directory-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Scans a directory the DirectoryWatcher has asked for in the background. The current directory, whose changes
+     * have been lost, is loaded again; the images of a directory created under it are added once it is scanned.
+     *
+     * @param scannedDirectory directory being scanned
+     */
+    private void scanInBackground(File scannedDirectory) {
+        if (scannedDirectory.equals(ImageManager.getDirectory())) {
+            loadDirectory(scannedDirectory);
+            return;
+        }
+        DirectoryLoadTask task = new DirectoryLoadTask(scannedDirectory, true);
+        task.setOnSucceeded(event -> {
+            if (ImageManager.addScannedImages(scannedDirectory, task.getValue())) {
+                refreshContent();
+            }
+        });
+        task.setOnFailed(event -> task.getException().printStackTrace());
+        Thread thread = new Thread(task, "directory-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Cancels loading the current directory, if it is loading.
+     */
+    private void cancelLoading() {
+        if (loadTask != null) {
+            loadTask.cancel();
+            stopLoading();
+        }
+    }
+
+    /**
+     * Helper in loadDirectory. Stops following the task loading the current directory.
+     */
+    private void stopLoading() {
+        loadTask = null;
+        loadTimer.stop();
+        loadingIndicator.progressProperty().unbind();
+        loadingIndicator.setVisible(false);
+    }
+
+    /**
+     * Helper in loadDirectory. Adds images loaded since the last pulse to the TreeTableView, at most
+     * IMAGES_PER_PULSE at a time.
+     */
+    private void showLoadedImages() {
+        if (loadTask == null) {
+            return;
+        }
+        ArrayList<TreeItem<FileInfo>> items = new ArrayList<>();
+        Image image;
+        while (items.size() < IMAGES_PER_PULSE && (image = loadTask.pollBuiltImage()) != null) {
+            TreeItem<FileInfo> item = new TreeItem<>(new FileInfo(image));
+            imageItems.put(image, item);
+            // while a query is typed, images are shown once it has run again on the loaded directory
+            if (searchResults == null) {
+                items.add(item);
+            }
+        }
+        if (!items.isEmpty()) {
+            rootItem.getChildren().addAll(items);
+            updateGrid();
+        }
+    }
+
+    /**
+     * Helper updating the TreeTableView after the content of the directory has changed, running the query typed
+     * again if there is one.
+     */
+    private void refreshContent() {
+        if (searchResults != null) {
+            runSearch();
+        } else {
+            updateTree();
+        }
+    }
+
+    /**
+     * Helper running the query typed in the background and showing only the images matching it. A query still
+     * running is cancelled, and its result ignored. An invalid query is shown in red and leaves the images shown as
+     * they are.
+     */
+    private void runSearch() {
+        if (searchTask != null) {
+            searchTask.cancel();
+            searchTask = null;
+        }
+        String text = searchField.getText().trim();
+        if (text.isEmpty()) {
+            searchField.setStyle("");
+            searchResults = null;
+            updateTree();
+            return;
+        }
+
+        Task<HashSet<Image>> task = new Task<HashSet<Image>>() {
+            @Override
+            protected HashSet<Image> call() {
+                return new HashSet<>(TagQuery.parse(text).plan().search());
+            }
+        };
+        task.setOnSucceeded(event -> {
+            if (searchTask == task) {
+                searchTask = null;
+                searchField.setStyle("");
+                searchResults = task.getValue();
+                updateTree();
+            }
+        });
+        task.setOnFailed(event -> {
+            if (searchTask == task) {
+                searchTask = null;
+                if (task.getException() instanceof IllegalArgumentException) {
+                    searchField.setStyle("-fx-text-fill: red;");
+                } else {
+                    task.getException().printStackTrace();
+                }
+            }
+        });
+        searchTask = task;
+
+        Thread thread = new Thread(task, "tag-search");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Sets up the columns and the selection of the TreeTableView.
+     */
+    private void setUpTree() {
         imageColumn.setCellValueFactory(
                 (TreeTableColumn.CellDataFeatures<FileInfo, String> param) ->
                         param.getValue().getValue().nameProperty());
@@ -292,27 +815,79 @@ public class ImageManagerUIController {
                 (TreeTableColumn.CellDataFeatures<FileInfo, String> param) ->
                         param.getValue().getValue().tagsProperty());
         tagColumn.setCellFactory(param -> new customTagTTC());
-        treeTableView.setRoot(rootItem);
         treeTableView.setEditable(true);
         treeTableView.setShowRoot(false);
         treeTableView.getColumns().setAll(imageColumn, tagColumn);
+        treeTableView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
         treeTableView
                 .getSelectionModel()
                 .selectedItemProperty()
                 .addListener(
-                        (observable, oldValue, newValue) -> {
-                            if (newValue != null && newValue.getValue().isImage()) {
-                                Main.currentImageInfo = newValue.getValue();
-                                manageTag.setText("Manage Tag for this image");
-                                moveImage.setDisable(false);
-                                tagHistory.setDisable(false);
-                            } else {
-                                Main.currentImageInfo = null;
-                                manageTag.setText("Manage Tag Library");
-                                moveImage.setDisable(true);
-                                tagHistory.setDisable(true);
-                            }
-                        });
+                        (observable, oldValue, newValue) ->
+                                selectFileInfo(newValue == null ? null : newValue.getValue()));
+    }
+
+    /**
+     * Helper making a file selected in the TreeTableView or the grid the current one. With many files selected in the
+     * TreeTableView, the last one selected is the current one.
+     *
+     * @param fileInfo file selected, null if none
+     */
+    private void selectFileInfo(FileInfo fileInfo) {
+        if (fileInfo != null && fileInfo.isImage()) {
+            Main.currentImageInfo = fileInfo;
+            manageTag.setText("Manage Tag for this image");
+            moveImage.setDisable(false);
+            tagHistory.setDisable(false);
+        } else {
+            Main.currentImageInfo = null;
+            manageTag.setText("Manage Tag Library");
+            moveImage.setDisable(true);
+            tagHistory.setDisable(true);
+        }
+    }
+
+    /**
+     * Helper opening a file double clicked in the TreeTableView or the grid: a directory is loaded, and an image is
+     * previewed.
+     *
+     * @param fileInfo file double clicked
+     */
+    private void openFileInfo(FileInfo fileInfo) {
+        if (!fileInfo.isImage()) {
+            // set the new root and load it into the TreeTableView
+            loadDirectory(fileInfo.getFile());
+        } else {
+            // preview the image
+            showPreview(fileInfo.getImage());
+            imagePath.setText(fileInfo.getImage().getFile().getPath());
+        }
+    }
+
+    /**
+     * Update the TreeTableView of current directory.
+     */
+    private void updateTree() {
+        // get root
+        rootItem = getTree(rootItem);
+        if (treeTableView.getRoot() != rootItem) {
+            treeTableView.setRoot(rootItem);
+        }
+        updateGrid();
+    }
+
+    /**
+     * Helper showing the files of the TreeTableView in the grid, if the grid is shown.
+     */
+    private void updateGrid() {
+        if (!ImageManager.isViewGrid() || rootItem == null) {
+            return;
+        }
+        ArrayList<FileInfo> files = new ArrayList<>(rootItem.getChildren().size());
+        for (TreeItem<FileInfo> item : rootItem.getChildren()) {
+            files.add(item.getValue());
+        }
+        thumbnailGrid.setFiles(files);
     }
 
     /**
@@ -324,38 +899,83 @@ public class ImageManagerUIController {
         if (treeItem == null)
             // create the root note of this tree if null
             treeItem = new TreeItem<>(new FileInfo(ImageManager.getDirectory()));
-        treeItem.getChildren().clear();
-        // add the subdirectories in form of FileInfo
+        ArrayList<TreeItem<FileInfo>> children = new ArrayList<>();
+        // add the subdirectories in form of FileInfo, listed only when they are expanded, unless a query is typed
+        HashMap<File, LazyDirectoryTreeItem> shownDirectories = new HashMap<>();
         for (File subdirectory : ImageManager.getSubDirectories()) {
-            TreeItem<FileInfo> subItem = new TreeItem<>(new FileInfo(subdirectory));
-            treeItem.getChildren().add(subItem);
+            LazyDirectoryTreeItem subItem = directoryItems.remove(subdirectory);
+            if (subItem == null) {
+                subItem = new LazyDirectoryTreeItem(subdirectory);
+            }
+            shownDirectories.put(subdirectory, subItem);
+            if (searchResults == null) {
+                children.add(subItem);
+            }
         }
-        // add the Images in form of FileInfo
+        for (LazyDirectoryTreeItem droppedItem : directoryItems.values()) {
+            droppedItem.setExpanded(false);
+            droppedItem.release();
+        }
+        directoryItems = shownDirectories;
+        // add the Images in form of FileInfo, reusing the items of images already shown
+        HashMap<Image, TreeItem<FileInfo>> shownItems = new HashMap<>();
         for (Image image : ImageManager.getImages()) {
-            TreeItem<FileInfo> subItem = new TreeItem<>(new FileInfo(image));
-            treeItem.getChildren().add(subItem);
+            TreeItem<FileInfo> subItem = imageItems.remove(image);
+            if (subItem == null) {
+                subItem = new TreeItem<>(new FileInfo(image));
+            }
+            shownItems.put(image, subItem);
+            if (searchResults == null || searchResults.contains(image)) {
+                children.add(subItem);
+            }
         }
+        for (TreeItem<FileInfo> droppedItem : imageItems.values()) {
+            droppedItem.getValue().release();
+        }
+        imageItems = shownItems;
+        treeItem.getChildren().setAll(children);
         return treeItem;
     }
 
+    /**
+     * Helper in handleCellClicked. Shows the thumbnail of an image in the preview right away, then the image in full
+     * resolution once it has been decoded in the background.
+     *
+     * @param image image being previewed
+     */
+    private void showPreview(Image image) {
+        previewedImage = image;
+        if (previewRequest != null) {
+            previewRequest.cancel();
+            previewRequest = null;
+        }
+        javafx.scene.image.Image thumbnail = ThumbnailService.getCached(image);
+        if (thumbnail != null) {
+            preview.setImage(thumbnail);
+        } else {
+            previewRequest = ThumbnailService.request(image, ThumbnailService.PRIORITY_VISIBLE,
+                    loaded -> Platform.runLater(() -> {
+                        // the full resolution image may already be shown
+                        if (previewedImage == image && preview.getImage() != previewFullImage) {
+                            preview.setImage(loaded);
+                        }
+                    }));
+        }
+
+        javafx.scene.image.Image fullImage = new javafx.scene.image.Image(image.getFile().toURI().toString(), true);
+        previewFullImage = fullImage;
+        fullImage.progressProperty().addListener((observable, oldProgress, progress) -> {
+            if (progress.doubleValue() >= 1 && !fullImage.isError() && previewFullImage == fullImage) {
+                preview.setImage(fullImage);
+            }
+        });
+    }
+
     private void handleCellClicked(
             TreeTableCell<FileInfo, String> ttc, MouseEvent event, ContextMenu cm) {
         // handle double click
         if (event.getClickCount() == 2 && !ttc.isEmpty()) {
-            FileInfo fileInfo = (ttc.getTreeTableRow().getTreeItem().getValue());
-            // directory
-            if (!fileInfo.isImage()) {
-                // set the new root and update the TreeTableView
-                ImageManager.setDirectory(fileInfo.getFile());
-                updateTree();
-                directoryTextField.setText(ImageManager.getDirectory().getPath());
-                // image
-            } else {
-                // preview the image
-                preview.setImage(
-                        new javafx.scene.image.Image(Main.currentImageInfo.getFile().toURI().toString()));
-                imagePath.setText(Main.currentImageInfo.getImage().getFile().getPath());
-            }
+            openFileInfo(ttc.getTreeTableRow().getTreeItem().getValue());
             // handle right click
         } else if (event.getButton() == MouseButton.SECONDARY && !ttc.isEmpty()) {
             FileInfo fileInfo = (ttc.getTreeTableRow().getTreeItem().getValue());
@@ -370,6 +990,11 @@ public class ImageManagerUIController {
      */
     public class customImageTTC extends TreeTableCell<FileInfo, String> {
 
+        /**
+         * Graphic shown next to a directory.
+         */
+        private final ImageView folderView = new ImageView(FOLDER_ICON);
+
         private customImageTTC() {
             super();
             setOnMouseClicked(event -> handleCellClicked(this, event, imageMenu));
@@ -381,21 +1006,16 @@ public class ImageManagerUIController {
             // refresh the cell if the item has been removed
             if (item == null || empty) {
                 setText(null);
+                setGraphic(null);
             } else {
                 // refresh the cell by the current TreeTableViewItem
                 setText(item);
                 TreeItem<FileInfo> treeItem = this.getTreeTableRow().getTreeItem();
-                if (treeItem != null && !treeItem.getValue().isImage())
-                    setGraphic(
-                            new ImageView(
-                                    new javafx.scene.image.Image(
-                                            getClass()
-                                                    .getResourceAsStream(
-                                                            ".."
-                                                                    + File.separator
-                                                                    + "UIelements"
-                                                                    + File.separator
-                                                                    + "directory.png"))));
+                if (treeItem != null && !treeItem.getValue().isImage()) {
+                    setGraphic(folderView);
+                } else {
+                    setGraphic(null);
+                }
             }
         }
     }
@@ -107,6 +107,19 @@ class ImageTest {
         tearDown();
     }
 
+    /**
+     * Test to see if an image whose file cannot be renamed keeps the tags and name it had.
+     */
+    @Test
+    void assignTagNotRenamed() {
+        Image missing = new Image(new File("MissingImage.jpg"));
+        Tag tag = new Tag("Keyboard");
+        missing.assignTag(tag);
+        assertTrue(missing.getAssignedTags().isEmpty());
+        assertFalse(tag.getImages().contains(missing));
+        assertEquals("MissingImage", missing.getName());
+    }
+
     /**
      * Test to see if getAssignedTags() returns all the tags assigned to test image.
      */
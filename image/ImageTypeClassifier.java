@@ -0,0 +1,216 @@
+package pack.image;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decides whether a file is an image. Files are classified by a precomputed, case-insensitive table of image file
+ * extensions; optionally, files without a known image extension are classified by the magic bytes at their start.
+ */
+class ImageTypeClassifier {
+
+    /**
+     * Image file extensions, without the dot.
+     */
+    private static final String[] EXTENSIONS = {"png", "jpg", "jpeg", "tif", "tiff", "bmp", "gif", "webp", "heic"};
+
+    /**
+     * Image file extensions grouped by their length, so a lookup only compares extensions of the right length.
+     */
+    private static final String[][] EXTENSIONS_BY_LENGTH = groupByLength(EXTENSIONS);
+
+    /**
+     * Number of bytes read from a file when sniffing its type.
+     */
+    private static final int SNIFF_LENGTH = 16;
+
+    /**
+     * Signatures of image formats at the start of a file.
+     */
+    private static final int[] PNG = {0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A};
+    private static final int[] JPEG = {0xFF, 0xD8, 0xFF};
+    private static final int[] GIF = {'G', 'I', 'F', '8'};
+    private static final int[] BMP = {'B', 'M'};
+    private static final int[] TIFF_LITTLE_ENDIAN = {'I', 'I', 0x2A, 0x00};
+    private static final int[] TIFF_BIG_ENDIAN = {'M', 'M', 0x00, 0x2A};
+    private static final int[] RIFF = {'R', 'I', 'F', 'F'};
+
+    /**
+     * Signatures found at byte 8 of RIFF files holding a webp image.
+     */
+    private static final int[] WEBP = {'W', 'E', 'B', 'P'};
+
+    /**
+     * Box type found at byte 4 of ISO base media files, followed by the brands of HEIC/HEIF images below.
+     */
+    private static final int[] FTYP = {'f', 't', 'y', 'p'};
+    private static final int[][] HEIF_BRANDS = {
+            {'h', 'e', 'i', 'c'}, {'h', 'e', 'i', 'x'}, {'h', 'e', 'v', 'c'}, {'h', 'e', 'v', 'x'},
+            {'h', 'e', 'i', 'm'}, {'h', 'e', 'i', 's'}, {'m', 'i', 'f', '1'}, {'m', 's', 'f', '1'}};
+
+    /**
+     * Buffer for the bytes being sniffed, one per scanning thread.
+     */
+    private static final ThreadLocal<byte[]> sniffBuffer = ThreadLocal.withInitial(() -> new byte[SNIFF_LENGTH]);
+
+    /**
+     * Whether files without a known image extension are checked by their content.
+     */
+    private static volatile boolean sniffing = false;
+
+    /**
+     * Sets whether files without a known image extension are checked by their content.
+     *
+     * @param sniffContent True to sniff the first bytes of files with an unknown extension
+     */
+    static void setSniffing(boolean sniffContent) {
+        sniffing = sniffContent;
+    }
+
+    /**
+     * Returns whether files without a known image extension are checked by their content.
+     *
+     * @return True if content sniffing is on
+     */
+    static boolean isSniffing() {
+        return sniffing;
+    }
+
+    /**
+     * Checks if this file is an image.
+     *
+     * @param file File being checked
+     * @return True if the file is an image
+     */
+    static boolean isImage(File file) {
+        if (hasImageExtension(file.getPath())) {
+            return true;
+        }
+        return sniffing && hasImageContent(file);
+    }
+
+    /**
+     * Checks if a path ends with an image file extension, ignoring case. Does not allocate.
+     *
+     * @param path path of the file
+     * @return True if the extension is a known image extension
+     */
+    static boolean hasImageExtension(String path) {
+        int dot = path.lastIndexOf('.');
+        if (dot < 0 || dot < path.lastIndexOf(File.separatorChar)) {
+            return false;
+        }
+        int length = path.length() - dot - 1;
+        if (length >= EXTENSIONS_BY_LENGTH.length) {
+            return false;
+        }
+        for (String extension : EXTENSIONS_BY_LENGTH[length]) {
+            if (path.regionMatches(true, dot + 1, extension, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a file starts with the signature of a known image format. Reads at most the first 16 bytes.
+     *
+     * @param file File being checked
+     * @return True if the content is a known image format
+     */
+    static boolean hasImageContent(File file) {
+        byte[] head = sniffBuffer.get();
+        int read = 0;
+        try (InputStream in = new FileInputStream(file)) {
+            while (read < SNIFF_LENGTH) {
+                int count = in.read(head, read, SNIFF_LENGTH - read);
+                if (count < 0) {
+                    break;
+                }
+                read += count;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return isImageSignature(head, read);
+    }
+
+    /**
+     * Checks if bytes start with the signature of a known image format.
+     *
+     * @param head   first bytes of a file
+     * @param length number of valid bytes in head
+     * @return True if the bytes are the start of a png, jpeg, gif, bmp, tiff, webp or heic file
+     */
+    static boolean isImageSignature(byte[] head, int length) {
+        if (startsWith(head, length, 0, PNG) || startsWith(head, length, 0, JPEG)
+                || startsWith(head, length, 0, GIF) || startsWith(head, length, 0, BMP)
+                || startsWith(head, length, 0, TIFF_LITTLE_ENDIAN) || startsWith(head, length, 0, TIFF_BIG_ENDIAN)) {
+            return true;
+        }
+        if (startsWith(head, length, 0, RIFF)) {
+            return startsWith(head, length, 8, WEBP);
+        }
+        if (startsWith(head, length, 4, FTYP)) {
+            for (int[] brand : HEIF_BRANDS) {
+                if (startsWith(head, length, 8, brand)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Helper in isImageSignature. Checks if bytes match a signature at an offset.
+     *
+     * @param head      bytes being checked
+     * @param length    number of valid bytes in head
+     * @param offset    position of the signature in head
+     * @param signature expected byte values
+     * @return True if the bytes match
+     */
+    private static boolean startsWith(byte[] head, int length, int offset, int[] signature) {
+        if (offset + signature.length > length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((head[offset + i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper building EXTENSIONS_BY_LENGTH.
+     *
+     * @param extensions extensions being grouped
+     * @return extensions indexed by their length
+     */
+    private static String[][] groupByLength(String[] extensions) {
+        int maxLength = 0;
+        for (String extension : extensions) {
+            maxLength = Math.max(maxLength, extension.length());
+        }
+        String[][] table = new String[maxLength + 1][];
+        for (int length = 0; length <= maxLength; length++) {
+            int count = 0;
+            for (String extension : extensions) {
+                if (extension.length() == length) {
+                    count++;
+                }
+            }
+            table[length] = new String[count];
+            count = 0;
+            for (String extension : extensions) {
+                if (extension.length() == length) {
+                    table[length][count++] = extension;
+                }
+            }
+        }
+        return table;
+    }
+}
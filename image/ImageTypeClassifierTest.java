@@ -0,0 +1,92 @@
+package pack.image;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the ImageTypeClassifier class.
+ */
+class ImageTypeClassifierTest {
+    private File file = new File("TestSniffedImage").getAbsoluteFile();
+
+    /**
+     * Turns sniffing off and removes the sniffed file after every test.
+     */
+    @AfterEach
+    void tearDown() {
+        ImageTypeClassifier.setSniffing(false);
+        file.delete();
+    }
+
+    /**
+     * Tests to see if hasImageExtension() accepts every image extension in any case.
+     */
+    @Test
+    void hasImageExtension() {
+        String[] names = {"a.png", "a.jpg", "a.JPEG", "a.tif", "a.Tiff", "a.bmp", "a.gif", "a.webp", "a.HEIC",
+                "a @Red.jpg"};
+        for (String name : names) {
+            assertTrue(ImageTypeClassifier.hasImageExtension(name), name);
+        }
+    }
+
+    /**
+     * Tests to see if hasImageExtension() rejects other files.
+     */
+    @Test
+    void hasImageExtensionWrong() {
+        String[] names = {"a.txt", "a.jp", "a.jpgx", "png", "a.", "photos.jpg" + File.separator + "a"};
+        for (String name : names) {
+            assertFalse(ImageTypeClassifier.hasImageExtension(name), name);
+        }
+    }
+
+    /**
+     * Tests to see if isImageSignature() recognizes the formats by their first bytes.
+     */
+    @Test
+    void isImageSignature() {
+        assertTrue(signature(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A));
+        assertTrue(signature(0xFF, 0xD8, 0xFF, 0xE0));
+        assertTrue(signature('G', 'I', 'F', '8', '9', 'a'));
+        assertTrue(signature('I', 'I', 0x2A, 0x00));
+        assertTrue(signature('R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'E', 'B', 'P'));
+        assertTrue(signature(0, 0, 0, 0x18, 'f', 't', 'y', 'p', 'h', 'e', 'i', 'c'));
+        assertFalse(signature('R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'A', 'V', 'E'));
+        assertFalse(signature('h', 'e', 'l', 'l', 'o'));
+        assertFalse(signature());
+    }
+
+    /**
+     * Tests to see if isImage() only sniffs files without an image extension when sniffing is on.
+     */
+    @Test
+    void isImageSniffing() throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 0x10});
+        }
+        assertFalse(ImageTypeClassifier.isImage(file));
+        ImageTypeClassifier.setSniffing(true);
+        assertTrue(ImageTypeClassifier.isImage(file));
+    }
+
+    /**
+     * Helper building the first bytes of a file.
+     *
+     * @param values byte values
+     * @return whether isImageSignature() accepts the bytes
+     */
+    private boolean signature(int... values) {
+        byte[] head = new byte[16];
+        for (int i = 0; i < values.length; i++) {
+            head[i] = (byte) values[i];
+        }
+        return ImageTypeClassifier.isImageSignature(head, values.length);
+    }
+}
@@ -0,0 +1,105 @@
+package pack.image;
+
+import javafx.scene.control.TreeItem;
+
+import java.io.File;
+import java.util.ArrayList;
+
+/**
+ * TreeItem of a subdirectory whose content is only listed when the item is expanded, in the background, and
+ * released again when it is collapsed. Lets a deep tree be browsed in place without building items for folders
+ * nobody opens.
+ */
+class LazyDirectoryTreeItem extends TreeItem<FileInfo> {
+
+    /**
+     * Task listing the directory, null if it is not being listed.
+     */
+    private DirectoryLoadTask loadTask;
+
+    /**
+     * Constructs a collapsed LazyDirectoryTreeItem.
+     *
+     * @param directory directory of this item
+     */
+    LazyDirectoryTreeItem(File directory) {
+        super(new FileInfo(directory));
+        expandedProperty().addListener((observable, wasExpanded, isExpanded) -> {
+            if (isExpanded) {
+                load();
+            } else {
+                release();
+            }
+        });
+    }
+
+    /**
+     * A directory is never a leaf, even before it has been listed.
+     *
+     * @return False
+     */
+    @Override
+    public boolean isLeaf() {
+        return false;
+    }
+
+    /**
+     * Lists the directory in the background and shows its content once it is listed.
+     */
+    private void load() {
+        DirectoryLoadTask task = new DirectoryLoadTask(getValue().getFile(), false);
+        task.setOnSucceeded(event -> {
+            if (loadTask == task) {
+                loadTask = null;
+                show(task.getValue());
+            }
+        });
+        task.setOnFailed(event -> {
+            if (loadTask == task) {
+                loadTask = null;
+                task.getException().printStackTrace();
+            }
+        });
+        loadTask = task;
+
+        Thread thread = new Thread(task, "directory-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Helper in load. Shows the subdirectories and images listed.
+     *
+     * @param result result of listing the directory
+     */
+    private void show(DirectoryScanner.ScanResult result) {
+        ArrayList<TreeItem<FileInfo>> children = new ArrayList<>();
+        for (File subdirectory : result.subDirectories) {
+            children.add(new LazyDirectoryTreeItem(subdirectory));
+        }
+        for (Image image : result.images) {
+            children.add(new TreeItem<>(new FileInfo(image)));
+        }
+        getChildren().setAll(children);
+    }
+
+    /**
+     * Cancels listing the directory and releases its content, including the content of expanded subdirectories.
+     */
+    void release() {
+        if (loadTask != null) {
+            loadTask.cancel();
+            loadTask = null;
+        }
+        for (TreeItem<FileInfo> child : getChildren()) {
+            if (child instanceof LazyDirectoryTreeItem) {
+                child.setExpanded(false);
+                ((LazyDirectoryTreeItem) child).release();
+            } else {
+                child.getValue().getImage().detachFromTags();
+                child.getValue().release();
+            }
+        }
+        getChildren().clear();
+    }
+}
@@ -0,0 +1,470 @@
+package pack.image;
+
+import pack.tag.Tag;
+import pack.tag.TagManager;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * On-disk snapshot of scanned directories, so a directory that has not changed since the last run does not have to be
+ * listed and parsed again. The catalog file is read through a memory-mapped buffer: opening it only reads the table
+ * of directories, and a directory's record is decoded when a scan asks for it. A record is only used if the
+ * modification time of its directory has not changed.
+ * <p>
+ * A mapped file cannot be replaced on every platform, so the catalog is kept in numbered generations next to the
+ * configured file, "library.catalog.1", "library.catalog.2" and so on: save writes the next generation under a new
+ * name and deletes the older ones it can, and open maps the latest one. The configured file itself, as written by
+ * earlier versions, is generation 0.
+ * <p>
+ * Layout, all numbers big-endian, strings as an unsigned short byte length followed by UTF-8 bytes:
+ * <pre>
+ * header     int magic, int version, int tag table offset, int directory table offset
+ * records    per directory: long modification time, int child count, then per child
+ *              byte 0 and name                                      for a subdirectory
+ *              byte 1, name, long modification time, original name,
+ *              int tag count, tag ids, int name count, past names    for an image
+ * tag table  int count, names; a tag id is the index of its name
+ * dir table  int count, then per directory: path, int record offset
+ * </pre>
+ */
+class LibraryCatalog {
+
+    /**
+     * First bytes of a catalog file.
+     */
+    private static final int MAGIC = 0x54504d43;
+
+    /**
+     * Version of the layout above.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Size of the header.
+     */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * Child type of a subdirectory.
+     */
+    private static final byte DIRECTORY = 0;
+
+    /**
+     * Child type of an image.
+     */
+    private static final byte IMAGE = 1;
+
+    /**
+     * Suffix of the temporary file a generation is written to.
+     */
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /**
+     * Content of the catalog file.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Names of the tags, indexed by tag id.
+     */
+    private final String[] tagNames;
+
+    /**
+     * Offset of the record of every directory, by path.
+     */
+    private final HashMap<String, Integer> recordOffsets;
+
+    private LibraryCatalog(ByteBuffer buffer, String[] tagNames, HashMap<String, Integer> recordOffsets) {
+        this.buffer = buffer;
+        this.tagNames = tagNames;
+        this.recordOffsets = recordOffsets;
+    }
+
+    /**
+     * Opens the latest generation of a catalog file.
+     *
+     * @param file catalog file as configured
+     * @return the catalog, or null if there is no generation of the file or it is not a catalog
+     */
+    static LibraryCatalog open(File file) {
+        TreeMap<Long, File> generations = listGenerations(file);
+        if (generations.isEmpty()) {
+            return null;
+        }
+        File latest = generations.lastEntry().getValue();
+        try (RandomAccessFile raf = new RandomAccessFile(latest, "r"); FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                return null;
+            }
+            ByteBuffer reader = buffer.duplicate();
+
+            reader.position(buffer.getInt(8));
+            String[] tagNames = new String[reader.getInt()];
+            for (int i = 0; i < tagNames.length; i++) {
+                tagNames[i] = readString(reader);
+            }
+
+            reader.position(buffer.getInt(12));
+            int directoryCount = reader.getInt();
+            HashMap<String, Integer> recordOffsets = new HashMap<>(directoryCount * 2);
+            for (int i = 0; i < directoryCount; i++) {
+                String path = readString(reader);
+                recordOffsets.put(path, reader.getInt());
+            }
+            return new LibraryCatalog(buffer, tagNames, recordOffsets);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Helper in open and save. Returns the generations of a catalog file that exist by number: the file itself as 0,
+     * then the files named after it with a dot and a number.
+     */
+    private static TreeMap<Long, File> listGenerations(File file) {
+        File absoluteFile = file.getAbsoluteFile();
+        String prefix = absoluteFile.getName() + ".";
+        TreeMap<Long, File> generations = new TreeMap<>();
+        File[] siblings = absoluteFile.getParentFile().listFiles();
+        if (siblings == null) {
+            return generations;
+        }
+        for (File sibling : siblings) {
+            if (!sibling.isFile()) {
+                continue;
+            }
+            if (sibling.equals(absoluteFile)) {
+                generations.put(0L, sibling);
+            } else if (sibling.getName().startsWith(prefix)) {
+                try {
+                    generations.put(Long.parseLong(sibling.getName().substring(prefix.length())), sibling);
+                } catch (NumberFormatException e) {
+                    // the temporary file of a generation, or not a generation at all
+                }
+            }
+        }
+        return generations;
+    }
+
+    /**
+     * Returns the record of a directory, whether or not the directory has changed since.
+     *
+     * @param directory directory being looked up
+     * @return the record, or null if the directory is not in this catalog
+     */
+    Entry lookup(File directory) {
+        Integer offset = recordOffsets.get(directory.getPath());
+        if (offset == null) {
+            return null;
+        }
+        ByteBuffer reader = buffer.duplicate();
+        reader.position(offset);
+        Entry entry = new Entry(reader.getLong());
+        int childCount = reader.getInt();
+        for (int i = 0; i < childCount; i++) {
+            byte type = reader.get();
+            String name = readString(reader);
+            if (type == DIRECTORY) {
+                entry.children.add(name);
+            } else {
+                ImageRecord record = new ImageRecord(name, reader.getLong(), readString(reader));
+                record.tagIds = new int[reader.getInt()];
+                for (int j = 0; j < record.tagIds.length; j++) {
+                    record.tagIds[j] = reader.getInt();
+                }
+                record.renamingList = new ArrayList<>();
+                int nameCount = reader.getInt();
+                for (int j = 0; j < nameCount; j++) {
+                    record.renamingList.add(readString(reader));
+                }
+                entry.children.add(record);
+                entry.images.put(name, record);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Builds the Image of a record.
+     *
+     * @param directory directory of the image
+     * @param record    record of the image
+     * @return the Image, with its tags and renaming history
+     */
+    Image toImage(File directory, ImageRecord record) {
+        ArrayList<Tag> tags = new ArrayList<>(record.tagIds.length);
+        for (int tagId : record.tagIds) {
+            tags.add(TagManager.getTag(tagNames[tagId]));
+        }
+        return new Image(new File(directory, record.name), record.lastModified, record.originalFilename, tags,
+                record.renamingList);
+    }
+
+    /**
+     * Writes a catalog of the given listings. Directories of the previous catalog are kept, except the ones listed
+     * again and, if the listings come from a recursive scan, the ones under its root. Images that are no longer loaded
+     * or have moved to another directory are left out. The catalog is written as a new generation, which appears
+     * complete or not at all, so the generation mapped by the previous catalog is never replaced; the older generations
+     * are then deleted where the platform allows it, and otherwise on a later save.
+     *
+     * @param file      catalog file as configured
+     * @param previous  catalog read at startup, may be null
+     * @param listings  listings of the last scan
+     * @param root      directory of the last scan
+     * @param recursive whether the last scan was recursive
+     * @param loaded    images currently loaded
+     * @throws IOException if the catalog can't be written
+     */
+    static void save(File file, LibraryCatalog previous, List<DirectoryListing> listings, File root,
+                     boolean recursive, Collection<Image> loaded) throws IOException {
+        TreeMap<Long, File> generations = listGenerations(file);
+        long generation = generations.isEmpty() ? 1 : generations.lastKey() + 1;
+        File generationFile = new File(file.getAbsoluteFile().getPath() + "." + generation);
+        File temporaryFile = new File(generationFile.getPath() + TEMPORARY_SUFFIX);
+        HashSet<Image> loadedImages = new HashSet<>(loaded);
+        Map<String, Integer> recordOffsets = new HashMap<>();
+        List<String> tagNames = new ArrayList<>();
+        Map<String, Integer> tagIds = new HashMap<>();
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporaryFile), 1 << 16))) {
+            out.write(new byte[HEADER_SIZE]);
+
+            // Copy the records of the previous catalog that are still valid, keeping its tag ids
+            if (previous != null) {
+                for (String tagName : previous.tagNames) {
+                    tagIds.put(tagName, tagNames.size());
+                    tagNames.add(tagName);
+                }
+                HashSet<String> listed = new HashSet<>();
+                for (DirectoryListing listing : listings) {
+                    listed.add(listing.directory.getPath());
+                }
+                String rootPrefix = root.getPath() + File.separator;
+                for (Map.Entry<String, Integer> record : previous.recordOffsets.entrySet()) {
+                    String path = record.getKey();
+                    if (listed.contains(path) || (recursive && path.startsWith(rootPrefix))) {
+                        continue;
+                    }
+                    recordOffsets.put(path, out.size());
+                    previous.copyRecord(record.getValue(), out);
+                }
+            }
+
+            // Write the records of the last scan
+            for (DirectoryListing listing : listings) {
+                recordOffsets.put(listing.directory.getPath(), out.size());
+                writeRecord(listing, loadedImages, tagNames, tagIds, out);
+            }
+
+            int tagTableOffset = out.size();
+            out.writeInt(tagNames.size());
+            for (String tagName : tagNames) {
+                writeString(tagName, out);
+            }
+            int directoryTableOffset = out.size();
+            out.writeInt(recordOffsets.size());
+            for (Map.Entry<String, Integer> record : recordOffsets.entrySet()) {
+                writeString(record.getKey(), out);
+                out.writeInt(record.getValue());
+            }
+            if (out.size() == Integer.MAX_VALUE) {
+                throw new IOException("Catalog is too large");
+            }
+            out.flush();
+
+            // Fill in the header
+            try (RandomAccessFile raf = new RandomAccessFile(temporaryFile, "rw")) {
+                raf.writeInt(MAGIC);
+                raf.writeInt(VERSION);
+                raf.writeInt(tagTableOffset);
+                raf.writeInt(directoryTableOffset);
+            }
+        } catch (IOException e) {
+            temporaryFile.delete();
+            throw e;
+        }
+        Files.move(temporaryFile.toPath(), generationFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        for (File older : generations.values()) {
+            // a generation still mapped cannot be deleted everywhere, and is left to a later save
+            older.delete();
+        }
+    }
+
+    /**
+     * Helper in save. Writes the record of a listing.
+     */
+    private static void writeRecord(DirectoryListing listing, HashSet<Image> loadedImages, List<String> tagNames,
+                                    Map<String, Integer> tagIds, DataOutputStream out) throws IOException {
+        ArrayList<Object> children = new ArrayList<>();
+        for (Object child : listing.children) {
+            if (child instanceof File) {
+                children.add(child);
+            } else {
+                Image image = (Image) child;
+                if (loadedImages.contains(image) && listing.directory.equals(image.getFile().getParentFile())) {
+                    children.add(image);
+                }
+            }
+        }
+
+        out.writeLong(listing.lastModified);
+        out.writeInt(children.size());
+        for (Object child : children) {
+            if (child instanceof File) {
+                out.writeByte(DIRECTORY);
+                writeString(((File) child).getName(), out);
+                continue;
+            }
+            Image image = (Image) child;
+            out.writeByte(IMAGE);
+            writeString(image.getFile().getName(), out);
+            out.writeLong(image.getLastModified());
+            writeString(image.getNameWithoutTags(), out);
+            out.writeInt(image.getAssignedTags().size());
+            for (Tag tag : image.getAssignedTags()) {
+                Integer tagId = tagIds.get(tag.getName());
+                if (tagId == null) {
+                    tagId = tagNames.size();
+                    tagIds.put(tag.getName(), tagId);
+                    tagNames.add(tag.getName());
+                }
+                out.writeInt(tagId);
+            }
+            out.writeInt(image.getRenamingList().size());
+            for (String pastName : image.getRenamingList()) {
+                writeString(pastName, out);
+            }
+        }
+    }
+
+    /**
+     * Helper in save. Copies a record of this catalog as is.
+     */
+    private void copyRecord(int offset, DataOutputStream out) throws IOException {
+        ByteBuffer reader = buffer.duplicate();
+        reader.position(offset);
+        reader.getLong();
+        int childCount = reader.getInt();
+        for (int i = 0; i < childCount; i++) {
+            byte type = reader.get();
+            skipString(reader);
+            if (type == IMAGE) {
+                reader.getLong();
+                skipString(reader);
+                int tagCount = reader.getInt();
+                reader.position(reader.position() + 4 * tagCount);
+                int nameCount = reader.getInt();
+                for (int j = 0; j < nameCount; j++) {
+                    skipString(reader);
+                }
+            }
+        }
+        byte[] record = new byte[reader.position() - offset];
+        reader.position(offset);
+        reader.get(record);
+        out.write(record);
+    }
+
+    private static String readString(ByteBuffer reader) {
+        byte[] bytes = new byte[reader.getShort() & 0xFFFF];
+        reader.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer reader) {
+        int length = reader.getShort() & 0xFFFF;
+        reader.position(reader.position() + length);
+    }
+
+    private static void writeString(String string, DataOutputStream out) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("Name is too long: " + string);
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Record of one directory.
+     */
+    static class Entry {
+
+        /**
+         * Modification time of the directory when it was recorded.
+         */
+        final long lastModified;
+
+        /**
+         * Subdirectory names (as String) and images (as ImageRecord), in listing order.
+         */
+        final ArrayList<Object> children = new ArrayList<>();
+
+        /**
+         * Images by file name.
+         */
+        final HashMap<String, ImageRecord> images = new HashMap<>();
+
+        private Entry(long lastModified) {
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Record of one image.
+     */
+    static class ImageRecord {
+
+        /**
+         * File name, with tags and extension.
+         */
+        final String name;
+
+        /**
+         * Modification time of the file.
+         */
+        final long lastModified;
+
+        /**
+         * File name without the tags.
+         */
+        final String originalFilename;
+
+        /**
+         * Ids of the tags, in assignment order.
+         */
+        int[] tagIds;
+
+        /**
+         * All names the image has had.
+         */
+        ArrayList<String> renamingList;
+
+        private ImageRecord(String name, long lastModified, String originalFilename) {
+            this.name = name;
+            this.lastModified = lastModified;
+            this.originalFilename = originalFilename;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package pack.image;
+
+/**
+ * Outcome of moving many images at once: how many files were moved, how many were copied across file systems, how
+ * many could not be moved, and how fast it went.
+ */
+public class MoveReport {
+
+    /**
+     * Number of files that had to be moved.
+     */
+    private final int planned;
+
+    /**
+     * Number of files moved.
+     */
+    private final int moved;
+
+    /**
+     * Number of files moved by copying them to another file system.
+     */
+    private final int copied;
+
+    /**
+     * Total size of the files moved, in bytes.
+     */
+    private final long bytes;
+
+    /**
+     * Time taken, in nanoseconds.
+     */
+    private final long nanos;
+
+    MoveReport(int planned, int moved, int copied, long bytes, long nanos) {
+        this.planned = planned;
+        this.moved = moved;
+        this.copied = copied;
+        this.bytes = bytes;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Returns the number of files moved.
+     *
+     * @return number of files moved
+     */
+    public int getMoved() {
+        return moved;
+    }
+
+    /**
+     * Returns the number of files moved by copying them to another file system.
+     *
+     * @return number of files copied
+     */
+    public int getCopied() {
+        return copied;
+    }
+
+    /**
+     * Returns the number of files that could not be moved, and were left where they were.
+     *
+     * @return number of failures
+     */
+    public int getFailed() {
+        return planned - moved;
+    }
+
+    /**
+     * Returns the total size of the files moved.
+     *
+     * @return size in bytes
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the number of bytes moved per second.
+     *
+     * @return bytes per second, 0 if nothing was moved
+     */
+    public double getBytesPerSecond() {
+        return nanos <= 0 ? 0 : bytes * 1e9 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Moved %d files (%.1f MB, %d copied to another disk) in %.2f s, %.1f MB/s.%s",
+                moved, bytes / 1e6, copied, nanos / 1e9, getBytesPerSecond() / 1e6,
+                getFailed() > 0 ? " " + getFailed() + " files could not be moved." : "");
+    }
+}
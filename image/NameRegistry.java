@@ -0,0 +1,192 @@
+package pack.image;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+/**
+ * Names of the files of every directory files are renamed or moved in, so a free name is picked without asking the
+ * disk whether each try exists. The names of a directory are filled in when a scan lists it, or listed the first time
+ * a name is needed there, and kept up to date by the renamings and moves of this program and the changes seen by the
+ * directory watcher. A move fails rather than replace a file that took the name picked meanwhile, and the first try is
+ * looked up on the disk when it seems taken, so a name freed behind the back of the registry is still used. Safe to use
+ * from several threads.
+ */
+class NameRegistry {
+
+    /**
+     * Names of the files of a directory, by directory.
+     */
+    private static final ConcurrentHashMap<File, Names> names = new ConcurrentHashMap<>();
+
+    /**
+     * Records the names of the files of a directory, when a scan has listed it.
+     *
+     * @param directory directory listed
+     * @param files     every file of the directory, hidden ones included
+     */
+    static void register(File directory, File[] files) {
+        Names listed = new Names();
+        for (File file : files) {
+            listed.taken.add(file.getName());
+        }
+        names.put(directory, listed);
+    }
+
+    /**
+     * Records a file that appeared, if the names of its directory are known.
+     *
+     * @param file file created
+     */
+    static void register(File file) {
+        Names known = names.get(file.getParentFile());
+        if (known != null) {
+            known.taken.add(file.getName());
+        }
+    }
+
+    /**
+     * Forgets a file that is gone, if the names of its directory are known and the name is not claimed.
+     *
+     * @param file file deleted or moved away
+     */
+    static void forget(File file) {
+        Names known = names.get(file.getParentFile());
+        if (known != null && !known.claimed.contains(file.getName())) {
+            known.taken.remove(file.getName());
+        }
+    }
+
+    /**
+     * Forgets a name claimed but not used, if the names of its directory are known.
+     *
+     * @param file file never created
+     */
+    static void release(File file) {
+        Names known = names.get(file.getParentFile());
+        if (known != null) {
+            known.claimed.remove(file.getName());
+            known.taken.remove(file.getName());
+        }
+    }
+
+    /**
+     * Records a file moved to a claimed name.
+     *
+     * @param source file before the move
+     * @param target file after the move
+     */
+    static void moved(File source, File target) {
+        forget(source);
+        settle(target);
+    }
+
+    /**
+     * Picks the first free name of a directory among tries, and claims it so it is not picked again until it is
+     * released or the file is moved.
+     *
+     * @param directory directory the name is for
+     * @param candidate file name of every try, from try 0 on
+     * @return name claimed
+     */
+    static String claim(File directory, IntFunction<String> candidate) {
+        Names known = names.computeIfAbsent(directory, NameRegistry::list);
+        String name = candidate.apply(0);
+        // the name wanted most may have been freed behind the back of the registry, unless it is claimed
+        if (!known.taken.add(name) && (known.claimed.contains(name) || new File(directory, name).exists())) {
+            int tries = 1;
+            while (!known.taken.add(name = candidate.apply(tries))) {
+                tries++;
+            }
+        }
+        known.claimed.add(name);
+        return name;
+    }
+
+    /**
+     * Moves a file to the first free name of a directory among tries, never replacing a file. The move itself fails if
+     * the name picked was taken behind the back of the registry, and the name is then kept as taken and the next one
+     * tried, so no file appearing meanwhile is overwritten. Within a file system the file is renamed in one step;
+     * across file systems it is copied and deleted.
+     *
+     * @param source    file being moved
+     * @param directory directory it is moved to, may be its own
+     * @param candidate file name of every try, from try 0 on
+     * @return the file after the move, or null if it could not be moved
+     */
+    static File move(File source, File directory, IntFunction<String> candidate) {
+        while (true) {
+            File target = new File(directory, claim(directory, candidate));
+            try {
+                // without ATOMIC_MOVE, which would replace a file there on POSIX, the move fails if the name is taken
+                Files.move(source.toPath(), target.toPath());
+            } catch (FileAlreadyExistsException e) {
+                settle(target);
+                continue;
+            } catch (InvalidPathException e) {
+                // the name cannot be a path where file names are not Unicode, but the file can still be renamed
+                if (target.exists()) {
+                    settle(target);
+                    continue;
+                }
+                if (!source.renameTo(target)) {
+                    release(target);
+                    return null;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                release(target);
+                return null;
+            }
+            moved(source, target);
+            return target;
+        }
+    }
+
+    /**
+     * Forgets the names of every directory, when the directory shown changes.
+     */
+    static void clear() {
+        names.clear();
+    }
+
+    /**
+     * Keeps a claimed name as taken by a file that is there, whether it was moved there or was there already.
+     *
+     * @param file file that is there
+     */
+    static void settle(File file) {
+        Names known = names.get(file.getParentFile());
+        if (known != null) {
+            known.claimed.remove(file.getName());
+        }
+    }
+
+    /**
+     * Helper in claim. Lists the names of the files of a directory.
+     */
+    private static Names list(File directory) {
+        Names listed = new Names();
+        String[] fileNames = directory.list();
+        if (fileNames != null) {
+            listed.taken.addAll(Arrays.asList(fileNames));
+        }
+        return listed;
+    }
+
+    /**
+     * Names of the files of one directory, and the ones among them claimed for files not moved there yet.
+     */
+    private static class Names {
+
+        private final Set<String> taken = ConcurrentHashMap.newKeySet();
+
+        private final Set<String> claimed = ConcurrentHashMap.newKeySet();
+    }
+}
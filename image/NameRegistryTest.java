@@ -0,0 +1,77 @@
+package pack.image;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test Class for NameRegistry.
+ */
+class NameRegistryTest {
+
+    /**
+     * Directory the test files are made in.
+     */
+    @TempDir
+    File directory;
+
+    /**
+     * Forgets the names of the test directory after every test.
+     */
+    @AfterEach
+    void tearDown() {
+        NameRegistry.clear();
+    }
+
+    /**
+     * Tests to see if names are numbered past the taken ones, and claimed names are not picked twice.
+     */
+    @Test
+    void claimsFreeNames() throws IOException {
+        assertTrue(new File(directory, "a.jpg").createNewFile());
+        assertTrue(new File(directory, "a(1).jpg").createNewFile());
+
+        assertEquals("a(2).jpg", NameRegistry.claim(directory, tries -> name("a", tries)));
+        assertEquals("a(3).jpg", NameRegistry.claim(directory, tries -> name("a", tries)));
+        NameRegistry.release(new File(directory, "a(2).jpg"));
+        assertEquals("a(2).jpg", NameRegistry.claim(directory, tries -> name("a", tries)));
+        assertEquals("b.jpg", NameRegistry.claim(directory, tries -> name("b", tries)));
+    }
+
+    /**
+     * Tests to see if a file is moved to a free name, never onto a file created behind the back of the registry, and
+     * if a name freed behind its back is used again.
+     */
+    @Test
+    void movesWithoutReplacing() throws IOException {
+        File source = new File(directory, "photo.jpg");
+        assertTrue(source.createNewFile());
+        File moved = NameRegistry.move(source, directory, tries -> name("beach", tries));
+        assertEquals(new File(directory, "beach.jpg"), moved);
+
+        File sneaked = new File(directory, "beach(1).jpg");
+        assertTrue(sneaked.createNewFile());
+        File other = new File(directory, "other.jpg");
+        assertTrue(other.createNewFile());
+        File movedAgain = NameRegistry.move(other, directory, tries -> name("beach", tries));
+        assertEquals(new File(directory, "beach(2).jpg"), movedAgain);
+        assertTrue(sneaked.exists());
+
+        assertTrue(moved.renameTo(source));
+        assertEquals(new File(directory, "beach.jpg"),
+                NameRegistry.move(movedAgain, directory, tries -> name("beach", tries)));
+        assertNull(NameRegistry.move(new File(directory, "missing.jpg"), directory, tries -> name("gone", tries)));
+    }
+
+    /**
+     * Helper making the file name of a try.
+     */
+    private static String name(String base, int tries) {
+        return (tries == 0 ? base : base + "(" + tries + ")") + ".jpg";
+    }
+}
@@ -0,0 +1,69 @@
+package pack.image;
+
+import javafx.concurrent.Task;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.VBox;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+
+/**
+ * Window following a task that changes files in the background. It is modal to the whole application and cannot be
+ * closed by the user, so the Images and tags the task works on cannot be changed, nor another directory shown, until
+ * the task is done.
+ */
+public class ProgressWindow {
+
+    /**
+     * Stage of the window.
+     */
+    private final Stage stage = new Stage(StageStyle.UTILITY);
+
+    /**
+     * Task followed.
+     */
+    private final Task<?> task;
+
+    /**
+     * Constructs a ProgressWindow showing the progress and message of a task.
+     *
+     * @param title title of the window
+     * @param task  task followed
+     */
+    public ProgressWindow(String title, Task<?> task) {
+        this.task = task;
+        ProgressBar progressBar = new ProgressBar();
+        progressBar.setPrefWidth(300);
+        progressBar.progressProperty().bind(task.progressProperty());
+        Label progressLabel = new Label();
+        progressLabel.textProperty().bind(task.messageProperty());
+        VBox root = new VBox(10, progressLabel, progressBar);
+        root.setPadding(new Insets(10));
+        stage.setTitle(title);
+        stage.initModality(Modality.APPLICATION_MODAL);
+        stage.setOnCloseRequest(event -> event.consume());
+        stage.setScene(new Scene(root));
+    }
+
+    /**
+     * Shows the window, then starts the task on a background thread.
+     *
+     * @param threadName name of the thread running the task
+     */
+    public void start(String threadName) {
+        stage.show();
+        Thread thread = new Thread(task, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Closes the window, once the task is done.
+     */
+    public void close() {
+        stage.close();
+    }
+}
@@ -0,0 +1,144 @@
+package pack.image;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Outcome of tagging many images at once: how many files were renamed, how many could not be, and how fast it went.
+ * When any file could not be renamed, the files already renamed were renamed back and the images kept their tags.
+ * When tags were replaced on all images, which cannot be undone, the files that could not be renamed are listed.
+ */
+public class RenameReport {
+
+    /**
+     * Number of files named by toString at most.
+     */
+    private static final int MAX_LISTED_FILES = 20;
+
+    /**
+     * Number of files that had to be renamed.
+     */
+    private final int planned;
+
+    /**
+     * Number of files left with their new name.
+     */
+    private final int renamed;
+
+    /**
+     * Number of files that could not be renamed.
+     */
+    private final int failed;
+
+    /**
+     * Number of files renamed back after a failure.
+     */
+    private final int rolledBack;
+
+    /**
+     * Files whose name does not match the tags of their Image, because they could not be renamed.
+     */
+    private final List<File> outOfSync;
+
+    /**
+     * Time taken, in nanoseconds.
+     */
+    private final long nanos;
+
+    RenameReport(int planned, int renamed, int failed, int rolledBack, List<File> outOfSync, long nanos) {
+        this.planned = planned;
+        this.renamed = renamed;
+        this.failed = failed;
+        this.rolledBack = rolledBack;
+        this.outOfSync = outOfSync;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Returns the number of files that had to be renamed.
+     *
+     * @return number of files that had to be renamed
+     */
+    public int getPlanned() {
+        return planned;
+    }
+
+    /**
+     * Returns the number of files left with their new name: all of them unless something failed, and after a failure
+     * only those that could not be renamed back.
+     *
+     * @return number of files renamed
+     */
+    public int getRenamed() {
+        return renamed;
+    }
+
+    /**
+     * Returns the number of files that could not be renamed.
+     *
+     * @return number of failures
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * Returns the number of files renamed back after a failure.
+     *
+     * @return number of files renamed back
+     */
+    public int getRolledBack() {
+        return rolledBack;
+    }
+
+    /**
+     * Returns the files whose name does not match the tags of their Image, because they could not be renamed when
+     * tags were replaced on all images. Empty when the images were given back their tags instead.
+     *
+     * @return files left out of sync with their Image
+     */
+    public List<File> getOutOfSync() {
+        return outOfSync;
+    }
+
+    /**
+     * Returns whether every file was renamed.
+     *
+     * @return True if nothing failed
+     */
+    public boolean isComplete() {
+        return failed == 0;
+    }
+
+    /**
+     * Returns the number of files renamed, or renamed and renamed back, per second.
+     *
+     * @return files per second, 0 if nothing was renamed
+     */
+    public double getFilesPerSecond() {
+        int moves = planned - failed + rolledBack;
+        return nanos <= 0 ? 0 : moves * 1e9 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        String time = String.format("%.2f s (%.0f files/s)", nanos / 1e9, getFilesPerSecond());
+        if (isComplete()) {
+            return "Renamed " + renamed + " files in " + time + ".";
+        }
+        if (!outOfSync.isEmpty()) {
+            StringBuilder files = new StringBuilder();
+            for (int i = 0; i < Math.min(outOfSync.size(), MAX_LISTED_FILES); i++) {
+                files.append("\n").append(outOfSync.get(i));
+            }
+            if (outOfSync.size() > MAX_LISTED_FILES) {
+                files.append("\nand ").append(outOfSync.size() - MAX_LISTED_FILES).append(" more");
+            }
+            return failed + " of " + planned + " files could not be renamed, so their names do not match the tags of"
+                    + " their images:" + files;
+        }
+        return failed + " of " + planned + " files could not be renamed, so " + rolledBack
+                + " were renamed back and the tags left as they were"
+                + (renamed > 0 ? ", but " + renamed + " could not be renamed back" : "") + ". Took " + time + ".";
+    }
+}
@@ -0,0 +1,201 @@
+package pack.image;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of scan results, so going back to a recently visited directory does not walk the disk
+ * again. Results are keyed by canonical path and view mode. A cached result is only used if none of the directories
+ * it lists has been modified since it was cached, and is dropped as soon as a watched change touches one of them.
+ */
+class ScanCache {
+
+    /**
+     * Rough memory used by one cached image with its names, tags and list entries, in bytes.
+     */
+    private static final long BYTES_PER_IMAGE = 1024;
+
+    /**
+     * Maximum number of cached results.
+     */
+    private static int maxEntries = 16;
+
+    /**
+     * Maximum memory used by cached results, in bytes.
+     */
+    private static long maxBytes = 256L << 20;
+
+    /**
+     * Cached results, least recently used first.
+     */
+    private static final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Number of images in all cached results.
+     */
+    private static long cachedImages;
+
+    /**
+     * Sets the limits of this cache, evicting results if needed. Values below 0 are ignored.
+     *
+     * @param entryLimit    maximum number of cached results, 0 disables the cache
+     * @param megabyteLimit maximum memory used by cached results, in megabytes
+     */
+    static synchronized void configure(int entryLimit, int megabyteLimit) {
+        if (entryLimit >= 0) {
+            maxEntries = entryLimit;
+        }
+        if (megabyteLimit >= 0) {
+            maxBytes = (long) megabyteLimit << 20;
+        }
+        evict();
+    }
+
+    /**
+     * Returns the maximum number of cached results.
+     *
+     * @return maximum number of cached results
+     */
+    static synchronized int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Returns the maximum memory used by cached results.
+     *
+     * @return maximum memory in megabytes
+     */
+    static synchronized int getMaxMegabytes() {
+        return (int) (maxBytes >> 20);
+    }
+
+    /**
+     * Caches the result of a scan that is no longer shown.
+     *
+     * @param directory directory scanned
+     * @param recursive whether the scan was recursive
+     * @param result    images and subdirectories as they were last shown
+     * @param watched   True if changes to the directories were applied to the result while it was shown, so it is
+     *                  up to date with their current modification times
+     */
+    static synchronized void put(File directory, boolean recursive, DirectoryScanner.ScanResult result,
+                                 boolean watched) {
+        if (maxEntries == 0 || result.images.size() * BYTES_PER_IMAGE > maxBytes) {
+            return;
+        }
+        Entry entry = new Entry(result);
+        for (DirectoryListing listing : result.listings) {
+            long lastModified = watched ? listing.directory.lastModified() : listing.lastModified;
+            entry.lastModified.put(listing.directory, lastModified);
+        }
+        remove(entries.put(key(directory, recursive), entry));
+        cachedImages += result.images.size();
+        evict();
+    }
+
+    /**
+     * Takes the cached result of a directory out of this cache, if it is still valid.
+     *
+     * @param directory directory being scanned
+     * @param recursive whether the scan is recursive
+     * @return the cached result, or null if there is none or a listed directory has been modified since
+     */
+    static synchronized DirectoryScanner.ScanResult take(File directory, boolean recursive) {
+        Entry entry = entries.remove(key(directory, recursive));
+        if (entry == null) {
+            return null;
+        }
+        remove(entry);
+        for (Map.Entry<File, Long> listed : entry.lastModified.entrySet()) {
+            if (listed.getKey().lastModified() != listed.getValue()) {
+                return null;
+            }
+        }
+        return entry.result;
+    }
+
+    /**
+     * Drops the cached results listing any of the given directories.
+     *
+     * @param directories directories that have changed
+     */
+    static synchronized void invalidate(Collection<File> directories) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            for (File changed : directories) {
+                if (entry.lastModified.containsKey(changed)) {
+                    remove(entry);
+                    iterator.remove();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops all cached results.
+     */
+    static synchronized void clear() {
+        entries.clear();
+        cachedImages = 0;
+    }
+
+    /**
+     * Helper evicting the least recently used results until the limits are respected.
+     */
+    private static void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext() && (entries.size() > maxEntries || cachedImages * BYTES_PER_IMAGE > maxBytes)) {
+            remove(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Helper updating the image count after an entry has left this cache.
+     */
+    private static void remove(Entry entry) {
+        if (entry != null) {
+            cachedImages -= entry.result.images.size();
+        }
+    }
+
+    /**
+     * Helper building the key of a scan.
+     */
+    private static String key(File directory, boolean recursive) {
+        String path;
+        try {
+            path = directory.getCanonicalPath();
+        } catch (IOException e) {
+            path = directory.getAbsolutePath();
+        }
+        return (recursive ? "viewAll:" : "viewTree:") + path;
+    }
+
+    /**
+     * A cached result.
+     */
+    private static class Entry {
+
+        /**
+         * Images and subdirectories of the scan.
+         */
+        final DirectoryScanner.ScanResult result;
+
+        /**
+         * Modification time every listed directory had when the result was cached.
+         */
+        final HashMap<File, Long> lastModified = new HashMap<>();
+
+        Entry(DirectoryScanner.ScanResult result) {
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package pack.image;
+
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.OverrunStyle;
+import javafx.scene.image.ImageView;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Grid of thumbnails of the files shown. The grid is a ListView whose rows hold as many tiles as fit in its width,
+ * so only the rows on screen have cells, and cells are reused while scrolling. Tiles request their thumbnails in the
+ * background, on screen first, and the next row is prefetched at a lower priority.
+ */
+class ThumbnailGrid extends ListView<List<FileInfo>> {
+
+    /**
+     * Width and height of a tile, in pixels.
+     */
+    private static final double TILE_SIZE = 140;
+
+    /**
+     * Number of rows after a row whose thumbnails are prefetched.
+     */
+    private static final int PREFETCH_ROWS = 1;
+
+    /**
+     * Files shown, in order.
+     */
+    private List<FileInfo> files = Collections.emptyList();
+
+    /**
+     * Number of tiles per row.
+     */
+    private int columns = 1;
+
+    /**
+     * File selected, null if none.
+     */
+    private FileInfo selected;
+
+    /**
+     * Called when a file is selected.
+     */
+    private final Consumer<FileInfo> onSelect;
+
+    /**
+     * Called when a file is double clicked.
+     */
+    private final Consumer<FileInfo> onOpen;
+
+    /**
+     * Menu shown when an image is right clicked.
+     */
+    private final ContextMenu imageMenu;
+
+    /**
+     * Constructs an empty ThumbnailGrid.
+     *
+     * @param onSelect  called when a file is selected
+     * @param onOpen    called when a file is double clicked
+     * @param imageMenu menu shown when an image is right clicked
+     */
+    ThumbnailGrid(Consumer<FileInfo> onSelect, Consumer<FileInfo> onOpen, ContextMenu imageMenu) {
+        this.onSelect = onSelect;
+        this.onOpen = onOpen;
+        this.imageMenu = imageMenu;
+        setFixedCellSize(TILE_SIZE);
+        setCellFactory(list -> new RowCell());
+        // rows are laid out again only when the number of tiles that fit changes
+        widthProperty().addListener((observable, oldWidth, width) -> {
+            int fitting = Math.max(1, (int) ((width.doubleValue() - 20) / TILE_SIZE));
+            if (fitting != columns) {
+                columns = fitting;
+                layOutRows();
+            }
+        });
+    }
+
+    /**
+     * Shows files in this grid.
+     *
+     * @param shownFiles files shown, in order
+     */
+    void setFiles(List<FileInfo> shownFiles) {
+        files = shownFiles;
+        if (selected != null && !shownFiles.contains(selected)) {
+            selected = null;
+        }
+        layOutRows();
+    }
+
+    /**
+     * Helper splitting the files shown into rows.
+     */
+    private void layOutRows() {
+        ArrayList<List<FileInfo>> rows = new ArrayList<>((files.size() + columns - 1) / columns);
+        for (int i = 0; i < files.size(); i += columns) {
+            rows.add(files.subList(i, Math.min(i + columns, files.size())));
+        }
+        getItems().setAll(rows);
+    }
+
+    /**
+     * Helper selecting a file, and showing which one is selected.
+     */
+    private void select(FileInfo fileInfo) {
+        selected = fileInfo;
+        onSelect.accept(fileInfo);
+        refresh();
+    }
+
+    /**
+     * Cell showing one row of tiles.
+     */
+    private class RowCell extends ListCell<List<FileInfo>> {
+
+        private final HBox box = new HBox();
+
+        private final ArrayList<Tile> tiles = new ArrayList<>();
+
+        /**
+         * Prefetch requests of the rows after this row.
+         */
+        private final ArrayList<ThumbnailService.Request> prefetches = new ArrayList<>();
+
+        RowCell() {
+            setGraphic(box);
+            setPadding(Insets.EMPTY);
+        }
+
+        @Override
+        protected void updateItem(List<FileInfo> row, boolean empty) {
+            super.updateItem(row, empty);
+            for (ThumbnailService.Request request : prefetches) {
+                request.cancel();
+            }
+            prefetches.clear();
+
+            int shown = empty || row == null ? 0 : row.size();
+            while (tiles.size() < shown) {
+                Tile tile = new Tile();
+                tiles.add(tile);
+                box.getChildren().add(tile);
+            }
+            for (int i = 0; i < tiles.size(); i++) {
+                tiles.get(i).show(i < shown ? row.get(i) : null);
+            }
+            if (shown > 0) {
+                prefetch(getIndex());
+            }
+        }
+
+        /**
+         * Helper in updateItem. Requests the thumbnails of the rows after this row at a low priority.
+         */
+        private void prefetch(int index) {
+            List<List<FileInfo>> rows = getItems();
+            for (int next = index + 1; next <= index + PREFETCH_ROWS && next < rows.size(); next++) {
+                for (FileInfo fileInfo : rows.get(next)) {
+                    if (fileInfo.isImage() && ThumbnailService.getCached(fileInfo.getImage()) == null) {
+                        prefetches.add(ThumbnailService.request(fileInfo.getImage(),
+                                ThumbnailService.PRIORITY_PREFETCH, thumbnail -> {
+                                }));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Tile showing the thumbnail and the name of a file.
+     */
+    private class Tile extends VBox {
+
+        private final ImageView view = new ImageView();
+
+        private final Label label = new Label();
+
+        /**
+         * File shown, null if the tile is empty.
+         */
+        private FileInfo fileInfo;
+
+        /**
+         * Request for the thumbnail shown, null if there is none pending.
+         */
+        private ThumbnailService.Request request;
+
+        Tile() {
+            setAlignment(Pos.CENTER);
+            setPrefSize(TILE_SIZE, TILE_SIZE);
+            setMinSize(TILE_SIZE, TILE_SIZE);
+            view.setFitWidth(TILE_SIZE - 16);
+            view.setFitHeight(TILE_SIZE - 36);
+            view.setPreserveRatio(true);
+            label.setMaxWidth(TILE_SIZE - 8);
+            label.setTextOverrun(OverrunStyle.CENTER_ELLIPSIS);
+            getChildren().addAll(view, label);
+
+            setOnMouseClicked(event -> {
+                if (fileInfo == null) {
+                    return;
+                }
+                select(fileInfo);
+                if (event.getButton() == MouseButton.SECONDARY && fileInfo.isImage()) {
+                    imageMenu.show(this, event.getScreenX(), event.getScreenY());
+                } else if (event.getClickCount() == 2) {
+                    onOpen.accept(fileInfo);
+                }
+            });
+        }
+
+        /**
+         * Shows a file in this tile, taking its thumbnail from memory or requesting it.
+         *
+         * @param shownFile file to be shown, null to empty this tile
+         */
+        void show(FileInfo shownFile) {
+            setVisible(shownFile != null);
+            setStyle(shownFile != null && shownFile == selected ? "-fx-background-color: -fx-selection-bar;" : "");
+            if (shownFile == fileInfo && (shownFile == null || view.getImage() != null || request != null)) {
+                return;
+            }
+            if (request != null) {
+                request.cancel();
+                request = null;
+            }
+            fileInfo = shownFile;
+            label.textProperty().unbind();
+            if (shownFile == null) {
+                view.setImage(null);
+                label.setText(null);
+                return;
+            }
+            label.textProperty().bind(shownFile.nameProperty());
+            if (!shownFile.isImage()) {
+                view.setImage(ImageManagerUIController.FOLDER_ICON);
+                return;
+            }
+            Image image = shownFile.getImage();
+            view.setImage(ThumbnailService.getCached(image));
+            if (view.getImage() == null) {
+                request = ThumbnailService.request(image, ThumbnailService.PRIORITY_VISIBLE,
+                        thumbnail -> Platform.runLater(() -> {
+                            if (fileInfo == shownFile) {
+                                view.setImage(thumbnail);
+                            }
+                        }));
+            }
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package pack.image;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Builds and caches thumbnails of images. Thumbnails are decoded downscaled on a small pool of background threads,
+ * kept in memory in a least recently used cache with a byte budget, and stored on disk keyed by the path, size and
+ * modification time of the image, so they survive restarts and are rebuilt once the image changes. Requests with a
+ * higher priority are decoded first, and among equal priorities the most recent request is decoded first.
+ */
+class ThumbnailService {
+
+    /**
+     * Longest side of a thumbnail, in pixels.
+     */
+    static final int THUMBNAIL_SIZE = 256;
+
+    /**
+     * Priority of a thumbnail that is on screen.
+     */
+    static final int PRIORITY_VISIBLE = 1;
+
+    /**
+     * Priority of a thumbnail that is prefetched.
+     */
+    static final int PRIORITY_PREFETCH = 0;
+
+    /**
+     * Directory of the thumbnails stored on disk, null if they are only kept in memory.
+     */
+    private static File storeDirectory;
+
+    /**
+     * Maximum memory used by cached thumbnails, in bytes.
+     */
+    private static long maxMemoryBytes = 64L << 20;
+
+    /**
+     * Maximum disk space used by stored thumbnails, in bytes.
+     */
+    private static long maxDiskBytes = 512L << 20;
+
+    /**
+     * Thumbnails in memory by image path, least recently used first.
+     */
+    private static final LinkedHashMap<String, Cached> memory = new LinkedHashMap<>(256, 0.75f, true);
+
+    /**
+     * Memory used by the thumbnails in memory, in bytes.
+     */
+    private static long memoryBytes;
+
+    /**
+     * Order in which requests were made.
+     */
+    private static final AtomicLong requestSequence = new AtomicLong();
+
+    /**
+     * Threads decoding thumbnails, taking the most urgent request first.
+     */
+    private static final ThreadPoolExecutor workers = new ThreadPoolExecutor(
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+            30, TimeUnit.SECONDS, new PriorityBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "thumbnail-worker");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    static {
+        workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Sets where thumbnails are stored and how much memory and disk space they may use. Stored thumbnails over the
+     * disk budget are pruned in the background, least recently used first. Limits below 0 are ignored.
+     *
+     * @param directory       directory of the stored thumbnails, null to only keep them in memory
+     * @param memoryMegabytes maximum memory used by cached thumbnails, in megabytes
+     * @param diskMegabytes   maximum disk space used by stored thumbnails, in megabytes
+     */
+    static synchronized void configure(File directory, int memoryMegabytes, int diskMegabytes) {
+        storeDirectory = directory;
+        if (memoryMegabytes >= 0) {
+            maxMemoryBytes = (long) memoryMegabytes << 20;
+            evict();
+        }
+        if (diskMegabytes >= 0) {
+            maxDiskBytes = (long) diskMegabytes << 20;
+        }
+        if (storeDirectory != null) {
+            File pruned = storeDirectory;
+            long budget = maxDiskBytes;
+            workers.execute(new Request(Integer.MIN_VALUE, () -> prune(pruned, budget)));
+        }
+    }
+
+    /**
+     * Returns the maximum memory used by cached thumbnails.
+     *
+     * @return maximum memory in megabytes
+     */
+    static synchronized int getMaxMemoryMegabytes() {
+        return (int) (maxMemoryBytes >> 20);
+    }
+
+    /**
+     * Returns the maximum disk space used by stored thumbnails.
+     *
+     * @return maximum disk space in megabytes
+     */
+    static synchronized int getMaxDiskMegabytes() {
+        return (int) (maxDiskBytes >> 20);
+    }
+
+    /**
+     * Returns the thumbnail of an image if it is in memory, without touching the disk.
+     *
+     * @param image image whose thumbnail is wanted
+     * @return the thumbnail, or null if it is not in memory or the image has changed since
+     */
+    static synchronized javafx.scene.image.Image getCached(Image image) {
+        Cached cached = memory.get(image.getFile().getPath());
+        if (cached == null || cached.lastModified != image.getLastModified()) {
+            return null;
+        }
+        return cached.thumbnail;
+    }
+
+    /**
+     * Requests the thumbnail of an image. The thumbnail is taken from memory, from disk, or decoded from the image,
+     * on a background thread.
+     *
+     * @param image    image whose thumbnail is wanted
+     * @param priority PRIORITY_VISIBLE or PRIORITY_PREFETCH
+     * @param onLoaded called on the background thread with the thumbnail, unless the request is cancelled or the
+     *                 image cannot be decoded
+     * @return the request, which can be cancelled once the thumbnail is no longer wanted
+     */
+    static Request request(Image image, int priority, Consumer<javafx.scene.image.Image> onLoaded) {
+        File file = image.getFile();
+        Request request = new Request(priority, null);
+        request.work = () -> {
+            javafx.scene.image.Image thumbnail = load(file);
+            if (thumbnail != null && !request.isCancelled()) {
+                onLoaded.accept(thumbnail);
+            }
+        };
+        workers.execute(request);
+        return request;
+    }
+
+    /**
+     * Loads the thumbnail of an image file on the calling thread.
+     *
+     * @param file image file
+     * @return the thumbnail, or null if the file cannot be decoded
+     */
+    static javafx.scene.image.Image load(File file) {
+        long lastModified = file.lastModified();
+        String path = file.getPath();
+        synchronized (ThumbnailService.class) {
+            Cached cached = memory.get(path);
+            if (cached != null && cached.lastModified == lastModified) {
+                return cached.thumbnail;
+            }
+        }
+
+        File stored = storedFile(file, lastModified);
+        javafx.scene.image.Image thumbnail = null;
+        if (stored != null && stored.isFile()) {
+            thumbnail = new javafx.scene.image.Image(stored.toURI().toString(), false);
+            if (thumbnail.isError()) {
+                thumbnail = null;
+            } else {
+                // keep recently used thumbnails from being pruned
+                stored.setLastModified(System.currentTimeMillis());
+            }
+        }
+        if (thumbnail == null) {
+            thumbnail = new javafx.scene.image.Image(file.toURI().toString(), THUMBNAIL_SIZE, THUMBNAIL_SIZE,
+                    true, true, false);
+            if (thumbnail.isError() || thumbnail.getWidth() == 0) {
+                return null;
+            }
+            if (stored != null) {
+                store(thumbnail, stored);
+            }
+        }
+
+        synchronized (ThumbnailService.class) {
+            Cached previous = memory.put(path, new Cached(thumbnail, lastModified));
+            if (previous != null) {
+                memoryBytes -= previous.bytes;
+            }
+            memoryBytes += bytes(thumbnail);
+            evict();
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Drops all thumbnails in memory.
+     */
+    static synchronized void clear() {
+        memory.clear();
+        memoryBytes = 0;
+    }
+
+    /**
+     * Helper evicting the least recently used thumbnails until the memory budget is respected.
+     */
+    private static void evict() {
+        Iterator<Cached> iterator = memory.values().iterator();
+        while (memoryBytes > maxMemoryBytes && iterator.hasNext()) {
+            memoryBytes -= iterator.next().bytes;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Helper returning the memory used by a decoded thumbnail.
+     */
+    private static long bytes(javafx.scene.image.Image thumbnail) {
+        return (long) thumbnail.getWidth() * (long) thumbnail.getHeight() * 4;
+    }
+
+    /**
+     * Helper in load. Returns the file storing the thumbnail of an image, named by a hash of the path, size and
+     * modification time of the image.
+     *
+     * @return the stored file, or null if thumbnails are not stored on disk
+     */
+    private static File storedFile(File file, long lastModified) {
+        File directory;
+        synchronized (ThumbnailService.class) {
+            directory = storeDirectory;
+        }
+        if (directory == null) {
+            return null;
+        }
+        String key = file.getAbsolutePath() + '\0' + file.length() + '\0' + lastModified;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return new File(directory, name.append(".thumb").toString());
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Helper in load. Stores a thumbnail on disk, as JPEG if it is opaque and as PNG otherwise. The file is written
+     * under a temporary name and moved into place, so a stored thumbnail is never partly written.
+     */
+    private static void store(javafx.scene.image.Image thumbnail, File stored) {
+        int width = (int) thumbnail.getWidth();
+        int height = (int) thumbnail.getHeight();
+        int[] pixels = new int[width * height];
+        PixelReader reader = thumbnail.getPixelReader();
+        if (reader == null) {
+            return;
+        }
+        reader.getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        boolean opaque = true;
+        for (int pixel : pixels) {
+            if ((pixel >>> 24) != 0xFF) {
+                opaque = false;
+                break;
+            }
+        }
+        BufferedImage image = new BufferedImage(width, height,
+                opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+
+        File temporary = new File(stored.getPath() + ".tmp");
+        try {
+            Files.createDirectories(stored.getParentFile().toPath());
+            if (ImageIO.write(image, opaque ? "jpg" : "png", temporary)) {
+                Files.move(temporary.toPath(), stored.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            temporary.delete();
+        }
+    }
+
+    /**
+     * Helper in configure. Deletes the least recently used stored thumbnails until the disk budget is respected.
+     */
+    private static void prune(File directory, long budget) {
+        File[] stored = directory.listFiles((dir, name) -> name.endsWith(".thumb"));
+        if (stored == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : stored) {
+            total += file.length();
+        }
+        if (total <= budget) {
+            return;
+        }
+        Arrays.sort(stored, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < stored.length && total > budget; i++) {
+            long length = stored[i].length();
+            if (stored[i].delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    /**
+     * A thumbnail in memory.
+     */
+    private static class Cached {
+
+        final javafx.scene.image.Image thumbnail;
+
+        /**
+         * Modification time of the image the thumbnail was made from.
+         */
+        final long lastModified;
+
+        final long bytes;
+
+        Cached(javafx.scene.image.Image thumbnail, long lastModified) {
+            this.thumbnail = thumbnail;
+            this.lastModified = lastModified;
+            this.bytes = bytes(thumbnail);
+        }
+    }
+
+    /**
+     * A request for a thumbnail, queued by priority and then newest first.
+     */
+    static class Request implements Runnable, Comparable<Request> {
+
+        private final int priority;
+
+        private final long sequence = requestSequence.incrementAndGet();
+
+        private volatile boolean cancelled;
+
+        private Runnable work;
+
+        private Request(int priority, Runnable work) {
+            this.priority = priority;
+            this.work = work;
+        }
+
+        /**
+         * Cancels this request. A thumbnail not yet decoded will not be decoded for it.
+         */
+        void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Returns whether this request has been cancelled.
+         *
+         * @return True if cancelled
+         */
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void run() {
+            if (!cancelled) {
+                try {
+                    work.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            if (priority != other.priority) {
+                return Integer.compare(other.priority, priority);
+            }
+            return Long.compare(other.sequence, sequence);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package pack.tag;
+
+import pack.image.Image;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ids of the images that are loaded, and the loaded Image of each id. The ids are the universe of tag queries: NOT
+ * means every loaded image except the matching ones. Images are stored in chunks of 65536 ids, and a chunk is freed
+ * once none of its images is loaded, so the images of earlier scans do not keep memory.
+ */
+class ImageIndex {
+
+    /**
+     * Number of ids per chunk.
+     */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    /**
+     * Ids of the loaded images.
+     */
+    private static final RoaringBitmap loaded = new RoaringBitmap();
+
+    /**
+     * Loaded images by the high and low 16 bits of their id.
+     */
+    private static Image[][] chunks = new Image[16][];
+
+    /**
+     * Number of loaded images in each chunk.
+     */
+    private static int[] chunkCounts = new int[16];
+
+    /**
+     * Marks an image as loaded.
+     *
+     * @param image Image that is loaded
+     * @return True if the image was not loaded yet
+     */
+    static synchronized boolean add(Image image) {
+        int id = image.getId();
+        if (!loaded.add(id)) {
+            return false;
+        }
+        int chunk = id >>> 16;
+        if (chunk >= chunks.length) {
+            int length = Math.max(chunk + 1, chunks.length * 2);
+            chunks = Arrays.copyOf(chunks, length);
+            chunkCounts = Arrays.copyOf(chunkCounts, length);
+        }
+        if (chunks[chunk] == null) {
+            chunks[chunk] = new Image[CHUNK_SIZE];
+        }
+        chunks[chunk][id & (CHUNK_SIZE - 1)] = image;
+        chunkCounts[chunk]++;
+        return true;
+    }
+
+    /**
+     * Marks many images as loaded at once.
+     *
+     * @param images Images that are loaded
+     * @return the images that were not loaded yet
+     */
+    static synchronized List<Image> addAll(List<Image> images) {
+        ArrayList<Image> added = new ArrayList<>(images.size());
+        for (Image image : images) {
+            if (add(image)) {
+                added.add(image);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Marks an image as no longer loaded.
+     *
+     * @param image Image that is no longer loaded
+     * @return True if the image was loaded
+     */
+    static synchronized boolean remove(Image image) {
+        int id = image.getId();
+        if (!loaded.remove(id)) {
+            return false;
+        }
+        int chunk = id >>> 16;
+        chunks[chunk][id & (CHUNK_SIZE - 1)] = null;
+        if (--chunkCounts[chunk] == 0) {
+            chunks[chunk] = null;
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether an image is loaded.
+     *
+     * @param image Image looked for
+     * @return True if the image is loaded
+     */
+    static synchronized boolean contains(Image image) {
+        return loaded.contains(image.getId());
+    }
+
+    /**
+     * Marks all images as no longer loaded.
+     */
+    static synchronized void clear() {
+        loaded.clear();
+        Arrays.fill(chunks, null);
+        Arrays.fill(chunkCounts, 0);
+    }
+
+    /**
+     * Returns the ids of all loaded images.
+     *
+     * @return new bitmap of the ids
+     */
+    static synchronized RoaringBitmap all() {
+        return loaded.copy();
+    }
+
+    /**
+     * Returns the number of loaded images.
+     *
+     * @return number of loaded images
+     */
+    static synchronized int size() {
+        return loaded.cardinality();
+    }
+
+    /**
+     * Returns the loaded images with the given ids, in id order, which is the order they were loaded in. Ids of
+     * images no longer loaded are skipped.
+     *
+     * @param ids ids of the images
+     * @return the Images
+     */
+    static synchronized List<Image> toImages(RoaringBitmap ids) {
+        ArrayList<Image> images = new ArrayList<>(ids.cardinality());
+        ids.forEach(id -> {
+            int chunk = id >>> 16;
+            if (chunk < chunks.length && chunks[chunk] != null) {
+                Image image = chunks[chunk][id & (CHUNK_SIZE - 1)];
+                if (image != null) {
+                    images.add(image);
+                }
+            }
+        });
+        return images;
+    }
+}
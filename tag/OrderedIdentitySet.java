@@ -0,0 +1,247 @@
+package pack.tag;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * List of distinct elements, compared by identity, in the order they were added. Adding, removing and looking up an
+ * element take constant time: each element's slot is kept in an identity map, and a removed element only leaves an
+ * empty slot behind, which is squeezed out once empty slots outnumber the elements. It is still a List, equal to any
+ * other list with the same elements in the same order, so it can replace an ArrayList that never holds duplicates.
+ *
+ * @param <E> type of the elements
+ */
+public class OrderedIdentitySet<E> extends AbstractList<E> {
+
+    /**
+     * Fewest empty slots squeezed out at a time.
+     */
+    private static final int MIN_COMPACTION = 16;
+
+    /**
+     * Slot of each element.
+     */
+    private final IdentityHashMap<E, Integer> slots = new IdentityHashMap<>();
+
+    /**
+     * Elements by slot, null for an empty slot.
+     */
+    private Object[] elements = new Object[4];
+
+    /**
+     * Number of slots used, elements and empty ones.
+     */
+    private int end;
+
+    /**
+     * Number of times the empty slots were squeezed out, so that iterators can find their place again.
+     */
+    private int compactions;
+
+    /**
+     * Constructs an empty OrderedIdentitySet.
+     */
+    public OrderedIdentitySet() {
+    }
+
+    /**
+     * Constructs an OrderedIdentitySet of the elements of a collection, in its order, leaving out repeated ones.
+     *
+     * @param collection elements to be added
+     */
+    public OrderedIdentitySet(Collection<? extends E> collection) {
+        elements = new Object[Math.max(4, collection.size())];
+        addAll(collection);
+    }
+
+    /**
+     * Adds an element at the end, unless it is already in this set.
+     *
+     * @param element element to be added
+     * @return True if the element was added
+     */
+    @Override
+    public boolean add(E element) {
+        if (slots.containsKey(element)) {
+            return false;
+        }
+        if (end == elements.length) {
+            if (end - slots.size() >= MIN_COMPACTION) {
+                compact();
+            } else {
+                elements = Arrays.copyOf(elements, end * 2);
+            }
+        }
+        slots.put(element, end);
+        elements[end++] = element;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object element) {
+        Integer slot = slots.remove(element);
+        if (slot == null) {
+            return false;
+        }
+        elements[slot] = null;
+        modCount++;
+        int empty = end - slots.size();
+        if (empty >= MIN_COMPACTION && empty > slots.size()) {
+            compact();
+        }
+        return true;
+    }
+
+    @Override
+    public E remove(int index) {
+        E element = get(index);
+        remove(element);
+        return element;
+    }
+
+    @Override
+    public boolean contains(Object element) {
+        return slots.containsKey(element);
+    }
+
+    @Override
+    public int indexOf(Object element) {
+        Integer slot = slots.get(element);
+        if (slot == null) {
+            return -1;
+        }
+        compact();
+        return slots.get(element);
+    }
+
+    @Override
+    public int lastIndexOf(Object element) {
+        return indexOf(element);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        if (index < 0 || index >= slots.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + slots.size());
+        }
+        compact();
+        return (E) elements[index];
+    }
+
+    @Override
+    public int size() {
+        return slots.size();
+    }
+
+    @Override
+    public void clear() {
+        slots.clear();
+        Arrays.fill(elements, 0, end, null);
+        end = 0;
+        modCount++;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int slot = skipEmpty(0);
+            private int lastSlot = -1;
+            private int expectedModCount = modCount;
+            private int expectedCompactions = compactions;
+
+            /**
+             * Number of elements returned and not removed, which is the slot of the next one after a compaction.
+             */
+            private int passed;
+
+            @Override
+            public boolean hasNext() {
+                findPlace();
+                return slot < end;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                findPlace();
+                if (slot >= end) {
+                    throw new NoSuchElementException();
+                }
+                passed++;
+                lastSlot = slot;
+                slot = skipEmpty(slot + 1);
+                return (E) elements[lastSlot];
+            }
+
+            @Override
+            public void remove() {
+                if (lastSlot < 0) {
+                    throw new IllegalStateException();
+                }
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                findPlace();
+                // the slot is emptied without compacting, which would move the slots still to be visited
+                slots.remove(elements[lastSlot]);
+                elements[lastSlot] = null;
+                lastSlot = -1;
+                passed--;
+                expectedModCount = ++modCount;
+            }
+
+            /**
+             * Moves to the slot of the next element if the slots were squeezed since the last call.
+             */
+            private void findPlace() {
+                if (compactions != expectedCompactions) {
+                    expectedCompactions = compactions;
+                    slot = passed;
+                    lastSlot = lastSlot < 0 ? -1 : passed - 1;
+                }
+            }
+        };
+    }
+
+    /**
+     * Helper in iterator. Returns the first slot from a slot on that holds an element.
+     */
+    private int skipEmpty(int slot) {
+        while (slot < end && elements[slot] == null) {
+            slot++;
+        }
+        return slot;
+    }
+
+    /**
+     * Helper squeezing out the empty slots, so that each element's slot is its index. Does nothing if there are none.
+     */
+    @SuppressWarnings("unchecked")
+    private void compact() {
+        if (end == slots.size()) {
+            return;
+        }
+        int kept = 0;
+        for (int slot = 0; slot < end; slot++) {
+            Object element = elements[slot];
+            if (element != null) {
+                elements[kept] = element;
+                slots.put((E) element, kept);
+                kept++;
+            }
+        }
+        Arrays.fill(elements, kept, end, null);
+        end = kept;
+        compactions++;
+    }
+}
@@ -0,0 +1,89 @@
+package pack.tag;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test Class for OrderedIdentitySet.
+ */
+class OrderedIdentitySetTest {
+
+    /**
+     * Tests to see if elements are kept once each, in the order they were added, and compared by identity.
+     */
+    @Test
+    void addInOrder() {
+        OrderedIdentitySet<String> set = new OrderedIdentitySet<>();
+        String first = new String("a");
+        String second = new String("a");
+        assertTrue(set.add(first));
+        assertTrue(set.add("b"));
+        assertFalse(set.add(first));
+        assertTrue(set.add(second));
+        assertEquals(3, set.size());
+        assertSame(first, set.get(0));
+        assertSame(second, set.get(2));
+        assertEquals(Arrays.asList("a", "b", "a"), set);
+        assertEquals(set, Arrays.asList("a", "b", "a"));
+    }
+
+    /**
+     * Tests to see if the order and the indexes stay right through many removals, against an ArrayList.
+     */
+    @Test
+    void removeKeepsOrder() {
+        Random random = new Random(7);
+        Integer[] values = new Integer[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+        OrderedIdentitySet<Integer> set = new OrderedIdentitySet<>();
+        ArrayList<Integer> expected = new ArrayList<>();
+        for (int round = 0; round < 20000; round++) {
+            Integer value = values[random.nextInt(values.length)];
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(value), set.remove(value));
+            } else if (!expected.contains(value)) {
+                expected.add(value);
+                assertTrue(set.add(value));
+            }
+            assertEquals(expected.contains(value), set.contains(value));
+        }
+        assertEquals(expected, set);
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), set.get(i));
+            assertEquals(i, set.indexOf(expected.get(i)));
+        }
+    }
+
+    /**
+     * Tests to see if removing through the iterator works, also when the list is compacted during the iteration.
+     */
+    @Test
+    void iteratorRemove() {
+        OrderedIdentitySet<Integer> set = new OrderedIdentitySet<>();
+        for (int i = 0; i < 100; i++) {
+            set.add(i);
+        }
+        Iterator<Integer> iterator = set.iterator();
+        int seen = 0;
+        while (iterator.hasNext()) {
+            int value = iterator.next();
+            assertEquals(seen++, value);
+            if (value % 2 == 0) {
+                iterator.remove();
+            }
+            set.get(0);
+        }
+        assertEquals(100, seen);
+        assertEquals(50, set.size());
+        assertEquals(Integer.valueOf(1), set.get(0));
+        assertEquals(Integer.valueOf(99), set.get(49));
+    }
+}
@@ -0,0 +1,96 @@
+package pack.tag;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test Class for RoaringBitmap.
+ */
+class RoaringBitmapTest {
+
+    /**
+     * Builds a bitmap and the same values as a TreeSet, dense in some chunks and sparse in others.
+     */
+    private static RoaringBitmap build(Random random, TreeSet<Integer> expected) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int i = 0; i < 20000; i++) {
+            int value = random.nextBoolean() ? random.nextInt(1 << 16) : random.nextInt(1 << 20);
+            assertEquals(expected.add(value), bitmap.add(value));
+        }
+        return bitmap;
+    }
+
+    /**
+     * Helper checking that a bitmap holds the same values as a TreeSet.
+     */
+    private static void assertSameValues(TreeSet<Integer> expected, RoaringBitmap bitmap) {
+        assertEquals(expected.size(), bitmap.cardinality());
+        int[] values = bitmap.toArray();
+        int i = 0;
+        for (int value : expected) {
+            assertEquals(value, values[i++]);
+        }
+    }
+
+    /**
+     * Tests to see if add(), remove() and contains() work across array and bitmap chunks.
+     */
+    @Test
+    void addRemoveContains() {
+        Random random = new Random(1);
+        TreeSet<Integer> expected = new TreeSet<>();
+        RoaringBitmap bitmap = build(random, expected);
+        assertSameValues(expected, bitmap);
+        for (int i = 0; i < 15000; i++) {
+            int value = random.nextInt(1 << 16);
+            assertEquals(expected.remove(value), bitmap.remove(value));
+        }
+        assertSameValues(expected, bitmap);
+        for (int value = 0; value < 1 << 17; value++) {
+            assertEquals(expected.contains(value), bitmap.contains(value));
+        }
+    }
+
+    /**
+     * Tests to see if and(), or() and andNot() work.
+     */
+    @Test
+    void setOperations() {
+        Random random = new Random(2);
+        TreeSet<Integer> first = new TreeSet<>();
+        TreeSet<Integer> second = new TreeSet<>();
+        RoaringBitmap a = build(random, first);
+        RoaringBitmap b = build(random, second);
+
+        TreeSet<Integer> and = new TreeSet<>(first);
+        and.retainAll(second);
+        assertSameValues(and, a.and(b));
+        TreeSet<Integer> or = new TreeSet<>(first);
+        or.addAll(second);
+        assertSameValues(or, a.or(b));
+        TreeSet<Integer> andNot = new TreeSet<>(first);
+        andNot.removeAll(second);
+        assertSameValues(andNot, a.andNot(b));
+        // operands are left unchanged
+        assertSameValues(first, a);
+        assertSameValues(second, b);
+    }
+
+    /**
+     * Tests to see if an emptied bitmap is empty.
+     */
+    @Test
+    void empty() {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        assertTrue(bitmap.isEmpty());
+        bitmap.add(70000);
+        assertFalse(bitmap.isEmpty());
+        bitmap.remove(70000);
+        assertTrue(bitmap.isEmpty());
+        assertEquals(0, bitmap.and(new RoaringBitmap()).cardinality());
+    }
+}
@@ -3,20 +3,82 @@ package pack.tag;
 import pack.image.Image;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Class keeping track of one tag's info.
+ * Class keeping track of one tag's info. Tags form a hierarchy through their names: "place/europe/paris" is under
+ * "place/europe", which is under "place". Besides its own images, a tag with tags under it keeps the ids of the images
+ * of its whole subtree, updated as images are added to and removed from any tag under it, so searching a tag with
+ * everything under it costs one bitmap copy.
  */
 public class Tag implements java.io.Serializable {
+
+    /**
+     * Separator between the name of a tag's parent and the rest of its name.
+     */
+    public static final char SEPARATOR = '/';
+
+    /**
+     * Id of the next Tag constructed.
+     */
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * Changed whenever any tag gains or loses an image, so that what is derived from the use of tags can tell it is
+     * out of date.
+     */
+    private static final AtomicInteger useVersion = new AtomicInteger();
+
+    /**
+     * Integer id of this Tag, unique and unchanging while the program runs.
+     */
+    private final int id = nextId.getAndIncrement();
+
     /**
      * Tag text displayed in Image names.
      */
     private String name;
 
     /**
-     * Every Image this tag has been assigned to.
+     * Every Image this tag has been assigned to, in the order they were assigned.
+     */
+    private final OrderedIdentitySet<Image> images = new OrderedIdentitySet<>();
+
+    /**
+     * Ids of the images in the image list, for boolean queries.
+     */
+    private final RoaringBitmap imageIds = new RoaringBitmap();
+
+    /**
+     * Tag this tag is under, null for a top level tag.
      */
-    private ArrayList<Image> images = new ArrayList<>();
+    private volatile Tag parent;
+
+    /**
+     * Tags directly under this tag.
+     */
+    private final ArrayList<Tag> children = new ArrayList<>();
+
+    /**
+     * Ids of the images with this tag or any tag under it. Null as long as no tag is under this one, and the image
+     * ids are the subtree.
+     */
+    private RoaringBitmap subtreeIds;
+
+    /**
+     * For the images with more than one tag of the subtree, the number of those tags beyond the first, so an image
+     * leaves the subtree only with its last tag in it.
+     */
+    private HashMap<Integer, Integer> subtreeExtraCounts;
+
+    /**
+     * Number of images of the whole library this tag is assigned to, as far as is known: the number stored, changed by
+     * every assignment and removal since, and never below the number of images it has now.
+     */
+    private volatile int storedUses;
 
     /**
      * Constructs a tag with name text.
@@ -37,11 +99,102 @@ public class Tag implements java.io.Serializable {
     }
 
     /**
-     * Returns an array list of all images this tag is assigned to. This is used to search through images for tag use.
+     * Returns the integer id of this Tag.
      *
-     * @return ArrayList of Images with this tag assigned to it
+     * @return id of this Tag
      */
-    public ArrayList<Image> getImages() {
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the name of the parent of a tag name, the part before the last separator.
+     *
+     * @param tagName name of a tag
+     * @return name of its parent, or null for a top level name
+     */
+    static String parentName(String tagName) {
+        int separator = tagName.lastIndexOf(SEPARATOR);
+        return separator > 0 ? tagName.substring(0, separator) : null;
+    }
+
+    /**
+     * Returns the tag this tag is under.
+     *
+     * @return parent Tag, or null for a top level tag
+     */
+    public Tag getParent() {
+        return parent;
+    }
+
+    /**
+     * Returns the tags directly under this tag.
+     *
+     * @return new list of the child Tags
+     */
+    public synchronized List<Tag> getChildren() {
+        return new ArrayList<>(children);
+    }
+
+    /**
+     * Returns whether any tag is under this tag.
+     *
+     * @return True if this tag has children
+     */
+    synchronized boolean hasChildren() {
+        return !children.isEmpty();
+    }
+
+    /**
+     * Puts a tag directly under this tag, adding its images to the subtrees of this tag and of its ancestors.
+     *
+     * @param child Tag whose name is this tag's name, the separator and one more part
+     */
+    void addChild(Tag child) {
+        RoaringBitmap childIds = child.getSubtreeImageIds();
+        synchronized (this) {
+            if (subtreeIds == null) {
+                subtreeIds = imageIds.copy();
+                subtreeExtraCounts = new HashMap<>();
+            }
+            children.add(child);
+            child.parent = this;
+        }
+        childIds.forEach(id -> {
+            for (Tag tag = this; tag != null; tag = tag.parent) {
+                tag.subtreeAdded(id);
+            }
+        });
+    }
+
+    /**
+     * Takes this tag out of its parent's children, once it has no images left.
+     */
+    void removeFromParent() {
+        Tag oldParent = parent;
+        if (oldParent != null) {
+            synchronized (oldParent) {
+                oldParent.children.remove(this);
+            }
+            parent = null;
+        }
+    }
+
+    /**
+     * Returns a number that changes whenever any tag gains or loses an image.
+     *
+     * @return current use version
+     */
+    static int getUseVersion() {
+        return useVersion.get();
+    }
+
+    /**
+     * Returns a list of all images this tag is assigned to. This is used to search through images for tag use.
+     *
+     * @return List of Images with this tag assigned to it
+     */
+    public List<Image> getImages() {
         return images;
     }
 
@@ -49,8 +202,14 @@ public class Tag implements java.io.Serializable {
     /**
      * Resets the image list when the directory is updated.
      */
-    void resetImages() {
+    synchronized void resetImages() {
         images.clear();
+        imageIds.clear();
+        if (subtreeIds != null) {
+            subtreeIds.clear();
+            subtreeExtraCounts.clear();
+        }
+        useVersion.incrementAndGet();
     }
 
 
@@ -60,8 +219,44 @@ public class Tag implements java.io.Serializable {
      * @param image: the image that removed the tag
      */
     public void removeImage(Image image) {
-        if (images.contains(image)) {
-            images.remove(image);
+        synchronized (this) {
+            if (!images.remove(image)) {
+                return;
+            }
+            imageIds.remove(image.getId());
+            subtreeRemoved(image.getId());
+            useVersion.incrementAndGet();
+        }
+        // ancestors are locked one at a time, never while holding the lock of a tag under them
+        for (Tag tag = parent; tag != null; tag = tag.parent) {
+            tag.subtreeRemoved(image.getId());
+        }
+    }
+
+    /**
+     * Removes many images from the list of images this tag is attached to, as when they are no longer loaded. Each
+     * tag above this one is updated once for all of them.
+     *
+     * @param removed the images that are removed
+     */
+    public void removeImages(Collection<Image> removed) {
+        int[] removedIds = new int[removed.size()];
+        int count = 0;
+        synchronized (this) {
+            for (Image image : removed) {
+                if (images.remove(image)) {
+                    imageIds.remove(image.getId());
+                    subtreeRemoved(image.getId());
+                    removedIds[count++] = image.getId();
+                }
+            }
+            if (count == 0) {
+                return;
+            }
+            useVersion.incrementAndGet();
+        }
+        for (Tag tag = parent; tag != null; tag = tag.parent) {
+            tag.subtreeRemoved(removedIds, count);
         }
     }
 
@@ -71,8 +266,164 @@ public class Tag implements java.io.Serializable {
      * @param image: the image that has been assigned with the tag
      */
     public void addImage(Image image) {
-        if (!images.contains(image)) {
-            images.add(image);
+        synchronized (this) {
+            if (!images.add(image)) {
+                return;
+            }
+            imageIds.add(image.getId());
+            subtreeAdded(image.getId());
+            useVersion.incrementAndGet();
+        }
+        for (Tag tag = parent; tag != null; tag = tag.parent) {
+            tag.subtreeAdded(image.getId());
+        }
+    }
+
+    /**
+     * Adds many images to the list of images this tag is attached to, as when they are loaded together. Each tag
+     * above this one is updated once for all of them.
+     *
+     * @param added the images that are added
+     */
+    public void addImages(Collection<Image> added) {
+        int[] addedIds = new int[added.size()];
+        int count = 0;
+        synchronized (this) {
+            for (Image image : added) {
+                if (images.add(image)) {
+                    imageIds.add(image.getId());
+                    subtreeAdded(image.getId());
+                    addedIds[count++] = image.getId();
+                }
+            }
+            if (count == 0) {
+                return;
+            }
+            useVersion.incrementAndGet();
+        }
+        for (Tag tag = parent; tag != null; tag = tag.parent) {
+            tag.subtreeAdded(addedIds, count);
+        }
+    }
+
+    /**
+     * Helper counting one more tag of the subtree on an image.
+     */
+    private synchronized void subtreeAdded(int imageId) {
+        if (subtreeIds != null && !subtreeIds.add(imageId)) {
+            subtreeExtraCounts.merge(imageId, 1, Integer::sum);
         }
     }
+
+    /**
+     * Helper counting one less tag of the subtree on an image.
+     */
+    private synchronized void subtreeRemoved(int imageId) {
+        if (subtreeIds == null) {
+            return;
+        }
+        Integer extra = subtreeExtraCounts.get(imageId);
+        if (extra == null) {
+            subtreeIds.remove(imageId);
+        } else if (extra == 1) {
+            subtreeExtraCounts.remove(imageId);
+        } else {
+            subtreeExtraCounts.put(imageId, extra - 1);
+        }
+    }
+
+    /**
+     * Helper counting one more tag of the subtree on each of some images.
+     */
+    private synchronized void subtreeAdded(int[] imageIds, int count) {
+        for (int i = 0; i < count; i++) {
+            subtreeAdded(imageIds[i]);
+        }
+    }
+
+    /**
+     * Helper counting one less tag of the subtree on each of some images.
+     */
+    private synchronized void subtreeRemoved(int[] imageIds, int count) {
+        for (int i = 0; i < count; i++) {
+            subtreeRemoved(imageIds[i]);
+        }
+    }
+
+    /**
+     * Returns the ids of all images this tag is assigned to.
+     *
+     * @return new bitmap of the image ids
+     */
+    synchronized RoaringBitmap getImageIds() {
+        return imageIds.copy();
+    }
+
+    /**
+     * Returns the ids of all images with this tag or any tag under it.
+     *
+     * @return new bitmap of the image ids
+     */
+    synchronized RoaringBitmap getSubtreeImageIds() {
+        return (subtreeIds != null ? subtreeIds : imageIds).copy();
+    }
+
+    /**
+     * Returns the number of loaded images with this tag or any tag under it.
+     *
+     * @return number of images
+     */
+    synchronized int getSubtreeImageCount() {
+        return (subtreeIds != null ? subtreeIds : imageIds).cardinality();
+    }
+
+    /**
+     * Returns the use of this tag: the number of loaded images it is assigned to, or while no image is loaded, the
+     * number of images of the whole library it is assigned to, as far as is known.
+     *
+     * @return use count
+     */
+    public int getUses() {
+        return ImageIndex.size() == 0 ? storedUses : getImageCount();
+    }
+
+    /**
+     * Sets the number of images this tag had when the tags were last stored.
+     *
+     * @param uses stored use count
+     */
+    void setStoredUses(int uses) {
+        storedUses = uses;
+        useVersion.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of images of the whole library this tag is assigned to, as far as is known, to be stored.
+     * Unlike getUses, it does not depend on which directory is loaded.
+     *
+     * @return library-wide use count
+     */
+    int getStoredUses() {
+        return Math.max(storedUses, getImageCount());
+    }
+
+    /**
+     * Changes the library-wide use count when this tag is assigned to or removed from an image, after the image list
+     * of this tag has been updated.
+     *
+     * @param delta 1 for an assignment, -1 for a removal
+     */
+    synchronized void changeStoredUses(int delta) {
+        storedUses = Math.max(storedUses + delta, getImageCount());
+        useVersion.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of loaded images this tag is assigned to.
+     *
+     * @return number of images
+     */
+    public synchronized int getImageCount() {
+        return images.size();
+    }
 }
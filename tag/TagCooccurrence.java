@@ -0,0 +1,364 @@
+package pack.tag;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Number of loaded images each pair of tags is assigned to together, kept up to date as images are loaded and
+ * unloaded and as tags are assigned and removed, for suggesting tags. The matrix is sparse: each tag that shares an
+ * image with another tag has a row, an open addressing table from the ids of the other tags to the counts, and pairs
+ * whose count falls to zero are dropped. Each row also remembers its best entries until it changes, so suggesting
+ * tags for an image only looks at a few entries of the rows of its tags, however many tags and images there are.
+ */
+class TagCooccurrence {
+
+    /**
+     * Number of best entries remembered per row, which are the candidates for suggestions.
+     */
+    private static final int CANDIDATES = 16;
+
+    /**
+     * Rows by tag id.
+     */
+    private static final HashMap<Integer, Row> rows = new HashMap<>();
+
+    /**
+     * Counts every pair of tags of a newly loaded image.
+     *
+     * @param tags tags of the image
+     */
+    static synchronized void addImage(List<Tag> tags) {
+        changeAll(tags.toArray(new Tag[0]), 1);
+    }
+
+    /**
+     * Counts every pair of tags of many newly loaded images. The pairs are added up first without holding the lock,
+     * so the rows are only changed once per distinct pair.
+     *
+     * @param tagLists tags of each image
+     */
+    static void addImages(List<List<Tag>> tagLists) {
+        IdentityHashMap<Tag, IdentityHashMap<Tag, int[]>> pairs = new IdentityHashMap<>();
+        for (List<Tag> tags : tagLists) {
+            for (int i = 0; i < tags.size(); i++) {
+                for (int j = i + 1; j < tags.size(); j++) {
+                    Tag first = tags.get(i);
+                    Tag second = tags.get(j);
+                    if (first == second) {
+                        continue;
+                    }
+                    // each pair is counted under its tag of lower id
+                    if (first.getId() > second.getId()) {
+                        Tag swapped = first;
+                        first = second;
+                        second = swapped;
+                    }
+                    pairs.computeIfAbsent(first, key -> new IdentityHashMap<>())
+                            .computeIfAbsent(second, key -> new int[1])[0]++;
+                }
+            }
+        }
+        synchronized (TagCooccurrence.class) {
+            for (Map.Entry<Tag, IdentityHashMap<Tag, int[]>> row : pairs.entrySet()) {
+                for (Map.Entry<Tag, int[]> pair : row.getValue().entrySet()) {
+                    change(row.getKey(), pair.getKey(), pair.getValue()[0]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Uncounts every pair of tags of an image that is no longer loaded.
+     *
+     * @param tags tags of the image
+     */
+    static synchronized void removeImage(List<Tag> tags) {
+        changeAll(tags.toArray(new Tag[0]), -1);
+    }
+
+    /**
+     * Counts a tag newly assigned to a loaded image with each of the other tags of the image.
+     *
+     * @param tag  tag assigned
+     * @param tags tags of the image, with or without the assigned one
+     */
+    static synchronized void addTag(Tag tag, List<Tag> tags) {
+        for (Tag other : tags) {
+            if (other != tag) {
+                change(tag, other, 1);
+            }
+        }
+    }
+
+    /**
+     * Uncounts a tag removed from a loaded image with each of the other tags of the image.
+     *
+     * @param tag  tag removed
+     * @param tags tags of the image, with or without the removed one
+     */
+    static synchronized void removeTag(Tag tag, List<Tag> tags) {
+        for (Tag other : tags) {
+            if (other != tag) {
+                change(tag, other, -1);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of loaded images two tags are both assigned to.
+     *
+     * @param first  one tag
+     * @param second another tag
+     * @return number of images with both tags
+     */
+    static synchronized int count(Tag first, Tag second) {
+        Row row = rows.get(first.getId());
+        return row == null ? 0 : row.count(second.getId());
+    }
+
+    /**
+     * Returns the tags most often assigned together with some tags, best first. A candidate is scored by the number of
+     * images it shares with each of the tags, added up, and candidates are taken from the best entries of the rows of
+     * the tags.
+     *
+     * @param tags  tags already assigned, which are not suggested
+     * @param limit greatest number of tags returned
+     * @return up to limit tags, best first
+     */
+    static synchronized List<Tag> suggest(List<Tag> tags, int limit) {
+        IdentityHashMap<Tag, Integer> scores = new IdentityHashMap<>();
+        for (Tag tag : tags) {
+            Row row = rows.get(tag.getId());
+            if (row == null) {
+                continue;
+            }
+            for (Tag candidate : row.best()) {
+                if (!tags.contains(candidate) && !scores.containsKey(candidate)) {
+                    int score = 0;
+                    for (Tag assigned : tags) {
+                        Row assignedRow = rows.get(assigned.getId());
+                        score += assignedRow == null ? 0 : assignedRow.count(candidate.getId());
+                    }
+                    scores.put(candidate, score);
+                }
+            }
+        }
+        ArrayList<Tag> suggestions = new ArrayList<>(scores.keySet());
+        suggestions.sort((first, second) -> {
+            int byScore = Integer.compare(scores.get(second), scores.get(first));
+            return byScore != 0 ? byScore : first.getName().compareTo(second.getName());
+        });
+        return suggestions.size() > limit ? new ArrayList<>(suggestions.subList(0, limit)) : suggestions;
+    }
+
+    /**
+     * Forgets all counts, when no image is loaded any more.
+     */
+    static synchronized void clear() {
+        rows.clear();
+    }
+
+    /**
+     * Helper changing the count of every pair of distinct tags.
+     */
+    private static void changeAll(Tag[] tags, int delta) {
+        for (int i = 0; i < tags.length; i++) {
+            for (int j = i + 1; j < tags.length; j++) {
+                if (tags[i] != tags[j]) {
+                    change(tags[i], tags[j], delta);
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper changing the count of a pair in both of its rows, dropping rows left empty.
+     */
+    private static void change(Tag first, Tag second, int delta) {
+        changeRow(first, second, delta);
+        changeRow(second, first, delta);
+    }
+
+    /**
+     * Helper in change.
+     */
+    private static void changeRow(Tag tag, Tag other, int delta) {
+        Row row = rows.get(tag.getId());
+        if (row == null) {
+            if (delta < 0) {
+                return;
+            }
+            row = new Row();
+            rows.put(tag.getId(), row);
+        }
+        row.change(other, delta);
+        if (row.size == 0) {
+            rows.remove(tag.getId());
+        }
+    }
+
+    /**
+     * Counts of the tags sharing images with one tag. Linear probing over power of two tables, with deletion by
+     * shifting entries back, so no slot is ever a tombstone.
+     */
+    private static class Row {
+
+        /**
+         * Id plus one of the tag in each slot, 0 for an empty slot.
+         */
+        private int[] keys = new int[8];
+
+        private int[] counts = new int[8];
+
+        private Tag[] tags = new Tag[8];
+
+        private int size;
+
+        /**
+         * Best tags of the row, best first, null when the row has changed since they were found.
+         */
+        private Tag[] best;
+
+        /**
+         * Returns the count of a tag, 0 if it has none.
+         */
+        int count(int tagId) {
+            int slot = find(tagId + 1);
+            return keys[slot] == 0 ? 0 : counts[slot];
+        }
+
+        /**
+         * Changes the count of a tag, removing it when it falls to zero.
+         */
+        void change(Tag tag, int delta) {
+            best = null;
+            int key = tag.getId() + 1;
+            int slot = find(key);
+            if (keys[slot] == 0) {
+                if (delta <= 0) {
+                    return;
+                }
+                keys[slot] = key;
+                counts[slot] = delta;
+                tags[slot] = tag;
+                if (++size * 2 > keys.length) {
+                    grow();
+                }
+                return;
+            }
+            counts[slot] += delta;
+            if (counts[slot] <= 0) {
+                delete(slot);
+            }
+        }
+
+        /**
+         * Returns the tags with the highest counts, best first and then by name.
+         */
+        Tag[] best() {
+            if (best != null) {
+                return best;
+            }
+            Tag[] top = new Tag[Math.min(CANDIDATES, size)];
+            int[] topCounts = new int[top.length];
+            int found = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] == 0) {
+                    continue;
+                }
+                // insertion into the short sorted array of the best so far
+                int position = found;
+                while (position > 0 && better(counts[slot], tags[slot], topCounts[position - 1], top[position - 1])) {
+                    position--;
+                }
+                if (position == top.length) {
+                    continue;
+                }
+                int moved = Math.min(found, top.length - 1) - position;
+                System.arraycopy(top, position, top, position + 1, moved);
+                System.arraycopy(topCounts, position, topCounts, position + 1, moved);
+                top[position] = tags[slot];
+                topCounts[position] = counts[slot];
+                found = Math.min(found + 1, top.length);
+            }
+            best = top;
+            return best;
+        }
+
+        /**
+         * Helper in best.
+         */
+        private static boolean better(int count, Tag tag, int otherCount, Tag other) {
+            return count > otherCount || (count == otherCount && tag.getName().compareTo(other.getName()) < 0);
+        }
+
+        /**
+         * Helper returning the slot of a key, or the empty slot where it would go.
+         */
+        private int find(int key) {
+            int mask = keys.length - 1;
+            int slot = home(key, mask);
+            while (keys[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Helper returning the first slot a key is looked for in.
+         */
+        private static int home(int key, int mask) {
+            int hash = key * 0x9E3779B9;
+            return (hash ^ hash >>> 16) & mask;
+        }
+
+        /**
+         * Helper emptying a slot and shifting back the entries after it that would no longer be found.
+         */
+        private void delete(int slot) {
+            int mask = keys.length - 1;
+            int next = slot;
+            while (true) {
+                next = (next + 1) & mask;
+                if (keys[next] == 0) {
+                    break;
+                }
+                int home = home(keys[next], mask);
+                // the entry moves back unless its home lies cyclically after the hole, up to its own slot
+                if (slot <= next ? (home <= slot || home > next) : (home <= slot && home > next)) {
+                    keys[slot] = keys[next];
+                    counts[slot] = counts[next];
+                    tags[slot] = tags[next];
+                    slot = next;
+                }
+            }
+            keys[slot] = 0;
+            counts[slot] = 0;
+            tags[slot] = null;
+            size--;
+        }
+
+        /**
+         * Helper doubling the table.
+         */
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldCounts = counts;
+            Tag[] oldTags = tags;
+            keys = new int[oldKeys.length * 2];
+            counts = new int[keys.length];
+            tags = new Tag[keys.length];
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != 0) {
+                    int newSlot = find(oldKeys[slot]);
+                    keys[newSlot] = oldKeys[slot];
+                    counts[newSlot] = oldCounts[slot];
+                    tags[newSlot] = oldTags[slot];
+                }
+            }
+        }
+    }
+}
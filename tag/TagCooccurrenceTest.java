@@ -0,0 +1,135 @@
+package pack.tag;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test Class for TagCooccurrence.
+ */
+class TagCooccurrenceTest {
+
+    /**
+     * Forgets the counts after every test.
+     */
+    @AfterEach
+    void tearDown() {
+        TagCooccurrence.clear();
+    }
+
+    /**
+     * Tests to see if counts follow images being added and removed, against counts kept in a HashMap.
+     */
+    @Test
+    void countsFollowChanges() {
+        Random random = new Random(11);
+        Tag[] tags = new Tag[300];
+        for (int i = 0; i < tags.length; i++) {
+            tags[i] = new Tag("tag" + i);
+        }
+        HashMap<String, Integer> expected = new HashMap<>();
+        ArrayList<List<Tag>> images = new ArrayList<>();
+        for (int round = 0; round < 5000; round++) {
+            int delta;
+            List<Tag> image;
+            if (images.isEmpty() || random.nextInt(3) > 0) {
+                OrderedIdentitySet<Tag> imageTags = new OrderedIdentitySet<>();
+                for (int i = random.nextInt(5); i >= 0; i--) {
+                    imageTags.add(tags[random.nextInt(random.nextBoolean() ? 20 : tags.length)]);
+                }
+                image = imageTags;
+                images.add(image);
+                TagCooccurrence.addImage(image);
+                delta = 1;
+            } else {
+                image = images.remove(random.nextInt(images.size()));
+                TagCooccurrence.removeImage(image);
+                delta = -1;
+            }
+            for (Tag first : image) {
+                for (Tag second : image) {
+                    if (first != second) {
+                        expected.merge(first.getName() + " " + second.getName(), delta, Integer::sum);
+                    }
+                }
+            }
+        }
+        for (Tag first : tags) {
+            for (Tag second : tags) {
+                if (first != second) {
+                    assertEquals((int) expected.getOrDefault(first.getName() + " " + second.getName(), 0),
+                            TagCooccurrence.count(first, second));
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests to see if suggest() ranks the tags shared with the most images first, leaving out the assigned ones.
+     */
+    @Test
+    void suggest() {
+        Tag beach = new Tag("beach");
+        Tag sea = new Tag("sea");
+        Tag sun = new Tag("sun");
+        Tag city = new Tag("city");
+        TagCooccurrence.addImage(Arrays.asList(beach, sea, sun));
+        TagCooccurrence.addImage(Arrays.asList(beach, sea));
+        TagCooccurrence.addImage(Arrays.asList(beach, city));
+        TagCooccurrence.addImage(Arrays.asList(sun, city));
+
+        assertEquals(Arrays.asList(sea, city, sun), TagCooccurrence.suggest(Arrays.asList(beach), 5));
+        assertEquals(Arrays.asList(sea), TagCooccurrence.suggest(Arrays.asList(beach), 1));
+        assertEquals(Arrays.asList(beach, city), TagCooccurrence.suggest(Arrays.asList(sea, sun), 5));
+
+        TagCooccurrence.removeTag(sea, Arrays.asList(beach, sun));
+        TagCooccurrence.removeTag(sea, Arrays.asList(beach));
+        assertEquals(0, TagCooccurrence.count(beach, sea));
+        assertEquals(Arrays.asList(city, sun), TagCooccurrence.suggest(Arrays.asList(beach), 5));
+        assertEquals(new ArrayList<Tag>(), TagCooccurrence.suggest(Arrays.asList(sea), 5));
+    }
+
+    /**
+     * Tests to see if counting the images of a scan together gives the same counts as counting them one by one.
+     */
+    @Test
+    void addImagesTogether() {
+        Random random = new Random(5);
+        Tag[] tags = new Tag[30];
+        for (int i = 0; i < tags.length; i++) {
+            tags[i] = new Tag("tag" + i);
+        }
+        ArrayList<List<Tag>> images = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            OrderedIdentitySet<Tag> imageTags = new OrderedIdentitySet<>();
+            for (int j = random.nextInt(5); j >= 0; j--) {
+                imageTags.add(tags[random.nextInt(tags.length)]);
+            }
+            images.add(imageTags);
+        }
+        for (List<Tag> image : images) {
+            TagCooccurrence.addImage(image);
+        }
+        int[][] expected = new int[tags.length][tags.length];
+        for (int i = 0; i < tags.length; i++) {
+            for (int j = 0; j < tags.length; j++) {
+                expected[i][j] = TagCooccurrence.count(tags[i], tags[j]);
+            }
+        }
+        TagCooccurrence.clear();
+
+        TagCooccurrence.addImages(images);
+        for (int i = 0; i < tags.length; i++) {
+            for (int j = 0; j < tags.length; j++) {
+                assertEquals(expected[i][j], TagCooccurrence.count(tags[i], tags[j]));
+            }
+        }
+    }
+}
@@ -29,7 +29,7 @@ public class TagHistoryUIController {
     @FXML
     private void initialize() {
         ObservableList<String> history = FXCollections.observableArrayList(
-                Main.currentImageInfo.getImage().getRenamingList());
+                Main.currentImageInfo.getImage().getNameHistory());
         tagHistory.setItems(history);
     }
 
@@ -71,8 +71,18 @@ public class TagInfo {
         return selected;
     }
 
+    /**
+     * Returns the number of loaded images the tag is assigned to, looked up each time since TagInfos are kept between
+     * openings of the tag manager.
+     *
+     * @return number of images with the tag
+     */
+    int getImageCount() {
+        return tag.getImageCount();
+    }
+
     @Override
     public String toString() {
-        return getName();
+        return getName() + " (" + getImageCount() + ")";
     }
 }
\ No newline at end of file
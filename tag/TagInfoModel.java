@@ -0,0 +1,135 @@
+package pack.tag;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * TagInfos of all known tags, kept between openings of the tag manager so a TagInfo is made once per tag rather than
+ * every time the tag manager is shown. The lists of the tag manager are filtered views of the one list of them, and
+ * the checked ones are kept in a set as they are checked and unchecked, so finding them does not look at every tag.
+ * Only used on the UI thread.
+ */
+class TagInfoModel {
+
+    /**
+     * TagInfos of all known tags, in the order of the tags.
+     */
+    private static final ObservableList<TagInfo> tagInfos = FXCollections.observableArrayList();
+
+    /**
+     * TagInfos by their tag.
+     */
+    private static final IdentityHashMap<Tag, TagInfo> byTag = new IdentityHashMap<>();
+
+    /**
+     * Checked TagInfos, in the order they were checked.
+     */
+    private static final LinkedHashSet<TagInfo> selected = new LinkedHashSet<>();
+
+    /**
+     * Change count of the known tags when the TagInfos were last brought in step with them.
+     */
+    private static int registryChanges = -1;
+
+    /**
+     * Returns the TagInfos of all known tags, brought in step with them.
+     *
+     * @return TagInfos of all known tags, which change as tags are created and removed
+     */
+    static ObservableList<TagInfo> getTagInfos() {
+        update();
+        return tagInfos;
+    }
+
+    /**
+     * Returns the TagInfo of a tag.
+     *
+     * @param tag tag whose TagInfo is wanted
+     * @return TagInfo of the tag
+     */
+    static TagInfo get(Tag tag) {
+        update();
+        return byTag.computeIfAbsent(tag, TagInfoModel::create);
+    }
+
+    /**
+     * Brings the TagInfos in step with the known tags, if tags were created or removed since the last time. The
+     * TagInfos of tags still known are kept, checked or not.
+     */
+    static void update() {
+        int changes = TagManager.allTags.getChangeCount();
+        if (changes == registryChanges) {
+            return;
+        }
+        registryChanges = changes;
+        IdentityHashMap<Tag, TagInfo> known = new IdentityHashMap<>();
+        ArrayList<TagInfo> infos = new ArrayList<>();
+        for (Tag tag : TagManager.allTags) {
+            TagInfo tagInfo = byTag.get(tag);
+            if (tagInfo == null) {
+                tagInfo = create(tag);
+            }
+            known.put(tag, tagInfo);
+            infos.add(tagInfo);
+        }
+        selected.removeIf(tagInfo -> !known.containsKey(tagInfo.getTag()));
+        byTag.clear();
+        byTag.putAll(known);
+        tagInfos.setAll(infos);
+    }
+
+    /**
+     * Returns the checked TagInfos among some of them, in the order they were checked.
+     *
+     * @param shown whether a TagInfo is one of those looked at
+     * @return checked TagInfos
+     */
+    static ArrayList<TagInfo> getSelected(Predicate<TagInfo> shown) {
+        ArrayList<TagInfo> selectedTags = new ArrayList<>();
+        for (TagInfo tagInfo : selected) {
+            if (shown.test(tagInfo)) {
+                selectedTags.add(tagInfo);
+            }
+        }
+        return selectedTags;
+    }
+
+    /**
+     * Unchecks TagInfos.
+     *
+     * @param tagInfos TagInfos to be unchecked
+     */
+    static void deselect(List<TagInfo> tagInfos) {
+        for (TagInfo tagInfo : tagInfos) {
+            tagInfo.selectedProperty().set(false);
+        }
+    }
+
+    /**
+     * Unchecks every TagInfo.
+     */
+    static void clearSelection() {
+        deselect(new ArrayList<>(selected));
+    }
+
+    /**
+     * Helper in get and update. Makes the TagInfo of a tag, which adds itself to the checked ones when it is checked.
+     */
+    private static TagInfo create(Tag tag) {
+        TagInfo tagInfo = new TagInfo(tag.getName(), tag);
+        tagInfo.selectedProperty().addListener((observable, wasSelected, isSelected) -> {
+            if (isSelected) {
+                selected.add(tagInfo);
+            } else {
+                selected.remove(tagInfo);
+            }
+        });
+        return tagInfo;
+    }
+}
@@ -0,0 +1,78 @@
+package pack.tag;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test Class for TagInfoModel.
+ */
+class TagInfoModelTest {
+
+    /**
+     * Resets global list of Tags and the checked TagInfos after every test.
+     */
+    @AfterEach
+    void tearDown() {
+        TagInfoModel.clearSelection();
+        TagManager.allTags.clear();
+        TagInfoModel.update();
+    }
+
+    /**
+     * Tests to see if TagInfos are kept while their tags are known, and follow tags being created and removed.
+     */
+    @Test
+    void followsTags() {
+        Tag red = TagManager.getTag("red");
+        Tag blue = TagManager.getTag("blue");
+        TagInfo redInfo = TagInfoModel.get(red);
+        assertEquals(2, TagInfoModel.getTagInfos().size());
+        assertSame(redInfo, TagInfoModel.getTagInfos().get(0));
+
+        TagManager.getTag("green");
+        TagManager.allTags.remove(blue);
+        ArrayList<String> names = new ArrayList<>();
+        for (TagInfo tagInfo : TagInfoModel.getTagInfos()) {
+            names.add(tagInfo.getName());
+        }
+        ArrayList<String> list = new ArrayList<>();
+        list.add("red");
+        list.add("green");
+        assertEquals(list, names);
+        assertSame(redInfo, TagInfoModel.get(red));
+    }
+
+    /**
+     * Tests to see if checked TagInfos are found in the order they were checked, and forgotten with their tags.
+     */
+    @Test
+    void tracksSelection() {
+        TagInfo red = TagInfoModel.get(TagManager.getTag("red"));
+        TagInfo blue = TagInfoModel.get(TagManager.getTag("blue"));
+        TagInfo green = TagInfoModel.get(TagManager.getTag("green"));
+        green.selectedProperty().set(true);
+        red.selectedProperty().set(true);
+        blue.selectedProperty().set(true);
+        blue.selectedProperty().set(false);
+
+        ArrayList<TagInfo> list = new ArrayList<>();
+        list.add(green);
+        list.add(red);
+        assertEquals(list, TagInfoModel.getSelected(tagInfo -> true));
+        list.remove(red);
+        assertEquals(list, TagInfoModel.getSelected(tagInfo -> tagInfo != red));
+
+        TagManager.allTags.remove(green.getTag());
+        TagInfoModel.update();
+        list.clear();
+        list.add(red);
+        assertEquals(list, TagInfoModel.getSelected(tagInfo -> true));
+        TagInfoModel.clearSelection();
+        assertFalse(red.isSelected());
+        assertTrue(TagInfoModel.getSelected(tagInfo -> true).isEmpty());
+    }
+}
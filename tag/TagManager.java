@@ -1,19 +1,40 @@
 package pack.tag;
 
+import pack.image.BulkRenamer;
 import pack.image.Image;
 import pack.image.ImageManager;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Manages the Tag Class.
  */
 public class TagManager {
+
+    /**
+     * Character standing for the separator of hierarchical tag names in file names, which cannot hold '/'. It is
+     * the division slash, which looks the same.
+     */
+    static final char FILE_NAME_SEPARATOR = '\u2215';
     /**
-     * Keeps track of all tags in list from user.
+     * Keeps track of all tags in list from user, indexed by name.
      */
-    static ArrayList<Tag> allTags = new ArrayList<>();
+    static final TagRegistry allTags = new TagRegistry();
+
+    /**
+     * File the tags are stored in between runs, null if they are not stored.
+     */
+    private static File tagStoreFile;
 
     /**
      * Gets configuration data of TagManagers.
@@ -21,11 +42,11 @@ public class TagManager {
      * @return A String format of tag names
      */
     public static String getConfigTagList() {
-        String tagListData = "";
+        StringBuilder tagListData = new StringBuilder();
         for (Tag tag : allTags) {
-            tagListData = tagListData + "@" + tag.getName();
+            tagListData.append("@").append(tag.getName());
         }
-        return tagListData;
+        return tagListData.toString();
     }
 
     /**
@@ -47,54 +68,246 @@ public class TagManager {
 
 
     /**
-     * Creates a tag with name tagName.
+     * Loads the tags from the tag store file. The first time, when there is no tag store yet, the tags are taken from
+     * the tag list of the configuration file instead, and they are stored in the tag store from then on.
+     *
+     * @param tagStorePathname path of the tag store file
+     * @param tagListData      tag list from the configuration file, null if there is none
+     */
+    public static void configureTagStore(String tagStorePathname, String tagListData) {
+        tagStoreFile = new File(tagStorePathname);
+        try {
+            List<TagStore.Entry> entries = TagStore.load(tagStoreFile);
+            if (entries != null) {
+                for (TagStore.Entry entry : entries) {
+                    Tag tag = createTag(entry.name);
+                    if (entry.uses > 0) {
+                        tag.setStoredUses(entry.uses);
+                    }
+                }
+                return;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (tagListData != null) {
+            configureTagList(tagListData);
+        }
+    }
+
+    /**
+     * Writes all tags and their library-wide use counts to the tag store file.
+     */
+    public static void saveTagStore() {
+        if (tagStoreFile == null) {
+            return;
+        }
+        try {
+            TagStore.save(tagStoreFile, new ArrayList<>(allTags));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Creates a tag with name tagName. If a tag with that name already exists, it is returned instead, so there is
+     * never more than one Tag per name.
      *
      * @param tagName Name of wanted tag
-     * @return new Tag with name tagName
+     * @return Tag with name tagName
      */
     static Tag createTag(String tagName) {
-        Tag newTag = new Tag(tagName);
-        allTags.add(newTag);
-        return newTag;
+        return allTags.findOrCreate(tagName);
     }
 
     /**
-     * Returns tag with name tagName, if it doesn't exist it first creates the tag.
+     * Returns tag with name tagName, if it doesn't exist it first creates the tag. Safe to call from several
+     * scanning threads at once, and takes constant time.
      *
      * @param tagName Name of wanted tag
      * @return Tag being searched for
      */
     public static Tag getTag(String tagName) {
-        // If the tag exists, return the existing tag
-        for (Tag tag : allTags) {
-            if (tag.getName().equals(tagName)) {
-                return tag;
-            }
-        }
-        // Otherwise, make a new Tag and return the newly made tag
-        return createTag(tagName);
+        return allTags.findOrCreate(tagName);
+    }
+
+
+    /**
+     * Returns the tag with name tagName without creating it. Takes constant time.
+     *
+     * @param tagName Name of wanted tag
+     * @return Tag being searched for, or null if there is none
+     */
+    static Tag findTag(String tagName) {
+        return allTags.find(tagName);
     }
 
+    /**
+     * Returns the most used tags whose names start with what has been typed, for completing a tag name. Use is the
+     * number of loaded images a tag is assigned to, and ties are broken by name.
+     *
+     * @param prefix start of the tag names
+     * @param limit  greatest number of tags returned
+     * @return up to limit tags, the most used first
+     */
+    static List<Tag> completeTags(String prefix, int limit) {
+        return allTags.complete(prefix, limit);
+    }
 
     /**
-     * Removes this tag from list of known tags.
+     * Removes this tag from all images, and from the list of known tags unless other tags are under it.
      *
      * @param tag tag to be deleted from the pool of tags
      */
     static void deleteTag(Tag tag) {
-        allTags.remove(tag);
-        ImageManager.removeTagFromAllImages(tag);
+        deleteTags(Collections.singletonList(tag));
+    }
+
+    /**
+     * Removes tags from all images, renaming the files of the images at once, and from the list of known tags unless
+     * other tags are under them.
+     *
+     * @param tags tags to be deleted from the pool of tags
+     */
+    static void deleteTags(Collection<Tag> tags) {
+        renameFiles(planDeleteTags(tags));
+    }
+
+    /**
+     * First step of deleting tags: removes them from all images and from the list of known tags unless other tags are
+     * under them, and plans renaming the files of the images. The files are renamed by running the BulkRenamer
+     * returned, possibly in the background, then finishing it.
+     *
+     * @param tags tags to be deleted from the pool of tags
+     * @return renamer of the files of the images that had the tags
+     */
+    static BulkRenamer planDeleteTags(Collection<Tag> tags) {
+        HashMap<Tag, Tag> removals = new HashMap<>();
+        for (Tag tag : tags) {
+            removals.put(tag, null);
+        }
+        BulkRenamer renamer = ImageManager.planReplaceTags(removals);
+        removeTags(tags);
+        return renamer;
+    }
+
+    /**
+     * Renames a tag, along with the tags under it, on all images at once. If a tag with the new name already exists,
+     * the tag is merged into it.
+     *
+     * @param tag     tag to be renamed
+     * @param newName new name of the tag
+     * @return the tag with the new name
+     * @throws IllegalArgumentException if the new name is empty or under the tag itself
+     */
+    static Tag renameTag(Tag tag, String newName) {
+        renameFiles(planRenameTags(Collections.singletonMap(tag, newName)));
+        return getTag(newName);
+    }
+
+    /**
+     * Merges a tag, along with the tags under it, into another one on all images at once.
+     *
+     * @param source tag that is merged and deleted
+     * @param target tag that is kept
+     * @throws IllegalArgumentException if the target is under the source
+     */
+    static void mergeTags(Tag source, Tag target) {
+        renameTag(source, target.getName());
+    }
+
+    /**
+     * First step of renaming tags, along with the tags under them, on all images at once: changes the tags of the
+     * images and of the list of known tags, and plans renaming the files of the images. The files are renamed by
+     * running the BulkRenamer returned, possibly in the background, then finishing it. A tag whose new name already
+     * exists is merged into it, and a tag under another one being renamed goes along with that one.
+     *
+     * @param newNames new name of every tag being renamed
+     * @return renamer of the files of the images that had the tags
+     * @throws IllegalArgumentException if a new name is empty or under its tag itself, before anything is changed
+     */
+    static BulkRenamer planRenameTags(Map<Tag, String> newNames) {
+        for (Map.Entry<Tag, String> entry : newNames.entrySet()) {
+            String name = entry.getKey().getName();
+            String newName = entry.getValue();
+            if (newName.isEmpty() || newName.startsWith(name + Tag.SEPARATOR)) {
+                throw new IllegalArgumentException("Cannot rename " + name + " to " + newName);
+            }
+        }
+        ArrayList<Tag> renamedTags = new ArrayList<>();
+        HashMap<Tag, Tag> replacements = new HashMap<>();
+        for (Map.Entry<Tag, String> entry : newNames.entrySet()) {
+            Tag tag = entry.getKey();
+            String newName = entry.getValue();
+            if (newName.equals(tag.getName()) || isUnderAny(tag, newNames.keySet())) {
+                continue;
+            }
+            ArrayList<Tag> subtree = new ArrayList<>();
+            addSubtree(tag, subtree);
+            for (Tag source : subtree) {
+                replacements.put(source, getTag(newName + source.getName().substring(tag.getName().length())));
+            }
+            renamedTags.addAll(subtree);
+        }
+        BulkRenamer renamer = ImageManager.planReplaceTags(replacements);
+        removeTags(renamedTags);
+        return renamer;
+    }
+
+    /**
+     * Helper in deleteTags and renameTag. Renames the files planned, waiting until they are renamed.
+     */
+    private static void renameFiles(BulkRenamer renamer) {
+        renamer.run(BulkRenamer.Progress.NONE);
+        renamer.finish();
+    }
+
+    /**
+     * Helper in planRenameTags. Returns True if a tag is under any of some tags.
+     */
+    private static boolean isUnderAny(Tag tag, Set<Tag> tags) {
+        for (Tag parent = tag.getParent(); parent != null; parent = parent.getParent()) {
+            if (tags.contains(parent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Helper in planRenameTags. Adds a tag and all the tags under it to a list.
+     */
+    private static void addSubtree(Tag tag, List<Tag> subtree) {
+        subtree.add(tag);
+        for (Tag child : tag.getChildren()) {
+            addSubtree(child, subtree);
+        }
     }
 
     /**
-     * Returns list of all available tags to add to an image.
+     * Helper in planDeleteTags and planRenameTags. Removes tags from the list of known tags, the deepest first, keeping the
+     * ones with other tags under them, since their names still go through them.
+     */
+    private static void removeTags(Collection<Tag> tags) {
+        ArrayList<Tag> deepestFirst = new ArrayList<>(tags);
+        deepestFirst.sort(Comparator.comparingInt((Tag tag) -> tag.getName().length()).reversed());
+        for (Tag tag : deepestFirst) {
+            if (!tag.hasChildren()) {
+                allTags.remove(tag);
+            }
+        }
+    }
+
+    /**
+     * Returns list of all available tags to add to an image. Takes time linear in the number of tags, since the tags
+     * of the image are a set.
      *
      * @param image Image where we want to find tags
      * @return List of all available tags
      */
     static ArrayList<Tag> getAvailableTags(Image image) {
-        ArrayList<Tag> availableTags = new ArrayList<>();
-        ArrayList<Tag> assignedTags = image.getAssignedTags();
+        ArrayList<Tag> availableTags = new ArrayList<>(allTags.size());
+        List<Tag> assignedTags = image.getAssignedTags();
         for (Tag tag : allTags) {
             if (!assignedTags.contains(tag)) {
                 availableTags.add(tag);
@@ -109,11 +322,10 @@ public class TagManager {
      * @param searchingTag Tag being searched for
      * @return Images with this Tag
      */
-    public static ArrayList<Image> searchTags(String searchingTag) {
-        for (Tag tag : allTags) {
-            if (tag.getName().equals(searchingTag)) {
-                return tag.getImages();
-            }
+    public static List<Image> searchTags(String searchingTag) {
+        Tag tag = allTags.find(searchingTag);
+        if (tag != null) {
+            return tag.getImages();
         }
         return new ArrayList<>();
     }
@@ -126,22 +338,45 @@ public class TagManager {
      */
     public static ArrayList<Tag> getTagsFromFileName(String filename) {
         ArrayList<Tag> tagsFromName = new ArrayList<>();
-        String[] tagNames = filename.substring(filename.indexOf("@") + 1,
-                filename.lastIndexOf(".")).split(" @");
+        int indexOfFileExtension = filename.lastIndexOf(".");
+        if (indexOfFileExtension < filename.indexOf("@")) {
+            indexOfFileExtension = filename.length();
+        }
+        String[] tagNames = filename.substring(filename.indexOf("@") + 1, indexOfFileExtension).split(" @");
 
         for (String tagName : tagNames) {
-            tagsFromName.add(getTag(tagName));
+            tagsFromName.add(getTag(fromFileName(tagName)));
         }
 
         return tagsFromName;
     }
 
+    /**
+     * Returns a tag name as it is written in file names, with the separators of hierarchical names replaced.
+     *
+     * @param tagName name of a tag
+     * @return the name as written in file names
+     */
+    public static String toFileName(String tagName) {
+        return tagName.replace(Tag.SEPARATOR, FILE_NAME_SEPARATOR);
+    }
+
+    /**
+     * Returns the name of a tag written in a file name.
+     *
+     * @param fileNameTag tag name as written in a file name
+     * @return the name of the tag
+     */
+    public static String fromFileName(String fileNameTag) {
+        return fileNameTag.replace(FILE_NAME_SEPARATOR, Tag.SEPARATOR);
+    }
+
     /**
      * Returns an ArrayList of all the Tags that are in the program.
      *
      * @return All Tags in the program
      */
-    static ArrayList<Tag> getAllTags() {
+    static List<Tag> getAllTags() {
         return allTags;
     }
 
@@ -152,5 +387,95 @@ public class TagManager {
         for (Tag tag : allTags) {
             tag.resetImages();
         }
+        ImageIndex.clear();
+        TagCooccurrence.clear();
+    }
+
+    /**
+     * Marks an Image as loaded, so it can be found by tag queries.
+     *
+     * @param image Image that has been loaded
+     */
+    public static void loadImage(Image image) {
+        if (ImageIndex.add(image)) {
+            TagCooccurrence.addImage(image.getAssignedTags());
+        }
+    }
+
+    /**
+     * Marks many Images as loaded at once, as when a scan has built them, so the index and the counts of tags
+     * assigned together are each locked once for all of them.
+     *
+     * @param images Images that have been loaded
+     */
+    public static void loadImages(List<Image> images) {
+        ArrayList<List<Tag>> tagLists = new ArrayList<>();
+        for (Image image : ImageIndex.addAll(images)) {
+            if (image.getAssignedTags().size() > 1) {
+                tagLists.add(image.getAssignedTags());
+            }
+        }
+        if (!tagLists.isEmpty()) {
+            TagCooccurrence.addImages(tagLists);
+        }
+    }
+
+    /**
+     * Marks an Image as no longer loaded, so it is left out of tag queries.
+     *
+     * @param image Image that is no longer loaded
+     */
+    public static void unloadImage(Image image) {
+        if (ImageIndex.remove(image)) {
+            TagCooccurrence.removeImage(image.getAssignedTags());
+        }
+    }
+
+    /**
+     * Records that a tag has been assigned to an Image, after it was added to the Image's tags.
+     *
+     * @param image Image the tag was assigned to
+     * @param tag   Tag assigned
+     */
+    public static void tagAssigned(Image image, Tag tag) {
+        tag.changeStoredUses(1);
+        if (ImageIndex.contains(image)) {
+            TagCooccurrence.addTag(tag, image.getAssignedTags());
+        }
+    }
+
+    /**
+     * Records that a tag has been removed from an Image, after it was taken out of the Image's tags.
+     *
+     * @param image Image the tag was removed from
+     * @param tag   Tag removed
+     */
+    public static void tagRemoved(Image image, Tag tag) {
+        tag.changeStoredUses(-1);
+        if (ImageIndex.contains(image)) {
+            TagCooccurrence.removeTag(tag, image.getAssignedTags());
+        }
+    }
+
+    /**
+     * Returns the tags most often assigned together with the tags of an Image, for suggesting what to tag it with.
+     *
+     * @param image Image being tagged
+     * @param limit greatest number of tags returned
+     * @return up to limit tags not assigned to the Image, best first
+     */
+    static List<Tag> suggestTags(Image image, int limit) {
+        return TagCooccurrence.suggest(image.getAssignedTags(), limit);
+    }
+
+    /**
+     * Returns the number of loaded Images two tags are both assigned to.
+     *
+     * @param first  one tag
+     * @param second another tag
+     * @return number of Images with both tags
+     */
+    static int countTogether(Tag first, Tag second) {
+        return TagCooccurrence.count(first, second);
     }
 }
@@ -6,6 +6,7 @@ import org.junit.jupiter.api.Test;
 import pack.image.Image;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -173,4 +174,224 @@ class TagManagerTest {
         assertEquals(list, tag.getImages());
         tearDown();
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests to see if createTag() returns the existing tag instead of making a duplicate.
+     */
+    @Test
+    void createTagExisting() {
+        Tag tag = TagManager.createTag("Red");
+        assertSame(tag, TagManager.createTag("Red"));
+        assertEquals(1, TagManager.allTags.size());
+        tearDown();
+    }
+
+    /**
+     * Tests to see if getTag() creates only one tag per name when called from several threads at once.
+     */
+    @Test
+    void getTagConcurrent() throws InterruptedException {
+        Tag[] found = new Tag[8];
+        Thread[] threads = new Thread[found.length];
+        for (int i = 0; i < threads.length; i++) {
+            int index = i;
+            threads[i] = new Thread(() -> found[index] = TagManager.getTag("Red"));
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (Tag tag : found) {
+            assertSame(found[0], tag);
+        }
+        assertEquals(1, TagManager.allTags.size());
+        tearDown();
+    }
+
+    /**
+     * Tests to see if a TagQuery combines tags with AND, OR and NOT.
+     */
+    @Test
+    void tagQuery() {
+        Image beach = new Image(new File("IMG_1 @beach @2019.jpg"));
+        Image blurry = new Image(new File("IMG_2 @beach @2019 @blurry.jpg"));
+        Image city = new Image(new File("IMG_3 @city.jpg"));
+        Tag beachTag = TagManager.getTag("beach");
+        Tag yearTag = TagManager.getTag("2019");
+        Tag blurryTag = TagManager.getTag("blurry");
+        Tag cityTag = TagManager.getTag("city");
+
+        TagQuery query = TagQuery.and(TagQuery.tag(beachTag), TagQuery.tag(yearTag),
+                TagQuery.not(TagQuery.tag(blurryTag)));
+        ArrayList<Image> list = new ArrayList<>();
+        list.add(beach);
+        assertEquals(list, query.search());
+
+        list.add(city);
+        assertEquals(list, TagQuery.or(TagQuery.tag(cityTag), query).search());
+
+        // images no longer loaded are not found
+        TagManager.unloadImage(city);
+        cityTag.removeImage(city);
+        assertEquals(0, TagQuery.tag(cityTag).count());
+        assertFalse(TagQuery.not(TagQuery.tag(beachTag)).search().contains(city));
+        TagManager.resetImagesFromTags();
+        tearDown();
+    }
+
+    /**
+     * Tests to see if completeTags() returns the tags starting with a prefix, the most used first, and follows tags
+     * being deleted.
+     */
+    @Test
+    void completeTags() {
+        Image first = new Image(new File("IMG_1 @beach @bear.jpg"));
+        Image second = new Image(new File("IMG_2 @bear.jpg"));
+        Tag beach = TagManager.getTag("beach");
+        Tag bear = TagManager.getTag("bear");
+        Tag be = TagManager.getTag("be");
+        TagManager.getTag("city");
+
+        ArrayList<Tag> list = new ArrayList<>();
+        list.add(bear);
+        list.add(beach);
+        list.add(be);
+        assertEquals(list, TagManager.completeTags("be", 5));
+        assertEquals(list.subList(0, 2), TagManager.completeTags("be", 2));
+        assertEquals(new ArrayList<Tag>(), TagManager.completeTags("bee", 5));
+
+        TagManager.allTags.remove(bear);
+        list.remove(bear);
+        assertEquals(list, TagManager.completeTags("b", 5));
+        assertNull(TagManager.findTag("bear"));
+        assertSame(beach, TagManager.findTag("beach"));
+        TagManager.resetImagesFromTags();
+        tearDown();
+    }
+
+    /**
+     * Tests to see if hierarchical tags are created with their ancestors, and if searching a tag finds the images of
+     * the tags under it.
+     */
+    @Test
+    void hierarchicalTags() {
+        Image paris = new Image(new File("IMG_1 @place\u2215europe\u2215paris.jpg"));
+        Image tokyo = new Image(new File("IMG_2 @place\u2215asia.jpg"));
+        Image both = new Image(new File("IMG_3 @place @place\u2215asia.jpg"));
+        Tag place = TagManager.findTag("place");
+        Tag europe = TagManager.findTag("place/europe");
+        Tag asia = TagManager.findTag("place/asia");
+        assertSame(place, europe.getParent());
+        assertSame(europe, TagManager.findTag("place/europe/paris").getParent());
+        assertNull(place.getParent());
+        assertEquals("place\u2215europe", TagManager.toFileName("place/europe"));
+
+        ArrayList<Image> list = new ArrayList<>();
+        list.add(paris);
+        assertEquals(list, TagQuery.named("place/europe").search());
+        assertEquals(3, TagQuery.named("place").count());
+        assertEquals(2, TagQuery.named("place/asia").count());
+
+        // an image stays under a tag while it has any tag of its subtree
+        asia.removeImage(both);
+        assertEquals(3, TagQuery.named("place").count());
+        place.removeImage(both);
+        assertEquals(2, TagQuery.named("place").count());
+        asia.removeImage(tokyo);
+        assertEquals(1, TagQuery.named("place").count());
+
+        // a tag with tags under it is kept when deleted
+        TagManager.deleteTag(europe);
+        assertSame(europe, TagManager.findTag("place/europe"));
+        TagManager.deleteTag(asia);
+        assertNull(TagManager.findTag("place/asia"));
+        assertEquals(1, place.getChildren().size());
+        TagManager.resetImagesFromTags();
+        tearDown();
+    }
+
+    /**
+     * Tests to see if renaming and merging tags renames the files of their images, and moves the tags under them.
+     */
+    @Test
+    void renameAndMergeTags() {
+        testImage.assignTag(TagManager.getTag("place/pari"));
+        Tag paris = TagManager.renameTag(TagManager.findTag("place/pari"), "place/paris");
+        assertNull(TagManager.findTag("place/pari"));
+        assertEquals("TestImage @place\u2215paris", testImage.getName());
+        assertTrue(testImage.getFile().exists());
+
+        // a merged tag is replaced in place, without duplicating the tag it is merged into
+        testImage.assignTag(TagManager.getTag("city"));
+        testImage.assignTag(TagManager.getTag("france"));
+        TagManager.mergeTags(TagManager.findTag("city"), paris);
+        assertNull(TagManager.findTag("city"));
+        assertEquals("TestImage @place\u2215paris @france", testImage.getName());
+        assertEquals(1, paris.getImageCount());
+
+        // the tags under a renamed tag move with it
+        Tag location = TagManager.renameTag(TagManager.findTag("place"), "location");
+        assertNull(TagManager.findTag("place"));
+        assertSame(location, TagManager.findTag("location/paris").getParent());
+        assertEquals("TestImage @location\u2215paris @france", testImage.getName());
+        assertTrue(testImage.getFile().exists());
+        assertThrows(IllegalArgumentException.class, () -> TagManager.renameTag(location, "location/paris/inner"));
+
+        TagManager.deleteTags(testImage.getAssignedTags());
+        assertEquals("TestImage", testImage.getName());
+        assertTrue(file.exists());
+        TagManager.resetImagesFromTags();
+    }
+
+    /**
+     * Tests to see if tags are migrated from the configuration tag list to the tag store, and read back from it with
+     * names the tag list could not hold.
+     */
+    @Test
+    void tagStore() throws IOException {
+        File storeFile = File.createTempFile("tags", ".store");
+        storeFile.delete();
+        TagManager.configureTagStore(storeFile.getPath(), "@Red@Blue");
+        assertEquals(2, TagManager.allTags.size());
+        TagManager.getTag("mail@home");
+        TagManager.getTag("place/europe");
+        TagManager.saveTagStore();
+
+        TagManager.allTags.clear();
+        TagManager.configureTagStore(storeFile.getPath(), "@Ignored");
+        ArrayList<String> names = new ArrayList<>();
+        for (Tag tag : TagManager.getAllTags()) {
+            names.add(tag.getName());
+        }
+        ArrayList<String> list = new ArrayList<>();
+        list.add("Red");
+        list.add("Blue");
+        list.add("mail@home");
+        list.add("place");
+        list.add("place/europe");
+        assertEquals(list, names);
+        assertSame(TagManager.findTag("place"), TagManager.findTag("place/europe").getParent());
+        storeFile.delete();
+        tearDown();
+    }
+
+    /**
+     * Tests to see if the use count stored is the one of the whole library, changed by assignments and removals, and
+     * not the number of images of the directory loaded.
+     */
+    @Test
+    void storedUses() {
+        Tag tag = TagManager.getTag("Red");
+        tag.setStoredUses(40);
+        testImage.assignTag(tag);
+        assertEquals(1, tag.getUses());
+        assertEquals(41, tag.getStoredUses());
+
+        // another directory is loaded
+        TagManager.resetImagesFromTags();
+        assertEquals(41, tag.getStoredUses());
+
+        testImage.removeTag(tag);
+        assertEquals(40, tag.getStoredUses());
+    }
+}
@@ -2,18 +2,45 @@ package pack.tag;
 
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
+import javafx.geometry.Side;
+import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.ChoiceDialog;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.Hyperlink;
 import javafx.scene.control.ListView;
+import javafx.scene.control.MenuItem;
 import javafx.scene.control.TextField;
+import javafx.scene.control.TextInputDialog;
 import javafx.scene.control.cell.CheckBoxListCell;
+import javafx.scene.layout.FlowPane;
 import pack.Main;
+import pack.image.BulkRenamer;
 import pack.image.FileInfo;
+import pack.image.ProgressWindow;
+import pack.image.RenameReport;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
 
 public class TagManagerUIController {
 
+    /**
+     * Greatest number of completions offered while a tag name is typed.
+     */
+    private static final int COMPLETIONS = 8;
+
+    /**
+     * Greatest number of tags suggested for the current Image.
+     */
+    private static final int SUGGESTIONS = 6;
+
     /**
      * TextField where a new tag gets typed in.
      */
@@ -50,22 +77,53 @@ public class TagManagerUIController {
     @FXML
     ListView<TagInfo> tagLibrary;
 
+    /**
+     * Tags often assigned together with the tags of the current Image, after a label.
+     */
+    @FXML
+    FlowPane suggestedTags;
+
     /**
      * Shows if there is currently an Image.
      */
     private boolean noImage = (Main.currentImageInfo == null);
 
+    /**
+     * Dropdown under the new tag field offering the existing tags that start with what is typed.
+     */
+    private final ContextMenu completionMenu = new ContextMenu();
+
+    /**
+     * TagInfos of the tags assigned to the current Image.
+     */
+    private final ObservableList<TagInfo> assigned = FXCollections.observableArrayList();
+
+    /**
+     * TagInfos of the tags shown in the tag library: those not assigned to the current Image whose names contain
+     * what is typed in the new tag field.
+     */
+    private FilteredList<TagInfo> library;
+
     /**
      * Initialize the lists of tags.
      */
     @FXML
     private void initialize() {
+        TagInfoModel.clearSelection();
+        library = new FilteredList<>(TagInfoModel.getTagInfos());
+        tagLibrary.setItems(library);
+        tagLibrary.setCellFactory(CheckBoxListCell.forListView(TagInfo::selectedProperty));
+        assignedTags.setItems(assigned);
+        assignedTags.setCellFactory(CheckBoxListCell.forListView(TagInfo::selectedProperty));
+        newTag.textProperty().addListener((observable, oldText, text) -> {
+            showCompletions(text);
+            filterLibrary();
+        });
+        showTags();
         if (!noImage) {
-            updateListView(assignedTags, Main.currentImageInfo.getImage().getAssignedTags());
-            updateListView(tagLibrary, TagManager.getAvailableTags(Main.currentImageInfo.getImage()));
             showImageSpecificFunctions();
+            showSuggestions();
         } else {
-            updateListView(tagLibrary, TagManager.getAllTags());
             assignedTags.setDisable(true);
             assignedTags.setMaxHeight(0);
             addSelectedTag.setDisable(true);
@@ -81,6 +139,8 @@ public class TagManagerUIController {
         assignedTags.setVisible(false);
         deleteSelectedTag.setVisible(false);
         addSelectedTag.setVisible(false);
+        suggestedTags.setVisible(false);
+        suggestedTags.setManaged(false);
         tagLibrary.setMinHeight(400);
     }
 
@@ -91,32 +151,69 @@ public class TagManagerUIController {
         assignedTags.setVisible(true);
         deleteSelectedTag.setVisible(true);
         addSelectedTag.setVisible(true);
+        suggestedTags.setVisible(true);
+        suggestedTags.setManaged(true);
         tagLibrary.setPrefHeight(200);
     }
 
+    /**
+     * Shows the most used tags starting with the text typed in the new tag field, or hides the dropdown when there
+     * are none.
+     *
+     * @param text text typed so far
+     */
+    private void showCompletions(String text) {
+        if (text == null || text.isEmpty()) {
+            completionMenu.hide();
+            return;
+        }
+        ArrayList<MenuItem> items = new ArrayList<>();
+        for (Tag tag : TagManager.completeTags(text, COMPLETIONS)) {
+            MenuItem item = new MenuItem(tag.getName() + " (" + tag.getImageCount() + ")");
+            item.setMnemonicParsing(false);
+            item.setOnAction(event -> {
+                newTag.setText(tag.getName());
+                handleAddNewTag();
+            });
+            items.add(item);
+        }
+        completionMenu.getItems().setAll(items);
+        if (items.isEmpty()) {
+            completionMenu.hide();
+        } else if (!completionMenu.isShowing()) {
+            completionMenu.show(newTag, Side.BOTTOM, 0, 0);
+        }
+    }
+
+    /**
+     * Shows the tags most often assigned together with the tags of the current Image, each a link that assigns it.
+     */
+    private void showSuggestions() {
+        suggestedTags.getChildren().remove(1, suggestedTags.getChildren().size());
+        for (Tag tag : TagManager.suggestTags(Main.currentImageInfo.getImage(), SUGGESTIONS)) {
+            Hyperlink link = new Hyperlink(tag.getName());
+            link.setMnemonicParsing(false);
+            link.setOnAction(event -> addTag(tag));
+            suggestedTags.getChildren().add(link);
+        }
+    }
+
     /**
      * Adds a new tag from what is typed by user.
      */
     @FXML
     private void handleAddNewTag() {
         String typedTag = newTag.getText();
-        for (TagInfo existing : tagLibrary.getItems()) {
-            if (typedTag.equals(existing.getName())) {
-                if (!noImage) {
-                    addTag(existing);
-                }
-                newTag.clear();
-                return;
-            }
+        if (typedTag.isEmpty()) {
+            return;
         }
         Tag tag = TagManager.createTag(typedTag);
-        TagInfo tagInfo = new TagInfo(tag.getName(), tag);
-        if (!noImage) {
-            addTag(tagInfo);
+        newTag.clear();
+        if (!noImage && !Main.currentImageInfo.getImage().getAssignedTags().contains(tag)) {
+            addTag(tag);
         } else {
-            tagLibrary.getItems().add(tagInfo);
+            showTags();
         }
-        newTag.clear();
     }
 
     /**
@@ -125,16 +222,13 @@ public class TagManagerUIController {
     @FXML
     private void handleCreateNewTag() {
         String typedTag = newTag.getText();
-        for (TagInfo existing : tagLibrary.getItems()) {
-            if (typedTag.equals(existing.getName())) {
-                newTag.clear();
-                return;
-            }
+        if (typedTag.isEmpty() || TagManager.findTag(typedTag) != null) {
+            newTag.clear();
+            return;
         }
-        Tag tag = TagManager.createTag(typedTag);
-        TagInfo tagInfo = new TagInfo(tag.getName(), tag);
-        tagLibrary.getItems().add(tagInfo);
+        TagManager.createTag(typedTag);
         newTag.clear();
+        showTags();
     }
 
     /**
@@ -147,11 +241,11 @@ public class TagManagerUIController {
         for (TagInfo tagInfo : assignedTagToRemove) {
             Main.currentImageInfo.getImage().removeTag(tagInfo.getTag());
         }
-
-        assignedTags.getItems().removeAll(assignedTagToRemove);
-        tagLibrary.getItems().addAll(assignedTagToRemove);
+        TagInfoModel.deselect(assignedTagToRemove);
 
         Main.currentImageInfo.updateFileInfo();
+        showTags();
+        showSuggestions();
     }
 
     /**
@@ -161,70 +255,230 @@ public class TagManagerUIController {
     private void handleDeleteSelectedTag() {
         ArrayList<TagInfo> libraryTagToRemove = getSelectedTag(tagLibrary);
 
+        ArrayList<Tag> tagsToDelete = new ArrayList<>();
         for (TagInfo tagInfo : libraryTagToRemove) {
-            TagManager.deleteTag(tagInfo.getTag());
+            tagsToDelete.add(tagInfo.getTag());
+        }
+        BulkRenamer renamer = TagManager.planDeleteTags(tagsToDelete);
+        // tags with tags under them are kept, unchecked
+        TagInfoModel.deselect(libraryTagToRemove);
+        renameFiles(renamer, "Deleting tags");
+    }
+
+    /**
+     * Renames the tag selected in the tag library, along with the tags under it, on all images.
+     */
+    @FXML
+    private void handleRenameSelectedTag() {
+        ArrayList<TagInfo> selected = getSelectedTag(tagLibrary);
+        if (selected.size() != 1) {
+            return;
+        }
+        Tag tag = selected.get(0).getTag();
+        TextInputDialog dialog = new TextInputDialog(tag.getName());
+        dialog.setTitle("Rename tag");
+        dialog.setHeaderText("Rename @" + tag.getName() + " on all images");
+        dialog.setContentText("New name:");
+        Optional<String> newName = dialog.showAndWait();
+        if (!newName.isPresent() || newName.get().isEmpty()) {
+            return;
+        }
+        BulkRenamer renamer;
+        try {
+            renamer = TagManager.planRenameTags(Collections.singletonMap(tag, newName.get()));
+        } catch (IllegalArgumentException e) {
+            showError("Tag not renamed", e);
+            return;
         }
+        TagInfoModel.clearSelection();
+        renameFiles(renamer, "Renaming tag");
+    }
+
+    /**
+     * Merges the tags selected in the tag library into the one of them that is chosen, on all images.
+     */
+    @FXML
+    private void handleMergeSelectedTags() {
+        ArrayList<Tag> selected = new ArrayList<>();
+        for (TagInfo tagInfo : getSelectedTag(tagLibrary)) {
+            selected.add(tagInfo.getTag());
+        }
+        if (selected.size() < 2) {
+            return;
+        }
+        ArrayList<String> names = new ArrayList<>();
+        for (Tag tag : selected) {
+            names.add(tag.getName());
+        }
+        ChoiceDialog<String> dialog = new ChoiceDialog<>(names.get(0), names);
+        dialog.setTitle("Merge tags");
+        dialog.setHeaderText("Merge " + selected.size() + " tags on all images");
+        dialog.setContentText("Keep:");
+        Optional<String> targetName = dialog.showAndWait();
+        if (!targetName.isPresent()) {
+            return;
+        }
+        Tag target = selected.get(names.indexOf(targetName.get()));
+        LinkedHashMap<Tag, String> newNames = new LinkedHashMap<>();
+        for (Tag source : selected) {
+            if (source != target) {
+                newNames.put(source, target.getName());
+            }
+        }
+        BulkRenamer renamer;
+        try {
+            renamer = TagManager.planRenameTags(newNames);
+        } catch (IllegalArgumentException e) {
+            showError("Tags not merged", e);
+            return;
+        }
+        TagInfoModel.clearSelection();
+        renameFiles(renamer, "Merging tags");
+    }
+
+    /**
+     * Helper in handleDeleteSelectedTag, handleRenameSelectedTag and handleMergeSelectedTags. Renames the files of the
+     * images whose tags changed in the background, showing how far it got, then shows the tags again.
+     */
+    private void renameFiles(BulkRenamer renamer, String title) {
+        if (renamer.getFileCount() == 0) {
+            renamer.finish();
+            refreshTags();
+            return;
+        }
+        Task<Void> task = new Task<Void>() {
+            @Override
+            protected Void call() {
+                renamer.run(files -> {
+                    updateProgress(files, renamer.getFileCount());
+                    updateMessage("Renamed " + files + " of " + renamer.getFileCount() + " images");
+                });
+                return null;
+            }
+        };
+        ProgressWindow progressWindow = new ProgressWindow(title, task);
+        task.setOnSucceeded(event -> {
+            progressWindow.close();
+            finishRenaming(renamer, title);
+        });
+        task.setOnFailed(event -> {
+            progressWindow.close();
+            task.getException().printStackTrace();
+            finishRenaming(renamer, title);
+        });
+        progressWindow.start("tag-renamer");
+    }
+
+    /**
+     * Helper in renameFiles. Hands the Images their new files and shows the tags again, then tells the user which
+     * files could not be renamed to match their new tags.
+     */
+    private void finishRenaming(BulkRenamer renamer, String title) {
+        RenameReport report = renamer.finish();
+        refreshTags();
+        if (!report.getOutOfSync().isEmpty()) {
+            Alert alert = new Alert(Alert.AlertType.WARNING, report.toString());
+            alert.setHeaderText(title + ": files not renamed");
+            alert.showAndWait();
+        }
+    }
 
-        tagLibrary.getItems().removeAll(libraryTagToRemove);
+    /**
+     * Helper in handleRenameSelectedTag and handleMergeSelectedTags. Tells the user why the tags were left as they
+     * were.
+     */
+    private void showError(String header, IllegalArgumentException e) {
+        Alert alert = new Alert(Alert.AlertType.WARNING, e.getMessage());
+        alert.setHeaderText(header);
+        alert.showAndWait();
+    }
+
+    /**
+     * Helper in renameFiles. Shows the tags again after they changed, once for all the images.
+     */
+    private void refreshTags() {
+        showTags();
+        if (!noImage) {
+            Main.currentImageInfo.updateFileInfo();
+            showSuggestions();
+        }
         FileInfo.updateAllInfo();
     }
 
     /**
-     * Returns the Tag which is currently selected in the list of all Tags.
+     * Returns the Tags which are currently checked in a list of Tags.
      *
-     * @param tags List of all the Tags as a TagInfo
-     * @return The currently selected Tag
+     * @param tags List of Tags as TagInfos, the assigned tags or the tag library
+     * @return The currently checked Tags shown in the list
      */
     private ArrayList<TagInfo> getSelectedTag(ListView<TagInfo> tags) {
-        ArrayList<TagInfo> selectedTags = new ArrayList<>();
-        for (TagInfo tagInfo : tags.getItems()) {
-            if (tagInfo.isSelected()) {
-                selectedTags.add(tagInfo);
-            }
+        if (tags == tagLibrary) {
+            return TagInfoModel.getSelected(this::isInLibrary);
         }
-        return selectedTags;
+        return TagInfoModel.getSelected(assigned::contains);
     }
 
     /**
-     * Adds a tag to current Image.
+     * Adds the checked tags of the tag library to current Image.
      */
     @FXML
     private void handleAddSelectedTag() {
-        ArrayList<TagInfo> toAdd = new ArrayList<>();
-        for (TagInfo tagInfo : tagLibrary.getItems()) {
-            if (tagInfo.isSelected()) {
-                addTag(tagInfo);
-                toAdd.add(tagInfo);
-            }
+        ArrayList<TagInfo> toAdd = getSelectedTag(tagLibrary);
+        for (TagInfo tagInfo : toAdd) {
+            Main.currentImageInfo.getImage().assignTag(tagInfo.getTag());
         }
-        tagLibrary.getItems().removeAll(toAdd);
+        TagInfoModel.deselect(toAdd);
         Main.currentImageInfo.updateFileInfo();
+        showTags();
+        showSuggestions();
     }
 
     /**
-     * Adds a new tag from its tag info.
+     * Adds a tag to current Image.
      *
-     * @param tagInfo: info of tag being added
+     * @param tag tag being added
      */
-    private void addTag(TagInfo tagInfo) {
-        Main.currentImageInfo.getImage().assignTag(tagInfo.getTag());
+    private void addTag(Tag tag) {
+        Main.currentImageInfo.getImage().assignTag(tag);
         Main.currentImageInfo.updateFileInfo();
-        assignedTags.getItems().add(tagInfo);
+        showTags();
+        showSuggestions();
     }
 
     /**
-     * Updates tags displayed on screen.
-     *
-     * @param listView listView seen by user
-     * @param tags     Tags to be added to add in listView
+     * Updates tags displayed on screen: the TagInfos of new tags are made, the assigned tags are listed again and the
+     * tag library is filtered again. Only the cells on screen are drawn again.
      */
-    private void updateListView(ListView<TagInfo> listView, ArrayList<Tag> tags) {
-        ArrayList<TagInfo> tagInfoList = new ArrayList<>();
-        for (Tag tag : tags) {
-            tagInfoList.add(new TagInfo(tag.getName(), tag));
+    private void showTags() {
+        TagInfoModel.update();
+        if (!noImage) {
+            ArrayList<TagInfo> assignedInfos = new ArrayList<>();
+            for (Tag tag : Main.currentImageInfo.getImage().getAssignedTags()) {
+                assignedInfos.add(TagInfoModel.get(tag));
+            }
+            assigned.setAll(assignedInfos);
         }
-        ObservableList<TagInfo> Tags = FXCollections.observableArrayList(tagInfoList);
-        listView.setItems(Tags);
-        listView.setCellFactory(CheckBoxListCell.forListView(TagInfo::selectedProperty));
+        filterLibrary();
+        tagLibrary.refresh();
+    }
+
+    /**
+     * Filters the tag library again after the assigned tags or the typed text changed.
+     */
+    private void filterLibrary() {
+        library.setPredicate(this::isInLibrary);
+    }
+
+    /**
+     * Helper in filterLibrary and getSelectedTag. Returns whether a tag is shown in the tag library: it is not
+     * assigned to the current Image, which takes constant time as the assigned tags are a set, and its name contains
+     * what is typed.
+     */
+    private boolean isInLibrary(TagInfo tagInfo) {
+        List<Tag> assignedToImage = noImage ? Collections.emptyList()
+                : Main.currentImageInfo.getImage().getAssignedTags();
+        String typed = newTag.getText();
+        return !assignedToImage.contains(tagInfo.getTag())
+                && (typed == null || typed.isEmpty() || tagInfo.getName().contains(typed));
     }
 }
@@ -0,0 +1,391 @@
+package pack.tag;
+
+import pack.image.Image;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Boolean query over the tags of the loaded images, such as "beach AND 2019 AND NOT blurry". A query is evaluated on
+ * the compressed bitmaps of image ids kept by every Tag, so its cost depends on the number of matching images and
+ * not on the number of loaded images. A tag matches the images with it or with any tag under it, such as
+ * "place/europe" matching images tagged "place/europe/paris". NOT is relative to all loaded images. Queries typed by the user are parsed with
+ * parse and then planned with plan, which orders intersections by the number of images of their terms.
+ */
+public abstract class TagQuery {
+
+    /**
+     * Parses the text of a query, see TagQueryParser for the syntax.
+     *
+     * @param text text of the query
+     * @return the query, not yet planned
+     * @throws IllegalArgumentException if the text is not a valid query
+     */
+    public static TagQuery parse(String text) {
+        return TagQueryParser.parse(text);
+    }
+
+    /**
+     * Returns the query matching the images with a tag.
+     *
+     * @param tag Tag the images have
+     * @return the query
+     */
+    public static TagQuery tag(Tag tag) {
+        return new TagTerm(tag);
+    }
+
+    /**
+     * Returns the query matching the images with the tag of a name. Does not create the tag.
+     *
+     * @param tagName name of the tag
+     * @return the query, matching nothing if there is no tag with that name
+     */
+    public static TagQuery named(String tagName) {
+        Tag tag = TagManager.allTags.find(tagName);
+        return tag == null ? new Empty() : new TagTerm(tag);
+    }
+
+    /**
+     * Returns the query matching the images with any tag whose name starts with a prefix. The tags are found through
+     * the prefix trie of the registry, not by going through every tag.
+     *
+     * @param prefix start of the tag names
+     * @return the query
+     */
+    public static TagQuery prefix(String prefix) {
+        ArrayList<TagQuery> terms = new ArrayList<>();
+        for (Tag tag : TagManager.allTags.withPrefix(prefix)) {
+            terms.add(new TagTerm(tag));
+        }
+        return new Or(terms);
+    }
+
+    /**
+     * Returns the query matching the images matched by all of the given queries.
+     *
+     * @param queries queries that all have to match
+     * @return the query
+     */
+    public static TagQuery and(TagQuery... queries) {
+        return new And(Arrays.asList(queries));
+    }
+
+    /**
+     * Returns the query matching the images matched by any of the given queries.
+     *
+     * @param queries queries of which one has to match
+     * @return the query
+     */
+    public static TagQuery or(TagQuery... queries) {
+        return new Or(Arrays.asList(queries));
+    }
+
+    /**
+     * Returns the query matching the loaded images not matched by a query.
+     *
+     * @param query query that must not match
+     * @return the query
+     */
+    public static TagQuery not(TagQuery query) {
+        return new Not(query);
+    }
+
+    /**
+     * Returns the loaded images matched by this query, in the order they were loaded.
+     *
+     * @return matching Images
+     */
+    public List<Image> search() {
+        return ImageIndex.toImages(evaluate());
+    }
+
+    /**
+     * Returns the number of loaded images matched by this query.
+     *
+     * @return number of matching images
+     */
+    public int count() {
+        return evaluate().cardinality();
+    }
+
+    /**
+     * Returns the plan of this query: an equivalent query in which nested operators of the same kind are merged,
+     * terms matching nothing are dropped, and the terms of every AND are ordered from the fewest images to the
+     * most, so intersections start from the most selective tag and stop as soon as they are empty.
+     *
+     * @return the planned query
+     */
+    public abstract TagQuery plan();
+
+    /**
+     * Returns the ids of the images matched by this query.
+     *
+     * @return new bitmap of image ids
+     */
+    abstract RoaringBitmap evaluate();
+
+    /**
+     * Returns an upper bound of the number of images matched by this query, without evaluating it.
+     *
+     * @return estimated number of images
+     */
+    abstract int estimate();
+
+    /**
+     * Images matched by no query, such as a tag name that is no tag.
+     */
+    private static class Empty extends TagQuery {
+
+        @Override
+        public TagQuery plan() {
+            return this;
+        }
+
+        @Override
+        RoaringBitmap evaluate() {
+            return new RoaringBitmap();
+        }
+
+        @Override
+        int estimate() {
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "()";
+        }
+    }
+
+    /**
+     * Images with a tag or any tag under it.
+     */
+    private static class TagTerm extends TagQuery {
+
+        private final Tag tag;
+
+        TagTerm(Tag tag) {
+            this.tag = tag;
+        }
+
+        @Override
+        public TagQuery plan() {
+            return this;
+        }
+
+        @Override
+        RoaringBitmap evaluate() {
+            return tag.getSubtreeImageIds();
+        }
+
+        @Override
+        int estimate() {
+            return tag.getSubtreeImageCount();
+        }
+
+        @Override
+        public String toString() {
+            return tag.getName();
+        }
+    }
+
+    /**
+     * Images matched by all of some queries. The queries under NOT are subtracted from the intersection of the
+     * others, so the complement of the loaded images is never built. Terms are intersected in order, and evaluation
+     * stops once the intersection is empty.
+     */
+    private static class And extends TagQuery {
+
+        private final List<TagQuery> queries;
+
+        And(List<TagQuery> queries) {
+            this.queries = queries;
+        }
+
+        @Override
+        public TagQuery plan() {
+            ArrayList<TagQuery> included = new ArrayList<>();
+            ArrayList<TagQuery> excluded = new ArrayList<>();
+            collect(this, included, excluded);
+            for (TagQuery query : included) {
+                if (query.estimate() == 0) {
+                    return new Empty();
+                }
+            }
+            if (included.isEmpty() && excluded.isEmpty()) {
+                return new Empty();
+            }
+            // most selective first, so every intersection is at most as large as the smallest term
+            included.sort(Comparator.comparingInt(TagQuery::estimate));
+            excluded.removeIf(query -> query.estimate() == 0);
+            ArrayList<TagQuery> planned = new ArrayList<>(included);
+            for (TagQuery query : excluded) {
+                planned.add(new Not(query));
+            }
+            return planned.size() == 1 ? planned.get(0) : new And(planned);
+        }
+
+        /**
+         * Helper in plan. Gathers the planned terms of nested ANDs, with the queries under NOT apart.
+         */
+        private static void collect(And and, List<TagQuery> included, List<TagQuery> excluded) {
+            for (TagQuery query : and.queries) {
+                TagQuery planned = query.plan();
+                if (planned instanceof And) {
+                    collect((And) planned, included, excluded);
+                } else if (planned instanceof Not) {
+                    excluded.add(((Not) planned).query);
+                } else {
+                    included.add(planned);
+                }
+            }
+        }
+
+        @Override
+        RoaringBitmap evaluate() {
+            RoaringBitmap result = null;
+            ArrayList<TagQuery> excluded = new ArrayList<>();
+            for (TagQuery query : queries) {
+                if (query instanceof Not) {
+                    excluded.add(((Not) query).query);
+                } else {
+                    result = result == null ? query.evaluate() : result.and(query.evaluate());
+                    if (result.isEmpty()) {
+                        return result;
+                    }
+                }
+            }
+            if (result == null) {
+                result = ImageIndex.all();
+            }
+            for (TagQuery query : excluded) {
+                if (result.isEmpty()) {
+                    break;
+                }
+                result = result.andNot(query.evaluate());
+            }
+            return result;
+        }
+
+        @Override
+        int estimate() {
+            int estimate = ImageIndex.size();
+            for (TagQuery query : queries) {
+                if (!(query instanceof Not)) {
+                    estimate = Math.min(estimate, query.estimate());
+                }
+            }
+            return estimate;
+        }
+
+        @Override
+        public String toString() {
+            return join(queries, " AND ");
+        }
+    }
+
+    /**
+     * Images matched by any of some queries.
+     */
+    private static class Or extends TagQuery {
+
+        private final List<TagQuery> queries;
+
+        Or(List<TagQuery> queries) {
+            this.queries = queries;
+        }
+
+        @Override
+        public TagQuery plan() {
+            ArrayList<TagQuery> planned = new ArrayList<>();
+            for (TagQuery query : queries) {
+                TagQuery plannedQuery = query.plan();
+                if (plannedQuery instanceof Or) {
+                    planned.addAll(((Or) plannedQuery).queries);
+                } else if (plannedQuery.estimate() > 0) {
+                    planned.add(plannedQuery);
+                }
+            }
+            if (planned.isEmpty()) {
+                return new Empty();
+            }
+            return planned.size() == 1 ? planned.get(0) : new Or(planned);
+        }
+
+        @Override
+        RoaringBitmap evaluate() {
+            RoaringBitmap result = new RoaringBitmap();
+            for (TagQuery query : queries) {
+                result = result.or(query.evaluate());
+            }
+            return result;
+        }
+
+        @Override
+        int estimate() {
+            long estimate = 0;
+            for (TagQuery query : queries) {
+                estimate += query.estimate();
+            }
+            return (int) Math.min(estimate, ImageIndex.size());
+        }
+
+        @Override
+        public String toString() {
+            return join(queries, " OR ");
+        }
+    }
+
+    /**
+     * Loaded images not matched by a query.
+     */
+    private static class Not extends TagQuery {
+
+        private final TagQuery query;
+
+        Not(TagQuery query) {
+            this.query = query;
+        }
+
+        @Override
+        public TagQuery plan() {
+            TagQuery planned = query.plan();
+            if (planned instanceof Not) {
+                return ((Not) planned).query;
+            }
+            return new Not(planned);
+        }
+
+        @Override
+        RoaringBitmap evaluate() {
+            return ImageIndex.all().andNot(query.evaluate());
+        }
+
+        @Override
+        int estimate() {
+            return ImageIndex.size();
+        }
+
+        @Override
+        public String toString() {
+            return "NOT " + query;
+        }
+    }
+
+    /**
+     * Helper writing queries joined by an operator, in parentheses.
+     */
+    private static String join(List<TagQuery> queries, String operator) {
+        StringBuilder text = new StringBuilder("(");
+        for (int i = 0; i < queries.size(); i++) {
+            if (i > 0) {
+                text.append(operator);
+            }
+            text.append(queries.get(i));
+        }
+        return text.append(")").toString();
+    }
+}
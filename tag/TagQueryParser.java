@@ -0,0 +1,169 @@
+package pack.tag;
+
+import java.util.ArrayList;
+
+/**
+ * Parses the text of a tag query. The syntax is:
+ * <pre>
+ *     query := and ("OR" and)*
+ *     and   := unary ("AND"? unary)*
+ *     unary := "NOT" unary | "(" query ")" | tag
+ *     tag   := name | name* | "quoted name"
+ * </pre>
+ * Operators are upper case, so tags named "and" or "or" can still be searched, and AND may be left out between two
+ * terms. A name ending in * matches every tag starting with it. A name that is no tag matches nothing; parsing never
+ * creates tags.
+ */
+class TagQueryParser {
+
+    /**
+     * Text being parsed.
+     */
+    private final String text;
+
+    /**
+     * Position of the next character to read.
+     */
+    private int position;
+
+    private TagQueryParser(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Parses the text of a query.
+     *
+     * @param text text of the query
+     * @return the query, not yet planned
+     * @throws IllegalArgumentException if the text is not a valid query
+     */
+    static TagQuery parse(String text) {
+        TagQueryParser parser = new TagQueryParser(text);
+        TagQuery query = parser.parseOr();
+        parser.skipSpaces();
+        if (parser.position < text.length()) {
+            throw parser.error("Unexpected " + text.charAt(parser.position));
+        }
+        return query;
+    }
+
+    /**
+     * Helper parsing terms joined by OR.
+     */
+    private TagQuery parseOr() {
+        ArrayList<TagQuery> terms = new ArrayList<>();
+        terms.add(parseAnd());
+        while (acceptKeyword("OR")) {
+            terms.add(parseAnd());
+        }
+        return terms.size() == 1 ? terms.get(0) : TagQuery.or(terms.toArray(new TagQuery[0]));
+    }
+
+    /**
+     * Helper parsing terms joined by AND, written or implied.
+     */
+    private TagQuery parseAnd() {
+        ArrayList<TagQuery> terms = new ArrayList<>();
+        terms.add(parseUnary());
+        while (true) {
+            if (acceptKeyword("AND")) {
+                terms.add(parseUnary());
+            } else if (startsTerm()) {
+                terms.add(parseUnary());
+            } else {
+                break;
+            }
+        }
+        return terms.size() == 1 ? terms.get(0) : TagQuery.and(terms.toArray(new TagQuery[0]));
+    }
+
+    /**
+     * Helper parsing a negated term, a query in parentheses or a tag.
+     */
+    private TagQuery parseUnary() {
+        skipSpaces();
+        if (acceptKeyword("NOT")) {
+            return TagQuery.not(parseUnary());
+        }
+        if (position >= text.length()) {
+            throw error("Missing tag");
+        }
+        char next = text.charAt(position);
+        if (next == '(') {
+            position++;
+            TagQuery query = parseOr();
+            skipSpaces();
+            if (position >= text.length() || text.charAt(position) != ')') {
+                throw error("Missing )");
+            }
+            position++;
+            return query;
+        }
+        if (next == '"') {
+            int end = text.indexOf('"', position + 1);
+            if (end < 0) {
+                throw error("Missing \"");
+            }
+            String name = text.substring(position + 1, end);
+            position = end + 1;
+            return TagQuery.named(name);
+        }
+        int start = position;
+        while (position < text.length() && !isDelimiter(text.charAt(position))) {
+            position++;
+        }
+        if (start == position) {
+            throw error("Unexpected " + next);
+        }
+        String name = text.substring(start, position);
+        if (name.endsWith("*")) {
+            return TagQuery.prefix(name.substring(0, name.length() - 1));
+        }
+        return TagQuery.named(name);
+    }
+
+    /**
+     * Helper returning whether a term starts at the next character, for an implied AND.
+     */
+    private boolean startsTerm() {
+        skipSpaces();
+        if (position >= text.length() || text.charAt(position) == ')') {
+            return false;
+        }
+        return !peekKeyword("OR");
+    }
+
+    /**
+     * Helper consuming a keyword if it is next.
+     */
+    private boolean acceptKeyword(String keyword) {
+        skipSpaces();
+        if (peekKeyword(keyword)) {
+            position += keyword.length();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Helper returning whether a keyword, as a whole word, is next.
+     */
+    private boolean peekKeyword(String keyword) {
+        int end = position + keyword.length();
+        return text.startsWith(keyword, position) && (end == text.length() || isDelimiter(text.charAt(end)));
+    }
+
+    private void skipSpaces() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private static boolean isDelimiter(char c) {
+        return Character.isWhitespace(c) || c == '(' || c == ')' || c == '"';
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at " + position + " in " + text);
+    }
+}
@@ -0,0 +1,94 @@
+package pack.tag;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pack.image.Image;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test Class for TagQuery and its parser.
+ */
+class TagQueryTest {
+    private Image beach;
+    private Image beachBlurry;
+    private Image city;
+    private Image tripRome;
+
+    /**
+     * Loads a few images with tags before every test.
+     */
+    @BeforeEach
+    void setUp() {
+        beach = new Image(new File("IMG_1 @beach @2019.jpg"));
+        beachBlurry = new Image(new File("IMG_2 @beach @2019 @blurry.jpg"));
+        city = new Image(new File("IMG_3 @city @my trip.jpg"));
+        tripRome = new Image(new File("IMG_4 @trip-rome @2019.jpg"));
+    }
+
+    /**
+     * Resets global list of Tags after every test.
+     */
+    @AfterEach
+    void tearDown() {
+        TagManager.resetImagesFromTags();
+        TagManager.allTags.clear();
+    }
+
+    private static List<Image> search(String text) {
+        return TagQuery.parse(text).plan().search();
+    }
+
+    /**
+     * Tests to see if AND, OR and NOT are parsed with the usual precedence.
+     */
+    @Test
+    void operators() {
+        assertEquals(Arrays.asList(beach), search("beach AND 2019 AND NOT blurry"));
+        assertEquals(Arrays.asList(beach), search("beach 2019 NOT blurry"));
+        assertEquals(Arrays.asList(beach, city), search("city OR beach AND NOT blurry"));
+        assertEquals(Arrays.asList(beach, beachBlurry, city), search("(city OR beach) AND NOT trip-rome"));
+        assertEquals(Arrays.asList(city, tripRome), search("NOT beach"));
+    }
+
+    /**
+     * Tests to see if quoted names and prefix wildcards work.
+     */
+    @Test
+    void names() {
+        assertEquals(Arrays.asList(city), search("\"my trip\""));
+        assertEquals(Arrays.asList(tripRome), search("trip-*"));
+        assertEquals(Arrays.asList(beach, beachBlurry), search("b* AND NOT blurry* OR beach"));
+        assertEquals(new ArrayList<Image>(), search("unknown"));
+        // searching does not create tags
+        assertNull(TagManager.allTags.find("unknown"));
+    }
+
+    /**
+     * Tests to see if invalid queries are rejected.
+     */
+    @Test
+    void invalid() {
+        assertThrows(IllegalArgumentException.class, () -> TagQuery.parse("(beach"));
+        assertThrows(IllegalArgumentException.class, () -> TagQuery.parse("beach AND"));
+        assertThrows(IllegalArgumentException.class, () -> TagQuery.parse("\"beach"));
+        assertThrows(IllegalArgumentException.class, () -> TagQuery.parse("beach)"));
+    }
+
+    /**
+     * Tests to see if the plan intersects the most selective tag first and drops terms matching nothing.
+     */
+    @Test
+    void plan() {
+        assertEquals("(blurry AND beach AND 2019)", TagQuery.parse("2019 AND (beach AND blurry)").plan().toString());
+        assertEquals("()", TagQuery.parse("beach AND unknown").plan().toString());
+        assertEquals("beach", TagQuery.parse("beach OR unknown").plan().toString());
+        assertEquals("(beach AND NOT blurry)", TagQuery.parse("NOT blurry beach").plan().toString());
+    }
+}
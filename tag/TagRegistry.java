@@ -0,0 +1,189 @@
+package pack.tag;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * All known tags, indexed by name. Lookups go through a concurrent map, so they take constant time and do not block
+ * each other, and a tag is created at most once per name even when several scanning threads ask for it at the same
+ * time. The list view of the registry keeps the tags in creation order for display; iterating it walks a snapshot,
+ * so tags created meanwhile do not disturb the iteration. A prefix trie over the names, kept in step with the map,
+ * completes names as they are typed.
+ */
+class TagRegistry extends AbstractList<Tag> {
+
+    /**
+     * Tags by name.
+     */
+    private final ConcurrentHashMap<String, Tag> byName = new ConcurrentHashMap<>();
+
+    /**
+     * Tags in creation order. Guarded by itself.
+     */
+    private final ArrayList<Tag> inOrder = new ArrayList<>();
+
+    /**
+     * Tags by prefix of their name. Guarded by the order list.
+     */
+    private final TagTrie byPrefix = new TagTrie();
+
+    /**
+     * Returns the tag with a name.
+     *
+     * @param tagName name of the tag
+     * @return the Tag, or null if there is none with that name
+     */
+    Tag find(String tagName) {
+        return byName.get(tagName);
+    }
+
+    /**
+     * Returns the tag with a name, creating it if there is none. Atomic: concurrent calls with the same name return
+     * the same Tag. The ancestors of a new hierarchical tag are created too, and it is put under its parent.
+     *
+     * @param tagName name of the tag
+     * @return the existing or new Tag
+     */
+    Tag findOrCreate(String tagName) {
+        Tag tag = byName.get(tagName);
+        if (tag != null) {
+            return tag;
+        }
+        // outside the computation, which must not change the map itself
+        String parentName = Tag.parentName(tagName);
+        Tag parent = parentName == null ? null : findOrCreate(parentName);
+        return byName.computeIfAbsent(tagName, name -> {
+            Tag created = new Tag(name);
+            if (parent != null) {
+                parent.addChild(created);
+            }
+            synchronized (inOrder) {
+                inOrder.add(created);
+                modCount++;
+                byPrefix.add(created);
+            }
+            return created;
+        });
+    }
+
+    /**
+     * Adds a tag unless one with the same name is already registered, putting it under its parent, which is created
+     * if needed.
+     *
+     * @param tag Tag to be added
+     * @return True if the tag was added
+     */
+    @Override
+    public boolean add(Tag tag) {
+        String parentName = Tag.parentName(tag.getName());
+        Tag parent = parentName == null ? null : findOrCreate(parentName);
+        if (byName.putIfAbsent(tag.getName(), tag) != null) {
+            return false;
+        }
+        if (parent != null && tag.getParent() == null) {
+            parent.addChild(tag);
+        }
+        synchronized (inOrder) {
+            inOrder.add(tag);
+            modCount++;
+            byPrefix.add(tag);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        if (!(object instanceof Tag)) {
+            return false;
+        }
+        Tag tag = (Tag) object;
+        if (!byName.remove(tag.getName(), tag)) {
+            return false;
+        }
+        tag.removeFromParent();
+        synchronized (inOrder) {
+            inOrder.remove(tag);
+            modCount++;
+            byPrefix.remove(tag);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the most used tags whose names start with a prefix, the most used first, at most
+     * TagTrie.MAX_COMPLETIONS of them.
+     *
+     * @param prefix start of the names
+     * @param limit  greatest number of tags returned
+     * @return up to limit tags
+     */
+    List<Tag> complete(String prefix, int limit) {
+        synchronized (inOrder) {
+            return byPrefix.complete(prefix, limit);
+        }
+    }
+
+    /**
+     * Returns every tag whose name starts with a prefix, found through the prefix trie.
+     *
+     * @param prefix start of the names
+     * @return the tags, in the order of their names
+     */
+    List<Tag> withPrefix(String prefix) {
+        synchronized (inOrder) {
+            return byPrefix.withPrefix(prefix);
+        }
+    }
+
+    /**
+     * Returns the number of times tags were added or removed, to tell whether anything built from the tags is out of
+     * date.
+     *
+     * @return number of changes so far
+     */
+    int getChangeCount() {
+        synchronized (inOrder) {
+            return modCount;
+        }
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        return object instanceof Tag && byName.get(((Tag) object).getName()) == object;
+    }
+
+    @Override
+    public void clear() {
+        // not under the order lock, which creation takes while holding a lock of the map
+        byName.clear();
+        synchronized (inOrder) {
+            inOrder.clear();
+            modCount++;
+            byPrefix.clear();
+        }
+    }
+
+    @Override
+    public Tag get(int index) {
+        synchronized (inOrder) {
+            return inOrder.get(index);
+        }
+    }
+
+    @Override
+    public int size() {
+        synchronized (inOrder) {
+            return inOrder.size();
+        }
+    }
+
+    @Override
+    public Iterator<Tag> iterator() {
+        synchronized (inOrder) {
+            return new ArrayList<>(inOrder).iterator();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package pack.tag;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * File keeping the tag vocabulary between runs. Tags are written one after the other and read back in one sequential
+ * pass, so the file streams however many tags there are, and any character may appear in a tag name. The file is
+ * written to a temporary file first and renamed over the old one, so it is never left half written.
+ * <p>
+ * Layout, all numbers big-endian:
+ * <pre>
+ * header  int magic, int version, int tag count
+ * tags    per tag: int byte length, UTF-8 bytes of the name, byte flags, then the metadata the flags announce:
+ *           int use count    if flags has USES, the number of images of the whole library with the tag
+ * </pre>
+ */
+class TagStore {
+
+    /**
+     * First bytes of a tag store file.
+     */
+    private static final int MAGIC = 0x54504d54;
+
+    /**
+     * Version of the layout above.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Flag of a tag followed by its use count.
+     */
+    private static final byte USES = 1;
+
+    /**
+     * A tag as stored: its name and its metadata.
+     */
+    static class Entry {
+
+        final String name;
+
+        /**
+         * Use count of the tag when it was stored, -1 if it was not stored.
+         */
+        final int uses;
+
+        Entry(String name, int uses) {
+            this.name = name;
+            this.uses = uses;
+        }
+    }
+
+    /**
+     * Writes tags and their library-wide use counts to a tag store file, replacing it atomically.
+     *
+     * @param file tag store file
+     * @param tags tags to be stored, in order
+     * @throws IOException if the file cannot be written
+     */
+    static void save(File file, List<Tag> tags) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        File temporaryFile = File.createTempFile(file.getName(), ".tmp", directory);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporaryFile), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(tags.size());
+            for (Tag tag : tags) {
+                byte[] name = tag.getName().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(name.length);
+                out.write(name);
+                out.writeByte(USES);
+                out.writeInt(tag.getStoredUses());
+            }
+        } catch (IOException e) {
+            temporaryFile.delete();
+            throw e;
+        }
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the tags of a tag store file.
+     *
+     * @param file tag store file
+     * @return the stored tags in order, or null if the file does not exist or is not a tag store
+     * @throws IOException if the file cannot be read or is cut short
+     */
+    static List<Entry> load(File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        long fileLength = file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (fileLength < 12 || in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("Tag store is corrupt: " + file);
+            }
+            ArrayList<Entry> entries = new ArrayList<>(Math.min(count, 1 << 20));
+            for (int i = 0; i < count; i++) {
+                int length = in.readInt();
+                if (length < 0 || length > fileLength) {
+                    throw new IOException("Tag store is corrupt: " + file);
+                }
+                byte[] name = new byte[length];
+                in.readFully(name);
+                byte flags = in.readByte();
+                int uses = (flags & USES) != 0 ? in.readInt() : -1;
+                entries.add(new Entry(new String(name, StandardCharsets.UTF_8), uses));
+            }
+            return entries;
+        } catch (EOFException e) {
+            throw new IOException("Tag store is cut short: " + file, e);
+        }
+    }
+}
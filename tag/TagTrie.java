@@ -0,0 +1,312 @@
+package pack.tag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Prefix trie over the names of tags, for completing a tag name as it is typed. Each node keeps its children in a
+ * sorted array searched by binary search, so a lookup walks one node per character of the prefix. Each node also
+ * remembers the most used tags below it, merged from those of its children, until tags are added or removed or any
+ * tag's use changes; completing a prefix then takes one walk down, however many names start with it. Not thread
+ * safe: the registry holding it guards it.
+ */
+class TagTrie {
+
+    /**
+     * Greatest number of completions remembered per node, and returned.
+     */
+    static final int MAX_COMPLETIONS = 16;
+
+    /**
+     * Orders completions from the most used tag down, then by name.
+     */
+    private static final Comparator<Completion> BEST_FIRST =
+            Comparator.comparingInt((Completion completion) -> -completion.uses)
+                    .thenComparing(completion -> completion.tag.getName());
+
+    /**
+     * Node for the empty prefix.
+     */
+    private Node root = new Node();
+
+    /**
+     * Number of tags in the trie.
+     */
+    private int size;
+
+    /**
+     * Number of times tags were added or removed, to tell when the remembered completions are out of date.
+     */
+    private int changes;
+
+    /**
+     * Adds a tag under its name, replacing any tag with the same name.
+     *
+     * @param tag Tag to be added
+     */
+    void add(Tag tag) {
+        String name = tag.getName();
+        Node node = root;
+        for (int i = 0; i < name.length(); i++) {
+            node = node.childOrCreate(name.charAt(i));
+        }
+        if (node.tag == null) {
+            size++;
+        }
+        node.tag = tag;
+        changes++;
+    }
+
+    /**
+     * Removes a tag. Nodes left without tags below them are pruned.
+     *
+     * @param tag Tag to be removed
+     * @return True if the tag was in the trie
+     */
+    boolean remove(Tag tag) {
+        String name = tag.getName();
+        Node[] path = new Node[name.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < name.length(); i++) {
+            path[i + 1] = path[i].child(name.charAt(i));
+            if (path[i + 1] == null) {
+                return false;
+            }
+        }
+        Node node = path[name.length()];
+        if (node.tag != tag) {
+            return false;
+        }
+        node.tag = null;
+        size--;
+        changes++;
+        for (int i = name.length(); i > 0 && path[i].tag == null && path[i].childCount == 0; i--) {
+            path[i - 1].removeChild(name.charAt(i - 1));
+        }
+        return true;
+    }
+
+    /**
+     * Removes every tag.
+     */
+    void clear() {
+        root = new Node();
+        size = 0;
+        changes++;
+    }
+
+    /**
+     * Returns the number of tags in the trie.
+     *
+     * @return number of tags
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the most used tags whose names start with a prefix, the most used first and then by name, by
+     * Tag.getUses.
+     *
+     * @param prefix start of the names
+     * @param limit  greatest number of tags returned, at most MAX_COMPLETIONS
+     * @return up to limit tags, best first
+     */
+    List<Tag> complete(String prefix, int limit) {
+        Node node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.child(prefix.charAt(i));
+        }
+        ArrayList<Tag> tags = new ArrayList<>();
+        if (node == null) {
+            return tags;
+        }
+        Completion[] best = best(node, changes, Tag.getUseVersion());
+        for (int i = 0; i < best.length && i < limit; i++) {
+            tags.add(best[i].tag);
+        }
+        return tags;
+    }
+
+    /**
+     * Returns every tag whose name starts with a prefix, by walking the subtree of the prefix, so names that do not
+     * start with it are never looked at.
+     *
+     * @param prefix start of the names
+     * @return the tags, in the order of their names
+     */
+    List<Tag> withPrefix(String prefix) {
+        Node node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.child(prefix.charAt(i));
+        }
+        ArrayList<Tag> tags = new ArrayList<>();
+        if (node != null) {
+            collect(node, tags);
+        }
+        return tags;
+    }
+
+    /**
+     * Helper in withPrefix. Adds the tags of a node and of all the nodes below it.
+     */
+    private static void collect(Node node, List<Tag> tags) {
+        if (node.tag != null) {
+            tags.add(node.tag);
+        }
+        for (int i = 0; i < node.childCount; i++) {
+            collect(node.children[i], tags);
+        }
+    }
+
+    /**
+     * Helper in complete. Returns the most used tags below a node, best first, merging those of its children when
+     * the ones it remembers are out of date.
+     */
+    private static Completion[] best(Node node, int changes, int useVersion) {
+        if (node.best != null && node.bestChanges == changes && node.bestUseVersion == useVersion) {
+            return node.best;
+        }
+        if (node.tag == null && node.childCount == 1) {
+            // a node on a chain shares the best tags of its only child
+            node.best = best(node.children[0], changes, useVersion);
+        } else {
+            node.best = merge(node, changes, useVersion);
+        }
+        node.bestChanges = changes;
+        node.bestUseVersion = useVersion;
+        return node.best;
+    }
+
+    /**
+     * Helper in best. Merges the tag of a node and the best tags of its children, which are already in order.
+     */
+    private static Completion[] merge(Node node, int changes, int useVersion) {
+        Completion[] merged = node.tag == null ? new Completion[0]
+                : new Completion[]{new Completion(node.tag, node.tag.getUses())};
+        for (int i = 0; i < node.childCount; i++) {
+            merged = merge(merged, best(node.children[i], changes, useVersion));
+        }
+        return merged;
+    }
+
+    /**
+     * Helper in merge. Merges two ordered arrays of completions, keeping the MAX_COMPLETIONS best.
+     */
+    private static Completion[] merge(Completion[] first, Completion[] second) {
+        if (second.length == 0) {
+            return first;
+        }
+        if (first.length == 0) {
+            return second;
+        }
+        Completion[] merged = new Completion[Math.min(MAX_COMPLETIONS, first.length + second.length)];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < merged.length; k++) {
+            if (j == second.length || (i < first.length && BEST_FIRST.compare(first[i], second[j]) <= 0)) {
+                merged[k] = first[i++];
+            } else {
+                merged[k] = second[j++];
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * A tag and its use when it was looked at.
+     */
+    private static class Completion {
+
+        private final Tag tag;
+
+        private final int uses;
+
+        Completion(Tag tag, int uses) {
+            this.tag = tag;
+            this.uses = uses;
+        }
+    }
+
+    /**
+     * Node for one prefix.
+     */
+    private static class Node {
+
+        /**
+         * Tag named by the prefix, null if there is none.
+         */
+        private Tag tag;
+
+        /**
+         * Next characters of the children, sorted, in the first childCount slots.
+         */
+        private char[] keys = new char[0];
+
+        /**
+         * Children, in the order of their characters.
+         */
+        private Node[] children = new Node[0];
+
+        private int childCount;
+
+        /**
+         * Most used tags below this node, best first, null until they are asked for.
+         */
+        private Completion[] best;
+
+        /**
+         * Changes of the trie and use version the best tags were found at.
+         */
+        private int bestChanges;
+
+        private int bestUseVersion;
+
+        /**
+         * Returns the child for the next character, null if there is none.
+         */
+        Node child(char key) {
+            int index = Arrays.binarySearch(keys, 0, childCount, key);
+            return index >= 0 ? children[index] : null;
+        }
+
+        /**
+         * Returns the child for the next character, creating it if there is none.
+         */
+        Node childOrCreate(char key) {
+            int index = Arrays.binarySearch(keys, 0, childCount, key);
+            if (index >= 0) {
+                return children[index];
+            }
+            index = -index - 1;
+            if (childCount == keys.length) {
+                int capacity = Math.max(2, childCount * 2);
+                keys = Arrays.copyOf(keys, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(keys, index, keys, index + 1, childCount - index);
+            System.arraycopy(children, index, children, index + 1, childCount - index);
+            Node child = new Node();
+            keys[index] = key;
+            children[index] = child;
+            childCount++;
+            return child;
+        }
+
+        /**
+         * Removes the child for the next character.
+         */
+        void removeChild(char key) {
+            int index = Arrays.binarySearch(keys, 0, childCount, key);
+            if (index < 0) {
+                return;
+            }
+            System.arraycopy(keys, index + 1, keys, index, childCount - index - 1);
+            System.arraycopy(children, index + 1, children, index, childCount - index - 1);
+            childCount--;
+            children[childCount] = null;
+        }
+    }
+}